@@ -0,0 +1,138 @@
+package edu.usfca.cs272;
+
+import java.util.List;
+
+/**
+ * Scores documents with Okapi BM25. Every match of a word is weighed by how
+ * rare the word is among the documents, the matches of a word in a document
+ * saturate as they grow, and documents longer than average are penalized. The
+ * score of a document is the total weight of its matches.
+ *
+ * Preparing the scorer computes the inverse document frequency of every word
+ * and the length norm of every document once, into float arrays indexed by
+ * id, so weighing a match only reads two arrays. The highest weight of each
+ * word in any document is kept as well, as the bound on its score. The number
+ * of documents, their average length and the document frequencies come from
+ * the whole corpus when the index is only a part of it.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class BM25Scorer implements Scorer {
+	/** The default saturation of the matches of a word. */
+	public static final float K1 = 1.2f;
+
+	/** The default strength of the document length penalty. */
+	public static final float B = 0.75f;
+
+	/** How quickly the weight of more matches of a word saturates. */
+	private final float k1;
+
+	/** How strongly documents are penalized for their length, from 0 to 1. */
+	private final float b;
+
+	/** The inverse document frequency of each word by word id. */
+	private final float[] idf;
+
+	/** The length norm k1 * (1 - b + b * length / average length) by document id. */
+	private final float[] norms;
+
+	/** The upper bound on the weight of each word by word id. */
+	private final float[] bounds;
+
+	/**
+	 * Initializes a scorer with the default parameters, which still has to be
+	 * prepared for an index
+	 */
+	public BM25Scorer() {
+		this(K1, B);
+	}
+
+	/**
+	 * Initializes a scorer, which still has to be prepared for an index
+	 *
+	 * @param k1 how quickly the weight of more matches of a word saturates
+	 * @param b how strongly documents are penalized for their length, from 0 to 1
+	 */
+	public BM25Scorer(float k1, float b) {
+		this(k1, b, new float[0], new float[0], new float[0]);
+		if (!(k1 >= 0) || !(b >= 0 && b <= 1)) {
+			throw new IllegalArgumentException("Needs k1 >= 0 and 0 <= b <= 1.");
+		}
+	}
+
+	/**
+	 * Initializes a prepared scorer
+	 *
+	 * @param k1 how quickly the weight of more matches of a word saturates
+	 * @param b how strongly documents are penalized for their length
+	 * @param idf the inverse document frequency of each word by word id
+	 * @param norms the length norm of each document by document id
+	 * @param bounds the upper bound on the weight of each word by word id
+	 */
+	private BM25Scorer(float k1, float b, float[] idf, float[] norms, float[] bounds) {
+		this.k1 = k1;
+		this.b = b;
+		this.idf = idf;
+		this.norms = norms;
+		this.bounds = bounds;
+	}
+
+	@Override
+	public Scorer prepare(TermDictionary terms, DocumentTable documents, List<PostingList> postings,
+			CorpusStats corpus) {
+		long size;
+		double average;
+		if (corpus != null) {
+			size = corpus.getDocuments();
+			average = corpus.getAverage();
+		}
+		else {
+			// removed documents have no stems, so they do not change the total
+			long total = 0;
+			for (int document = 0; document < documents.limit(); document++) {
+				total += documents.count(document);
+			}
+			size = documents.size();
+			average = size > 0 ? (double) total / size : 1;
+		}
+
+		float[] norms = new float[documents.limit()];
+		for (int document = 0; document < norms.length; document++) {
+			norms[document] = (float) (k1 * (1 - b + b * documents.count(document) / average));
+		}
+
+		float[] idf = new float[postings.size()];
+		float[] bounds = new float[postings.size()];
+		BM25Scorer prepared = new BM25Scorer(k1, b, idf, norms, bounds);
+		for (int term = 0; term < idf.length; term++) {
+			PostingList postingList = postings.get(term);
+			int frequency = corpus != null && postingList.size() > 0
+					? corpus.getFrequency(terms.word(term))
+					: postingList.size();
+			idf[term] = (float) Math.log(1 + (size - frequency + 0.5) / (frequency + 0.5));
+			
+			double bound = 0;
+			for (int i = 0; i < postingList.size(); i++) {
+				bound = Math.max(bound, prepared.weight(term, postingList.document(i), postingList.count(i)));
+			}
+			bounds[term] = Math.nextUp((float) bound);
+		}
+		return prepared;
+	}
+
+	@Override
+	public double weight(int term, int document, int matches) {
+		return idf[term] * matches * (k1 + 1) / (matches + norms[document]);
+	}
+
+	@Override
+	public double score(int document, int count, double weight) {
+		return weight;
+	}
+
+	@Override
+	public double bound(int term) {
+		return bounds[term];
+	}
+}
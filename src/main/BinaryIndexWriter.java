@@ -0,0 +1,95 @@
+package edu.usfca.cs272;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes the binary index file read back by {@link MappedIndexReader}. Ints are
+ * written in big-endian order, strings as their UTF-8 length followed by the
+ * bytes.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class BinaryIndexWriter implements Closeable {
+	/**
+	 * The buffered output of the index file
+	 */
+	private final DataOutputStream output;
+
+	/**
+	 * Creates or replaces the index file
+	 *
+	 * @param path the index file to write
+	 * @throws IOException if unable to open the file
+	 */
+	public BinaryIndexWriter(Path path) throws IOException {
+		this.output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+	}
+
+	/**
+	 * Writes an int
+	 *
+	 * @param value the int to write
+	 * @throws IOException if unable to write
+	 */
+	public void writeInt(int value) throws IOException {
+		output.writeInt(value);
+	}
+
+	/**
+	 * Writes the first ints of the array
+	 *
+	 * @param values the ints to write
+	 * @param length the number of ints to write
+	 * @throws IOException if unable to write
+	 */
+	public void writeInts(int[] values, int length) throws IOException {
+		for (int i = 0; i < length; i++) {
+			output.writeInt(values[i]);
+		}
+	}
+
+	/**
+	 * Writes a string as its UTF-8 length followed by the bytes
+	 *
+	 * @param value the string to write
+	 * @throws IOException if unable to write
+	 */
+	public void writeString(String value) throws IOException {
+		byte[] bytes = value.getBytes(UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	/**
+	 * Writes every byte of the buffer from index 0 to its limit
+	 *
+	 * @param buffer the bytes to write
+	 * @throws IOException if unable to write
+	 */
+	public void writeBytes(ByteBuffer buffer) throws IOException {
+		if (buffer.hasArray()) {
+			output.write(buffer.array(), buffer.arrayOffset(), buffer.limit());
+			return;
+		}
+		byte[] chunk = new byte[Math.min(buffer.limit(), 1 << 16)];
+		for (int index = 0; index < buffer.limit(); index += chunk.length) {
+			int length = Math.min(chunk.length, buffer.limit() - index);
+			buffer.get(index, chunk, 0, length);
+			output.write(chunk, 0, length);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		output.close();
+	}
+}
@@ -0,0 +1,111 @@
+package edu.usfca.cs272;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The statistics of a whole corpus that a scorer weighs the matches by: the
+ * number of documents, their total number of stems, and the number of
+ * documents each word appears in. An index split into parts, such as the parts
+ * of a snapshot, segments or shards, prepares the scorer of every part for the
+ * statistics of the whole corpus, so each part scores its matches the same as
+ * one big index would.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class CorpusStats {
+	/** The number of documents. */
+	private final long documents;
+
+	/** The number of stems summed over every document. */
+	private final long stems;
+
+	/** The number of documents each word appears in. */
+	private final Map<String, Integer> frequencies;
+
+	/**
+	 * Initializes the stats of a corpus. The map of frequencies is used as is
+	 * and must not be changed afterwards.
+	 *
+	 * @param documents the number of documents
+	 * @param stems the number of stems summed over every document
+	 * @param frequencies the number of documents each word appears in
+	 */
+	public CorpusStats(long documents, long stems, Map<String, Integer> frequencies) {
+		this.documents = documents;
+		this.stems = stems;
+		this.frequencies = frequencies;
+	}
+
+	/**
+	 * Returns the number of documents
+	 *
+	 * @return the number of documents
+	 */
+	public long getDocuments() {
+		return documents;
+	}
+
+	/**
+	 * Returns the number of stems summed over every document
+	 *
+	 * @return the number of stems
+	 */
+	public long getStems() {
+		return stems;
+	}
+
+	/**
+	 * Returns the average number of stems of a document
+	 *
+	 * @return the average number of stems, or 1 if there are no documents
+	 */
+	public double getAverage() {
+		return documents > 0 ? (double) stems / documents : 1;
+	}
+
+	/**
+	 * Returns the number of documents a word appears in
+	 *
+	 * @param word stemmed word
+	 * @return the number of documents, or 0 if the word is not in the corpus
+	 */
+	public int getFrequency(String word) {
+		return frequencies.getOrDefault(word, 0);
+	}
+
+	/**
+	 * Combines the stats of two parts of an index that split its documents
+	 * between them, such as two segments. Everything is summed.
+	 *
+	 * @param other the stats of the other part
+	 * @return the combined stats
+	 */
+	public CorpusStats combine(CorpusStats other) {
+		return combine(other, documents + other.documents, stems + other.stems);
+	}
+
+	/**
+	 * Combines the stats of two parts of an index. The frequencies of each word
+	 * are summed, which is only right if no document has the same word in both
+	 * parts. The documents and their stems are given instead, since parts that
+	 * split the words between them, such as two shards, may both store the same
+	 * document.
+	 *
+	 * @param other the stats of the other part
+	 * @param documents the number of distinct documents of both parts
+	 * @param stems the number of stems summed over those documents
+	 * @return the combined stats
+	 */
+	public CorpusStats combine(CorpusStats other, long documents, long stems) {
+		Map<String, Integer> combined = new HashMap<>(frequencies);
+		other.frequencies.forEach((word, frequency) -> combined.merge(word, frequency, Integer::sum));
+		return new CorpusStats(documents, stems, combined);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d documents, %d stems, %d words", documents, stems, frequencies.size());
+	}
+}
@@ -0,0 +1,75 @@
+package edu.usfca.cs272;
+
+import java.util.List;
+
+/**
+ * The default scorer, which scores a document by its number of matches divided
+ * by its number of stems. The weights of the matches are not used. The number
+ * of stems is read straight from the document table by id, and the division is
+ * kept in double precision so the scores stay exactly the same.
+ *
+ * Preparing the scorer finds the highest fraction of any document that each
+ * word makes up, rounded up to a float, which bounds the score of the word.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class CountScorer implements Scorer {
+	/**
+	 * The document table of the index, or null until prepared
+	 */
+	private final DocumentTable documents;
+
+	/**
+	 * The upper bound on the score of each word by word id
+	 */
+	private final float[] bounds;
+
+	/**
+	 * Initializes a scorer that still has to be prepared for an index
+	 */
+	public CountScorer() {
+		this(null, new float[0]);
+	}
+
+	/**
+	 * Initializes a scorer prepared for a document table
+	 *
+	 * @param documents the document table of the index
+	 * @param bounds the upper bound on the score of each word by word id
+	 */
+	private CountScorer(DocumentTable documents, float[] bounds) {
+		this.documents = documents;
+		this.bounds = bounds;
+	}
+
+	@Override
+	public Scorer prepare(TermDictionary terms, DocumentTable documents, List<PostingList> postings,
+			CorpusStats corpus) {
+		float[] bounds = new float[postings.size()];
+		for (int term = 0; term < bounds.length; term++) {
+			PostingList postingList = postings.get(term);
+			double bound = 0;
+			for (int i = 0; i < postingList.size(); i++) {
+				bound = Math.max(bound, (double) postingList.count(i) / documents.count(postingList.document(i)));
+			}
+			bounds[term] = Math.nextUp((float) bound);
+		}
+		return new CountScorer(documents, bounds);
+	}
+
+	@Override
+	public double weight(int term, int document, int matches) {
+		return 0;
+	}
+
+	@Override
+	public double score(int document, int count, double weight) {
+		return (double) count / documents.count(document);
+	}
+
+	@Override
+	public double bound(int term) {
+		return bounds[term];
+	}
+}
@@ -0,0 +1,421 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Assigns every location (file path or URL) a dense integer document id and
+ * stores the per-document metadata, so postings only have to hold ints instead
+ * of copies of the location.
+ *
+ * While the table can still be modified, it also keeps the ids of the words of
+ * every document, delta and varint encoded like positions, so a document can
+ * be removed from the postings of its own words without scanning every word.
+ * Removed ids are reused by the next locations added, so replacing documents
+ * does not keep growing the ids, and any ids still empty are dropped once the
+ * table is frozen.
+ *
+ * Warning: This class is not thread-safe. If multiple threads access this class
+ * concurrently, access must be synchronized externally.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class DocumentTable {
+	/**
+	 * Maps each location to its document id
+	 */
+	private final HashMap<String, Integer> ids;
+
+	/**
+	 * Locations stored by document id
+	 */
+	private final ArrayList<String> locations;
+
+	/**
+	 * Number of stems in each document stored by document id
+	 */
+	private int[] counts;
+
+	/**
+	 * Sorted ids of the words in each document stored by document id, or null
+	 * once frozen
+	 */
+	private PositionList[] terms;
+
+	/**
+	 * Rank of each location in case-insensitive order stored by document id, or
+	 * null until frozen
+	 */
+	private int[] ranks;
+
+	/**
+	 * Ids of removed documents waiting to be reused, as a stack
+	 */
+	private int[] free;
+
+	/**
+	 * Number of ids in the stack of removed ids
+	 */
+	private int freed;
+
+	/**
+	 * Initializes an empty document table
+	 */
+	public DocumentTable() {
+		this.ids = new HashMap<>();
+		this.locations = new ArrayList<>();
+		this.counts = new int[16];
+		this.terms = new PositionList[16];
+		this.free = new int[0];
+		this.freed = 0;
+	}
+
+	/**
+	 * Returns the id of the location, assigning the id of the last removed
+	 * document, or else the next available id, if the location has not been
+	 * seen before
+	 *
+	 * @param location file path or URL
+	 * @return the document id of the location
+	 */
+	public int add(String location) {
+		Integer id = ids.get(location);
+		if (id == null) {
+			if (isFrozen()) {
+				throw new IllegalStateException("Cannot add documents to a frozen table.");
+			}
+			if (freed > 0) {
+				id = free[--freed];
+				ids.put(location, id);
+				locations.set(id, location);
+				return id;
+			}
+			id = locations.size();
+			ids.put(location, id);
+			locations.add(location);
+			if (id == counts.length) {
+				counts = Arrays.copyOf(counts, counts.length * 2);
+				terms = Arrays.copyOf(terms, counts.length);
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * Removes the document. Its id is left empty until the next location is
+	 * added, which may be assigned the same id, so the document must already be
+	 * gone from every posting list.
+	 *
+	 * @param id the document id
+	 */
+	public void remove(int id) {
+		if (isFrozen()) {
+			throw new IllegalStateException("Cannot remove documents from a frozen table.");
+		}
+		ids.remove(locations.get(id));
+		locations.set(id, null);
+		counts[id] = 0;
+		terms[id] = null;
+		if (freed == free.length) {
+			free = Arrays.copyOf(free, Math.max(16, freed * 2));
+		}
+		free[freed++] = id;
+	}
+
+	/**
+	 * Records that the document contains the word
+	 *
+	 * @param id the document id
+	 * @param term the id of the word
+	 */
+	public void addTerm(int id, int term) {
+		if (terms[id] == null) {
+			terms[id] = new PositionList();
+		}
+		terms[id].add(term);
+	}
+
+	/**
+	 * Records that the document contains the words and encodes its word ids,
+	 * since the whole document has been added
+	 *
+	 * @param id the document id
+	 * @param added the sorted ids of the words
+	 */
+	public void addTerms(int id, int[] added) {
+		for (int term : added) {
+			addTerm(id, term);
+		}
+		if (terms[id] != null) {
+			terms[id].finish();
+		}
+	}
+
+	/**
+	 * Returns the ids of the words in the document
+	 *
+	 * @param id the document id
+	 * @return the sorted ids of the words
+	 */
+	public int[] terms(int id) {
+		return terms[id] == null ? new int[0] : terms[id].toIntArray();
+	}
+
+	/**
+	 * Returns the document id of the location
+	 *
+	 * @param location file path or URL
+	 * @return the document id, or -1 if the location is not in the table
+	 */
+	public int id(String location) {
+		Integer id = ids.get(location);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns the location of the document
+	 *
+	 * @param id the document id
+	 * @return the file path or URL, or null if the document was removed
+	 */
+	public String location(int id) {
+		return locations.get(id);
+	}
+
+	/**
+	 * Returns the number of stems in the document
+	 *
+	 * @param id the document id
+	 * @return the number of stems
+	 */
+	public int count(int id) {
+		return counts[id];
+	}
+
+	/**
+	 * Records that the document has at least the given number of stems
+	 *
+	 * @param id the document id
+	 * @param position position of a stem in the document
+	 */
+	public void updateCount(int id, int position) {
+		if (position > counts[id]) {
+			counts[id] = position;
+		}
+	}
+
+	/**
+	 * Compares the locations of two documents ignoring case
+	 *
+	 * @param first the first document id
+	 * @param second the second document id
+	 * @return negative, zero, or positive if the first location sorts before, the
+	 *   same as, or after the second location
+	 *
+	 * @see String#compareToIgnoreCase(String)
+	 */
+	public int compare(int first, int second) {
+		if (ranks != null) {
+			return Integer.compare(ranks[first], ranks[second]);
+		}
+		return locations.get(first).compareToIgnoreCase(locations.get(second));
+	}
+
+	/**
+	 * Trims the table, drops the word ids of the documents and precomputes the
+	 * case-insensitive rank of every location, so later comparisons only compare
+	 * ints. The ids of removed documents are reused by moving later documents
+	 * down, which keeps the ids in the same order. No documents may be added or
+	 * removed afterwards.
+	 *
+	 * @return the new id of each document indexed by its old id, with -1 for
+	 *   removed documents, or null if no document was removed
+	 */
+	public int[] freeze() {
+		int[] remap = null;
+		if (ids.size() < locations.size()) {
+			remap = new int[locations.size()];
+			int next = 0;
+			for (int id = 0; id < locations.size(); id++) {
+				String location = locations.get(id);
+				if (location == null) {
+					remap[id] = -1;
+				}
+				else {
+					remap[id] = next;
+					locations.set(next, location);
+					counts[next] = counts[id];
+					ids.put(location, next);
+					next++;
+				}
+			}
+			locations.subList(next, locations.size()).clear();
+		}
+		counts = Arrays.copyOf(counts, locations.size());
+		locations.trimToSize();
+		terms = null;
+		free = new int[0];
+		freed = 0;
+
+		Integer[] order = new Integer[locations.size()];
+		for (int id = 0; id < order.length; id++) {
+			order[id] = id;
+		}
+		Arrays.sort(order, (first, second) -> locations.get(first).compareToIgnoreCase(locations.get(second)));
+
+		int[] computed = new int[order.length];
+		for (int i = 1; i < order.length; i++) {
+			boolean same = locations.get(order[i - 1]).compareToIgnoreCase(locations.get(order[i])) == 0;
+			computed[order[i]] = same ? computed[order[i - 1]] : i;
+		}
+		ranks = computed;
+		return remap;
+	}
+
+	/**
+	 * Writes the counts, ranks and locations of a frozen table
+	 *
+	 * @param output the binary index file to write to
+	 * @throws IOException if unable to write
+	 */
+	public void write(BinaryIndexWriter output) throws IOException {
+		output.writeInt(locations.size());
+		output.writeInts(counts, locations.size());
+		output.writeInts(ranks, locations.size());
+		for (String location : locations) {
+			output.writeString(location);
+		}
+	}
+
+	/**
+	 * Reads a frozen table into this empty table, which is frozen afterwards
+	 *
+	 * @param input the binary index file to read from
+	 * @throws IOException if unable to read
+	 */
+	public void read(MappedIndexReader input) throws IOException {
+		int size = input.readInt();
+		int[] loaded = new int[size];
+		input.readInts(loaded);
+		counts = loaded;
+		loaded = new int[size];
+		input.readInts(loaded);
+
+		locations.ensureCapacity(size);
+		for (int id = 0; id < size; id++) {
+			String location = input.readString();
+			ids.put(location, id);
+			locations.add(location);
+		}
+		ranks = loaded;
+		terms = null;
+	}
+
+	/**
+	 * Removes every document and unfreezes the table, leaving it empty as if it
+	 * had just been created
+	 */
+	public void clear() {
+		ids.clear();
+		locations.clear();
+		counts = new int[16];
+		terms = new PositionList[16];
+		ranks = null;
+		free = new int[0];
+		freed = 0;
+	}
+
+	/**
+	 * Checks if the table has been frozen
+	 *
+	 * @return true if the table is frozen
+	 */
+	public boolean isFrozen() {
+		return ranks != null;
+	}
+
+	/**
+	 * Returns the number of documents
+	 *
+	 * @return the number of documents
+	 */
+	public int size() {
+		return ids.size();
+	}
+
+	/**
+	 * Returns one more than the largest document id assigned so far, including
+	 * the ids of removed documents
+	 *
+	 * @return the upper bound of the document ids
+	 */
+	public int limit() {
+		return locations.size();
+	}
+
+	/**
+	 * Estimates the bytes taken by the locations and the map from each location
+	 * to its document id
+	 *
+	 * @return the estimated number of bytes
+	 * @see MemoryStats
+	 */
+	public long locationBytes() {
+		long bytes = MemoryStats.object(7 * 4) + MemoryStats.map(ids.size()) + MemoryStats.list(locations.size());
+		for (String location : locations) {
+			if (location != null) {
+				bytes += MemoryStats.string(location);
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Estimates the bytes taken by the number of stems and rank of each
+	 * document, and by the word ids of each document until frozen
+	 *
+	 * @return the estimated number of bytes
+	 * @see MemoryStats
+	 */
+	public long countBytes() {
+		long bytes = MemoryStats.array(counts.length, 4) + MemoryStats.array(free.length, 4);
+		if (ranks != null) {
+			bytes += MemoryStats.array(ranks.length, 4);
+		}
+		if (terms != null) {
+			bytes += MemoryStats.references(terms.length);
+			for (PositionList list : terms) {
+				if (list != null) {
+					bytes += list.bytes();
+				}
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns the locations and their number of stems sorted by location
+	 *
+	 * @return an unmodifiable sorted map of location to number of stems
+	 */
+	public Map<String, Integer> counts() {
+		TreeMap<String, Integer> sorted = new TreeMap<>();
+		for (int id = 0; id < locations.size(); id++) {
+			if (locations.get(id) != null) {
+				sorted.put(locations.get(id), counts[id]);
+			}
+		}
+		return Collections.unmodifiableMap(sorted);
+	}
+
+	@Override
+	public String toString() {
+		return counts().toString();
+	}
+}
@@ -27,6 +27,9 @@ public class Driver {
 		InvertedIndex index = null;
 		WorkQueue queue = null;
 		QueryFileParserInterface query = null; 
+		IndexWatcher watcher = null;
+		WorkQueue watchQueue = null;
+		Thread watching = null;
 		int threadCount;
 		int numURL = 1;
 		int port;
@@ -46,11 +49,13 @@ public class Driver {
 		}
 		
 		if (parser.hasFlag("-threads")) {
-			threadedIndex = new ThreadedInvertedIndex();
-			index = threadedIndex;
-			
 			if (threadCount > 0) {
 				queue = new WorkQueue(threadCount);
+			}
+			threadedIndex = createThreadedIndex(parser, queue, threadCount);
+			index = threadedIndex;
+			
+			if (queue != null) {
 				query = new ThreadedQueryFileParser(threadedIndex, queue);
 			}
 		}
@@ -59,11 +64,31 @@ public class Driver {
 			query = new QueryFileParser(index);
 		}
 		
-		if (parser.hasFlag("-text")) {
+		// only the number of times each stem appears is needed without phrase queries
+		if (parser.hasFlag("-nopositions")) {
+			index.setPositions(false);
+		}
+		
+		if (parser.hasFlag("-load")) {
+			Path loadPath = parser.getPath("-load", Path.of("index.bin"));
+			try {
+				index.load(loadPath);
+			}
+			catch (IOException e) {
+				System.out.println("Unable to load the index: " + loadPath);
+			}
+		}
+		else if (parser.hasFlag("-text")) {
 			Path inputPath = parser.getPath("-text");
 			try {
-				if (queue != null) {
-					ThreadedInvertedIndexBuilder.build(inputPath, threadedIndex, queue);
+				if (queue != null && parser.hasFlag("-watch")) {
+					// every batch waits for its work queue to finish, so it cannot share one with the queries
+					watchQueue = new WorkQueue(threadCount);
+					watcher = new IndexWatcher(inputPath, threadedIndex, watchQueue, parser.getInteger("-watch", 500));
+					watcher.update();
+				}
+				else if (queue != null) {
+					ThreadedInvertedIndexBuilder.build(inputPath, threadedIndex, queue, parser.hasFlag("-reduce"));
 				}
 				else {
 					InvertedIndexBuilder.build(inputPath, index);
@@ -76,14 +101,17 @@ public class Driver {
 		}
 		
 		if (parser.hasFlag("-html")) {
-			threadedIndex = new ThreadedInvertedIndex();
-			index = threadedIndex;
 			queue = new WorkQueue(threadCount);
+			threadedIndex = createThreadedIndex(parser, queue, threadCount);
+			index = threadedIndex;
 			query = new ThreadedQueryFileParser(threadedIndex, queue);
+			if (parser.hasFlag("-nopositions")) {
+				index.setPositions(false);
+			}
 			
 			try {
 				URL url = new URL(parser.getString("-html"));
-				WebCrawler crawler = new WebCrawler(url, numURL, threadedIndex, queue);
+				WebCrawler crawler = new WebCrawler(url, numURL, threadedIndex, queue, parser.hasFlag("-reduce"));
 				crawler.crawl();
 			}
 			catch (MalformedURLException e) {
@@ -91,6 +119,57 @@ public class Driver {
 			}
 		}
 		
+		if ("bm25".equalsIgnoreCase(parser.getString("-scorer"))) {
+			index.setScorer(new BM25Scorer());
+		}
+		
+		// a loaded index already reads its positions from the mapped file
+		if (parser.hasFlag("-offheap") && !index.isFrozen()) {
+			index.setOffHeap(true);
+		}
+		
+		// nothing is added after building, so compact the index for lock-free reads
+		if (watcher == null) {
+			index.freeze();
+		}
+		
+		if (parser.hasFlag("-save")) {
+			Path savePath = parser.getPath("-save", Path.of("index.bin"));
+			try {
+				index.save(savePath);
+			}
+			catch (IOException e) {
+				System.out.println("Unable to save the index: " + savePath);
+			}
+			catch (IllegalStateException e) {
+				System.out.println("Unable to save an index that is being watched.");
+			}
+		}
+		
+		if (parser.hasFlag("-stats")) {
+			MemoryStats stats = index.memoryStats();
+			System.out.println(stats);
+			int corpus = parser.getInteger("-stats", 0);
+			if (corpus > 0) {
+				try {
+					MemoryStats estimate = stats.estimate(corpus);
+					System.out.println("Estimated for " + corpus + " documents:");
+					System.out.println(estimate);
+				}
+				catch (IllegalStateException e) {
+					System.out.println("Unable to estimate from an empty index.");
+				}
+			}
+			System.out.println(StemCache.shared());
+		}
+		
+		if (watcher != null) {
+			// keeps the index up to date in the background, such as while the server runs
+			watching = new Thread(watcher, "index-watcher");
+			watching.setDaemon(true);
+			watching.start();
+		}
+		
 		if (parser.hasFlag("-server")) {
 			port = Integer.parseInt(parser.getString("-server"));
 //			threadedIndex = new ThreadedInvertedIndex();
@@ -147,8 +226,57 @@ public class Driver {
 			}
 		}
 		
+		if (watcher != null) {
+			try {
+				watcher.close();
+				// a batch that is being indexed finishes before its work queue shuts down
+				if (watching != null) {
+					watching.join();
+				}
+			}
+			catch (IOException e) {
+				System.out.println("Unable to stop watching the input path.");
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			watchQueue.shutdown();
+		}
+		
+		// frees the positions stored outside of the heap
+		index.close();
+		
 		if (queue != null) {
 			queue.shutdown();
 		}
 	}
+	
+	/**
+	 * Creates the thread-safe index, which is sharded if the -shards flag is
+	 * provided (one shard per thread unless a number of shards is given), or
+	 * segmented if the -segments flag is provided and there are worker threads
+	 * to merge the segments, or publishes search snapshots while building if the
+	 * -publish flag is provided (every 10 batches unless a number is given, and
+	 * after every build or update). Snapshots are only published with -watch,
+	 * since otherwise the index is frozen before anything searches it.
+	 * 
+	 * @param parser the command-line arguments
+	 * @param queue the work queue, or null if there are no worker threads
+	 * @param threadCount the number of worker threads
+	 * @return the thread-safe inverted index
+	 */
+	private static ThreadedInvertedIndex createThreadedIndex(ArgumentParser parser, WorkQueue queue, int threadCount) {
+		if (parser.hasFlag("-shards")) {
+			int shards = parser.getInteger("-shards", threadCount);
+			return new ShardedInvertedIndex(shards > 0 ? shards : Math.max(threadCount, 1));
+		}
+		if (parser.hasFlag("-segments") && queue != null) {
+			return new SegmentedInvertedIndex(queue);
+		}
+		if (parser.hasFlag("-publish") && parser.hasFlag("-watch")) {
+			int interval = parser.getInteger("-publish", 10);
+			return new ThreadedInvertedIndex(interval > 0 ? interval : 10);
+		}
+		return new ThreadedInvertedIndex();
+	}
 }
\ No newline at end of file
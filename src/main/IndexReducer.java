@@ -0,0 +1,109 @@
+package edu.usfca.cs272;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Gives every worker thread its own local index to build into for the whole
+ * build, so workers never lock the shared index. Once the workers are done,
+ * the local indexes are combined by merging pairs of them in parallel with
+ * fork/join, and the combined index is added to the shared index at once.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class IndexReducer {
+	/**
+	 * The local index of each worker thread
+	 */
+	private final ConcurrentHashMap<Thread, InvertedIndex> locals;
+
+	/**
+	 * The index the local indexes are built for
+	 */
+	private final InvertedIndex target;
+
+	/**
+	 * Initializes a reducer without any local indexes
+	 *
+	 * @param target the index the local indexes are built for, which decides
+	 *   whether they store positions
+	 */
+	public IndexReducer(InvertedIndex target) {
+		this.locals = new ConcurrentHashMap<>();
+		this.target = target;
+	}
+
+	/**
+	 * Returns the local index of the current thread, creating it if needed. Only
+	 * the current thread may use the returned index until it is reduced.
+	 *
+	 * @return the local index of the current thread
+	 */
+	public InvertedIndex local() {
+		return locals.computeIfAbsent(Thread.currentThread(), thread -> target.newPart());
+	}
+
+	/**
+	 * Combines the local indexes and adds the result to the index with a single
+	 * call to addAll. The workers must have finished using their local indexes,
+	 * which are forgotten afterwards.
+	 *
+	 * @param index the index to add the combined local indexes to
+	 */
+	public void reduceInto(InvertedIndex index) {
+		List<InvertedIndex> built = new ArrayList<>(locals.values());
+		locals.clear();
+		if (!built.isEmpty()) {
+			index.addAll(ForkJoinPool.commonPool().invoke(new MergeTask(built, 0, built.size())));
+		}
+	}
+
+	/**
+	 * Merges a range of the local indexes by merging each half in parallel and
+	 * then merging the two halves
+	 */
+	private static class MergeTask extends RecursiveTask<InvertedIndex> {
+		/** ID used for serialization, which we are not using. */
+		private static final long serialVersionUID = 1L;
+
+		/** The local indexes. */
+		private final transient List<InvertedIndex> indexes;
+
+		/** The first index of the range. */
+		private final int start;
+
+		/** One past the last index of the range. */
+		private final int end;
+
+		/**
+		 * Initializes the task
+		 *
+		 * @param indexes the local indexes
+		 * @param start the first index of the range
+		 * @param end one past the last index of the range
+		 */
+		public MergeTask(List<InvertedIndex> indexes, int start, int end) {
+			this.indexes = indexes;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected InvertedIndex compute() {
+			if (end - start == 1) {
+				return indexes.get(start);
+			}
+			int middle = (start + end) >>> 1;
+			MergeTask left = new MergeTask(indexes, start, middle);
+			left.fork();
+			InvertedIndex merged = new MergeTask(indexes, middle, end).compute();
+			InvertedIndex leftMerged = left.join();
+			leftMerged.addAll(merged);
+			return leftMerged;
+		}
+	}
+}
@@ -0,0 +1,233 @@
+package edu.usfca.cs272;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a threaded index up to date with the text files under a directory
+ * tree. Every directory is registered with a {@link WatchService}, and the
+ * files that are created, modified or deleted are indexed again through the
+ * work queue. Events are debounced: once an event arrives, events keep being
+ * collected until none arrive for the debounce delay, and the whole batch is
+ * then merged into the index at once. Every batch waits for the work queue to
+ * finish, so the work queue should not be used for anything else meanwhile.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class IndexWatcher implements Runnable, Closeable {
+	/**
+	 * Longest time to keep collecting a batch, in multiples of the debounce
+	 * delay, so a steady stream of events still gets indexed
+	 */
+	private static final int MAX_DELAYS = 10;
+
+	/** The watched directory, or the watched file. */
+	private final Path root;
+
+	/** The index to keep up to date. */
+	private final ThreadedInvertedIndex threadedIndex;
+
+	/** Worker threads used to stem the changed files. */
+	private final WorkQueue workers;
+
+	/** How long to wait for more events before indexing a batch, in milliseconds. */
+	private final long debounce;
+
+	/** The watch service every directory is registered with. */
+	private final WatchService watcher;
+
+	/** The directory of each registered watch key. */
+	private final Map<WatchKey, Path> directories;
+
+	/** The last modified time of every indexed file. */
+	private final Map<Path, FileTime> indexed;
+
+	/**
+	 * Registers the directory tree of the input path, or the directory of the
+	 * input path if it is a single file. Nothing is indexed until
+	 * {@link #update()} is called.
+	 *
+	 * @param root the input path to watch
+	 * @param threadedIndex the index to keep up to date
+	 * @param workers worker threads used to stem the changed files, which are
+	 *   not shared with other work
+	 * @param debounce how long to wait for more events before indexing a batch,
+	 *   in milliseconds
+	 * @throws IOException if unable to watch the input path
+	 */
+	public IndexWatcher(Path root, ThreadedInvertedIndex threadedIndex, WorkQueue workers, long debounce) throws IOException {
+		this.root = root;
+		this.threadedIndex = threadedIndex;
+		this.workers = workers;
+		this.debounce = debounce;
+		this.watcher = root.getFileSystem().newWatchService();
+		this.directories = new HashMap<>();
+		this.indexed = new HashMap<>();
+
+		if (Files.isDirectory(root)) {
+			register(root, new HashSet<>());
+		}
+		else {
+			// events are resolved against the parent as given, so they match the input path
+			Path parent = root.getParent() == null ? Path.of("") : root.getParent();
+			directories.put(parent.toAbsolutePath().register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), parent);
+		}
+	}
+
+	/**
+	 * Indexes every file that changed since it was last indexed, or every file if
+	 * nothing was indexed yet
+	 *
+	 * @throws IOException if IO error occurs
+	 */
+	public void update() throws IOException {
+		ThreadedInvertedIndexBuilder.update(root, threadedIndex, workers, indexed);
+	}
+
+	/**
+	 * Waits for events and indexes them in batches until the watcher is closed or
+	 * the thread is interrupted
+	 */
+	@Override
+	public void run() {
+		try {
+			while (true) {
+				WatchKey key = watcher.take();
+				Set<Path> changed = new HashSet<>();
+				boolean overflow = false;
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(debounce * MAX_DELAYS);
+				while (key != null) {
+					overflow |= collect(key, changed);
+					key = System.nanoTime() < deadline ? watcher.poll(debounce, TimeUnit.MILLISECONDS) : null;
+				}
+
+				try {
+					if (overflow) {
+						// some events were lost, so check every file instead
+						update();
+					}
+					else if (!changed.isEmpty()) {
+						ThreadedInvertedIndexBuilder.update(changed, threadedIndex, workers, indexed);
+					}
+				}
+				catch (IOException e) {
+					System.out.println("Unable to update the index: " + e.getMessage());
+				}
+			}
+		}
+		catch (InterruptedException | ClosedWatchServiceException e) {
+			return;
+		}
+	}
+
+	/**
+	 * Adds the files of every event of the key to the batch, and registers
+	 * directories that were created
+	 *
+	 * @param key the signalled watch key
+	 * @param changed the files that may have changed
+	 * @return true if some events were lost
+	 */
+	private boolean collect(WatchKey key, Set<Path> changed) {
+		Path directory = directories.get(key);
+		boolean overflow = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == OVERFLOW || directory == null) {
+				overflow = true;
+				continue;
+			}
+
+			Path path = directory.resolve((Path) event.context());
+			if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+				try {
+					register(path, changed);
+				}
+				catch (IOException e) {
+					overflow = true;
+				}
+			}
+			else if (event.kind() == ENTRY_DELETE && !indexed.containsKey(path)) {
+				// a deleted directory, whose files were indexed under it
+				for (Path file : indexed.keySet()) {
+					if (file.startsWith(path)) {
+						changed.add(file);
+					}
+				}
+			}
+			else if (accepts(path)) {
+				changed.add(path);
+			}
+		}
+
+		if (!key.reset()) {
+			directories.remove(key);
+		}
+		return overflow;
+	}
+
+	/**
+	 * Checks if the file is one the watcher indexes
+	 *
+	 * @param path the file
+	 * @return true if the file is the watched file, or a text file under the
+	 *   watched directory
+	 */
+	private boolean accepts(Path path) {
+		if (Files.isDirectory(root)) {
+			return InvertedIndexBuilder.isTextFile(path);
+		}
+		return path.equals(root);
+	}
+
+	/**
+	 * Registers the directory and its subdirectories, and adds the text files
+	 * already in them, since files may be created before the directory is
+	 * registered
+	 *
+	 * @param directory the directory to register
+	 * @param found where to add the text files
+	 * @throws IOException if an IO Exception occurs
+	 */
+	private void register(Path directory, Set<Path> found) throws IOException {
+		directories.put(directory.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), directory);
+		try (DirectoryStream<Path> listing = Files.newDirectoryStream(directory)) {
+			for (Path path : listing) {
+				if (Files.isDirectory(path)) {
+					register(path, found);
+				}
+				else if (InvertedIndexBuilder.isTextFile(path)) {
+					found.add(path);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops watching, which ends {@link #run()} once the batch that is being
+	 * indexed, if any, is done. The work queue must not be shut down before
+	 * then, so join the thread running it first.
+	 */
+	@Override
+	public void close() throws IOException {
+		watcher.close();
+	}
+}
@@ -2,13 +2,18 @@ package edu.usfca.cs272;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.stream.IntStream;
 
 /**
  * Stores the underlying data structure when processing the input files
@@ -18,79 +23,738 @@ import java.util.TreeSet;
  */
 public class InvertedIndex {
 	/**
-	 * Data structure for Inverted Index that stores stemmed words, path and positions 
+	 * Reusable score accumulator of each searching thread
 	 */
-	private final TreeMap<String, TreeMap<String, TreeSet<Integer>>> infoMap;
+	private static final ThreadLocal<ScoreAccumulator> ACCUMULATOR = ThreadLocal.withInitial(ScoreAccumulator::new);
 	
 	/**
-	 * Data structure for storing path and number of stems
+	 * How many times more list visits than postings a top-k search may take
+	 * before the matches are accumulated one list at a time instead
 	 */
-	private final TreeMap<String, Integer> countMap;
+	private static final int VISITS_PER_POSTING = 16;
 	
 	/**
-	 * Constructor creates a new TreeMap
+	 * Dictionary that assigns each stemmed word a dense id
+	 */
+	private final TermDictionary terms;
+	
+	/**
+	 * Postings for each stemmed word indexed by word id, storing document ids and positions
+	 */
+	private final ArrayList<PostingList> postings;
+	
+	/**
+	 * Document table for storing path and number of stems by document id
+	 */
+	private final DocumentTable documents;
+	
+	/**
+	 * Magic number at the start of a saved index file ("SEIX")
+	 */
+	private static final int MAGIC = 0x53454958;
+	
+	/**
+	 * Version of the saved index file format
+	 */
+	private static final int VERSION = 1;
+	
+	/**
+	 * Whether the index has been compacted into an immutable read-only snapshot
+	 */
+	private volatile boolean frozen;
+	
+	/**
+	 * Scores the matched documents, which is a {@link CountScorer} unless set otherwise
+	 */
+	private volatile Scorer scorer;
+	
+	/**
+	 * The scorer prepared for the current statistics of the index, or null if
+	 * the index changed since it was last prepared
+	 */
+	private volatile Scorer prepared;
+	
+	/**
+	 * The statistics of the whole corpus when the index is one part of a larger
+	 * one, or null if the scorer is prepared for the statistics of this index
+	 */
+	private volatile CorpusStats corpus;
+	
+	/**
+	 * Whether the positions of each word are stored, or only how many there are
+	 */
+	private volatile boolean positional;
+	
+	/**
+	 * Whether freezing stores the positions outside of the heap
+	 */
+	private boolean offHeap;
+	
+	/**
+	 * The direct memory holding the positions once frozen off the heap, or null
+	 */
+	private OffHeapArena arena;
+	
+	/**
+	 * Constructor creates a new term dictionary, postings and document table
 	 */
 	public InvertedIndex() {
-		this.infoMap = new TreeMap<>();
-		this.countMap = new TreeMap<>();
+		this.terms = new TermDictionary();
+		this.postings = new ArrayList<>();
+		this.documents = new DocumentTable();
+		this.frozen = false;
+		this.scorer = new CountScorer();
+		this.prepared = null;
+		this.corpus = null;
+		this.positional = true;
+		this.offHeap = false;
+		this.arena = null;
+	}
+	
+	/**
+	 * Sets whether the index stores the positions of every word in every
+	 * document, or only how many times the word appears in the document. Without
+	 * positions, the index takes a fraction of the memory and searches find the
+	 * same results, but phrase and NEAR clauses cannot be matched and the
+	 * positions themselves cannot be read. A position added twice through
+	 * {@link #add(String, String, Integer)} is also counted twice. Turning the
+	 * positions off drops the positions already added, but they cannot be
+	 * turned back on once anything was added.
+	 * 
+	 * @param positional whether to store the positions
+	 * @throws IllegalStateException if the index is frozen, or if turning the
+	 *   positions back on after adding without them
+	 */
+	public void setPositions(boolean positional) throws IllegalStateException {
+		checkNotFrozen();
+		if (positional == this.positional) {
+			return;
+		}
+		if (positional && terms.limit() > 0) {
+			throw new IllegalStateException("Cannot store positions after adding without them.");
+		}
+		for (PostingList postingList : postings) {
+			postingList.dropPositions();
+		}
+		this.positional = positional;
+	}
+	
+	/**
+	 * Checks if the index stores the positions of every word
+	 * 
+	 * @return true if the positions are stored, or false if only their number is
+	 */
+	public boolean hasPositions() {
+		return positional;
+	}
+	
+	/**
+	 * Creates an empty index that stores positions only if this index does, to
+	 * build part of this index in before adding it with
+	 * {@link #addAll(InvertedIndex)}
+	 * 
+	 * @return the empty index
+	 */
+	public InvertedIndex newPart() {
+		InvertedIndex part = new InvertedIndex();
+		part.positional = positional;
+		return part;
+	}
+	
+	/**
+	 * Sets whether {@link #freeze()} stores the packed positions in direct
+	 * buffers outside of the heap, so only the term dictionary, the document
+	 * table and the document ids of the postings stay on the heap. The memory is
+	 * freed by {@link #close()}. A loaded index already reads its positions
+	 * straight from the mapped file.
+	 * 
+	 * @param offHeap whether to store the positions outside of the heap
+	 */
+	public void setOffHeap(boolean offHeap) {
+		checkNotFrozen();
+		this.offHeap = offHeap;
+	}
+	
+	/**
+	 * Frees the memory outside of the heap that holds the positions of a frozen
+	 * index. Every posting list is emptied first, so the index no longer matches
+	 * anything afterwards instead of reading freed memory, but it should not be
+	 * used at all once closed. Positions returned by {@link #get(String, String)}
+	 * are copies and stay readable.
+	 */
+	public void close() {
+		if (arena == null) {
+			return;
+		}
+		for (PostingList postingList : postings) {
+			postingList.release();
+		}
+		prepared = null;
+		arena.close();
+		arena = null;
+	}
+	
+	/**
+	 * Sets how the matched documents are scored. A frozen index prepares the
+	 * scorer right away, and any other index prepares it on the next search
+	 * after a change, unless {@link #prepareScorer()} prepared it before.
+	 * 
+	 * @param scorer the scorer to use
+	 */
+	public void setScorer(Scorer scorer) {
+		this.scorer = scorer;
+		this.prepared = frozen ? prepare() : null;
+	}
+	
+	/**
+	 * Returns how the matched documents are scored
+	 * 
+	 * @return the scorer that has not been prepared for this index
+	 */
+	public Scorer getScorer() {
+		return scorer;
+	}
+	
+	/**
+	 * Returns the scorer prepared for the current statistics of the index,
+	 * preparing it first if the index changed since it was last prepared
+	 * 
+	 * @return the prepared scorer
+	 */
+	private Scorer scorer() {
+		Scorer current = prepared;
+		if (current == null) {
+			current = prepare();
+			prepared = current;
+		}
+		return current;
+	}
+	
+	/**
+	 * Prepares the scorer for the current statistics of the index now, unless it
+	 * is already prepared, so the next search does not have to. Preparing takes
+	 * time in the size of the index, so an index that changes in batches should
+	 * call this once after each batch instead of leaving it to the searches.
+	 */
+	protected void prepareScorer() {
+		scorer();
+	}
+	
+	/**
+	 * Prepares the scorer for the current statistics of the index, or of the
+	 * whole corpus if the index is one part of a larger one
+	 * 
+	 * @return the prepared scorer
+	 */
+	private Scorer prepare() {
+		return scorer.prepare(terms, documents, postings, corpus);
+	}
+	
+	/**
+	 * Sets the statistics of the whole corpus when the index is one part of a
+	 * larger one, so its matches are scored the same as in one big index. A
+	 * frozen index prepares the scorer for them right away. The statistics are
+	 * kept as they are when the index changes afterwards, until set again.
+	 * 
+	 * @param corpus the statistics of the whole corpus, or null to use the
+	 *   statistics of this index
+	 * 
+	 * @see #corpusStats()
+	 */
+	public void setCorpusStats(CorpusStats corpus) {
+		this.corpus = corpus;
+		this.prepared = frozen ? prepare() : null;
 	}
 	
 	/**
-	 * adds all the stems, paths and locations to infoMap
+	 * Returns the statistics of the whole corpus the index is one part of
+	 * 
+	 * @return the statistics set with {@link #setCorpusStats(CorpusStats)}, or
+	 *   null if the index uses its own
+	 */
+	public CorpusStats getCorpusStats() {
+		return corpus;
+	}
+	
+	/**
+	 * Returns the statistics of this index alone, which can be combined with the
+	 * statistics of the other parts of a larger index
+	 * 
+	 * @return the number of documents, their stems and the frequency of every word
+	 */
+	public CorpusStats corpusStats() {
+		// removed documents have no stems, so they do not change the total
+		long stems = 0;
+		for (int document = 0; document < documents.limit(); document++) {
+			stems += documents.count(document);
+		}
+		HashMap<String, Integer> frequencies = new HashMap<>();
+		for (int id = 0; id < terms.limit(); id++) {
+			if (postings.get(id).size() > 0) {
+				frequencies.put(terms.word(id), postings.get(id).size());
+			}
+		}
+		return new CorpusStats(documents.size(), stems, frequencies);
+	}
+	
+	/**
+	 * adds all the stems, paths and locations to the index
 	 * 
 	 * @param listStems List of stemmed words
 	 * @param inputPath the value of "-text" flag
 	 */
 	public void addAll(List<String> listStems, String inputPath) {
-		for (int i = 0; i < listStems.size(); i++) {
-			 add(listStems.get(i), inputPath.toString(), i + 1);
+		checkNotFrozen();
+		addStems(listStems, inputPath);
+	}
+	
+	/**
+	 * Adds the stems of a location to the index
+	 * 
+	 * @param listStems List of stemmed words
+	 * @param location the location of the stems
+	 */
+	private void addStems(List<String> listStems, String location) {
+		if (listStems.isEmpty()) {
+			return;
+		}
+		prepared = null;
+		int document = documents.add(location);
+		ArrayList<PositionList> added = new ArrayList<>();
+		IntStream.Builder words = IntStream.builder();
+		if (positional) {
+			for (int i = 0; i < listStems.size(); i++) {
+				int id = postingsFor(listStems.get(i));
+				PositionList positions = postings.get(id).getOrAdd(document);
+				if (positions.isEmpty()) {
+					added.add(positions);
+					words.add(id);
+				}
+				positions.add(i + 1);
+			}
+		}
+		else {
+			for (String stem : listStems) {
+				int id = postingsFor(stem);
+				if (postings.get(id).addCount(document, 1) == 1) {
+					words.add(id);
+				}
+			}
+		}
+		documents.updateCount(document, listStems.size());
+		
+		// the whole document has been added, so the positions can be encoded
+		for (PositionList positions : added) {
+			positions.finish();
+		}
+		documents.addTerms(document, words.build().sorted().toArray());
+	}
+	
+	/**
+	 * Removes a location and all of its stems from the index. Words that are no
+	 * longer in any location are removed as well.
+	 * 
+	 * @param location the location to remove
+	 * @return true if the location was in the index
+	 */
+	public boolean remove(String location) {
+		checkNotFrozen();
+		return removeDocument(location);
+	}
+	
+	/**
+	 * Replaces the stems of a location, as if it was removed and then added with
+	 * the new stems
+	 * 
+	 * @param listStems the new list of stemmed words
+	 * @param location the location to replace
+	 */
+	public void replace(List<String> listStems, String location) {
+		checkNotFrozen();
+		removeDocument(location);
+		addStems(listStems, location);
+	}
+	
+	/**
+	 * Removes a location from the postings of each of its words, which are found
+	 * through the document table instead of checking every word
+	 * 
+	 * @param location the location to remove
+	 * @return true if the location was in the index
+	 */
+	private boolean removeDocument(String location) {
+		int document = documents.id(location);
+		if (document < 0) {
+			return false;
+		}
+		prepared = null;
+		for (int id : documents.terms(document)) {
+			PostingList postingList = postings.get(id);
+			postingList.remove(document);
+			if (postingList.size() == 0) {
+				terms.remove(id);
+			}
 		}
+		documents.remove(document);
+		return true;
 	}
 	
 	/**
-	 * Copy and add data from threaded inverted index to the infoMap
+	 * Copy and add data from threaded inverted index to the index. If this index
+	 * does not store positions, only the number of positions of the other index
+	 * is added.
 	 * 
 	 * @param otherInvertedIndex the other inverted index (threaded index)
+	 * @throws IllegalArgumentException if this index stores positions and the
+	 *   other index does not
 	 */
-	public void addAll(InvertedIndex otherInvertedIndex) {
-		for (String word : otherInvertedIndex.infoMap.keySet()) {
-			if (!this.infoMap.containsKey(word)) {
-				this.infoMap.put(word, otherInvertedIndex.infoMap.get(word));
-			} 
+	public void addAll(InvertedIndex otherInvertedIndex) throws IllegalArgumentException {
+		checkNotFrozen();
+		if (positional && !otherInvertedIndex.positional) {
+			throw new IllegalArgumentException("Cannot add an index without positions to an index with them.");
+		}
+		prepared = null;
+		
+		// maps the document ids of the other index to the document ids of this index
+		DocumentTable otherDocuments = otherInvertedIndex.documents;
+		int[] remap = new int[otherDocuments.limit()];
+		for (int otherDocument = 0; otherDocument < remap.length; otherDocument++) {
+			String location = otherDocuments.location(otherDocument);
+			if (location == null) {
+				remap[otherDocument] = -1;
+			}
 			else {
-				for (String location : otherInvertedIndex.infoMap.get(word).keySet()) {
-					if (!this.infoMap.get(word).containsKey(location)) {
-						this.infoMap.get(word).put(location, otherInvertedIndex.infoMap.get(word).get(location));
-					}
-					else {
-						this.infoMap.get(word).get(location).addAll(otherInvertedIndex.infoMap.get(word).get(location));
-					}
+				remap[otherDocument] = documents.add(location);
+				documents.updateCount(remap[otherDocument], otherDocuments.count(otherDocument));
+			}
+		}
+		
+		// each posting list is merged in one pass, and adopted whole if the word is new
+		int[] termRemap = new int[otherInvertedIndex.terms.limit()];
+		for (int otherId = 0; otherId < termRemap.length; otherId++) {
+			String word = otherInvertedIndex.terms.word(otherId);
+			if (word == null) {
+				termRemap[otherId] = -1;
+			}
+			else {
+				termRemap[otherId] = postingsFor(word);
+				postings.get(termRemap[otherId]).addAll(otherInvertedIndex.postings.get(otherId), remap);
+			}
+		}
+		addTerms(otherInvertedIndex, remap, termRemap);
+	}
+	
+	/**
+	 * Records the words of every document added from the other index in the
+	 * document table. The word ids of each document are gathered from the other
+	 * postings and sorted first, so they are appended in order.
+	 * 
+	 * @param other the index the documents were added from
+	 * @param remap the id in this index of each document id of the other index,
+	 *   or -1 if the document was not added
+	 * @param termRemap the id in this index of each word id of the other index,
+	 *   or -1 if the word was not added
+	 */
+	private void addTerms(InvertedIndex other, int[] remap, int[] termRemap) {
+		int[] sizes = new int[remap.length];
+		for (int otherId = 0; otherId < termRemap.length; otherId++) {
+			if (termRemap[otherId] >= 0) {
+				PostingList postingList = other.postings.get(otherId);
+				for (int i = 0; i < postingList.size(); i++) {
+					sizes[postingList.document(i)]++;
+				}
+			}
+		}
+		
+		int[][] added = new int[remap.length][];
+		for (int otherDocument = 0; otherDocument < remap.length; otherDocument++) {
+			added[otherDocument] = new int[sizes[otherDocument]];
+			sizes[otherDocument] = 0;
+		}
+		for (int otherId = 0; otherId < termRemap.length; otherId++) {
+			if (termRemap[otherId] >= 0) {
+				PostingList postingList = other.postings.get(otherId);
+				for (int i = 0; i < postingList.size(); i++) {
+					int otherDocument = postingList.document(i);
+					added[otherDocument][sizes[otherDocument]++] = termRemap[otherId];
+				}
+			}
+		}
+		
+		for (int otherDocument = 0; otherDocument < remap.length; otherDocument++) {
+			if (remap[otherDocument] >= 0 && added[otherDocument].length > 0) {
+				Arrays.sort(added[otherDocument]);
+				documents.addTerms(remap[otherDocument], added[otherDocument]);
+			}
+		}
+	}
+	
+	/**
+	 * Records that the location has at least the given number of stems, adding
+	 * it without any words if it is not in the index yet, so the parts of a
+	 * split index can agree on the number of stems of a location
+	 * 
+	 * @param location the location
+	 * @param count the number of stems of the location
+	 */
+	protected void updateCount(String location, int count) {
+		checkNotFrozen();
+		documents.updateCount(documents.add(location), count);
+	}
+	
+	/**
+	 * Splits the index into parts by the hash of each word, so every word is in
+	 * exactly one part. Every part gets all the documents of this index with
+	 * their number of stems, even documents without any words in that part, so
+	 * the scores stay the same. The positions are shared with this index, which
+	 * must not be modified afterwards.
+	 * 
+	 * @param parts the number of parts
+	 * @return the parts, indexed as returned by {@link #partOf(String, int)}
+	 */
+	public InvertedIndex[] split(int parts) {
+		InvertedIndex[] split = new InvertedIndex[parts];
+		int[] remap = new int[documents.limit()];
+		Arrays.fill(remap, -1);
+		for (int i = 0; i < parts; i++) {
+			split[i] = newPart();
+			for (int document = 0; document < remap.length; document++) {
+				String location = documents.location(document);
+				if (location != null) {
+					// the documents are added in the same order, so the ids are the same in every part
+					remap[document] = split[i].documents.add(location);
+					split[i].documents.updateCount(remap[document], documents.count(document));
 				}
 			}
 		}
 		
-		for (String location : otherInvertedIndex.countMap.keySet()) {
-			Integer position = otherInvertedIndex.countMap.get(location);
-			if (!countMap.containsKey(location) || position > countMap.get(location)) {
-				this.countMap.put(location, position);
+		int[][] termRemaps = new int[parts][terms.limit()];
+		for (int[] termRemap : termRemaps) {
+			Arrays.fill(termRemap, -1);
+		}
+		for (int id = 0; id < terms.limit(); id++) {
+			String word = terms.word(id);
+			if (word == null) {
+				continue;
+			}
+			int part = partOf(word, parts);
+			termRemaps[part][id] = split[part].postingsFor(word);
+			PostingList postingList = postings.get(id);
+			PostingList partPostings = split[part].postings.get(termRemaps[part][id]);
+			for (int i = 0; i < postingList.size(); i++) {
+				if (positional) {
+					partPostings.addAll(remap[postingList.document(i)], postingList.positions(i));
+				}
+				else {
+					partPostings.addCount(remap[postingList.document(i)], postingList.count(i));
+				}
 			}
 		}
+		for (int i = 0; i < parts; i++) {
+			split[i].addTerms(this, remap, termRemaps[i]);
+		}
+		return split;
+	}
+	
+	/**
+	 * Returns the part a word belongs to when an index is split
+	 * 
+	 * @param word stemmed word
+	 * @param parts the number of parts
+	 * @return the part of the word
+	 * 
+	 * @see #split(int)
+	 */
+	public static int partOf(String word, int parts) {
+		return Math.floorMod(word.hashCode(), parts);
 	}
 	
 	/**
-	 * add the each stem, path and location to infoMap
+	 * add the each stem, path and location to the index
 	 * 
-	 * @param word stemmed word to add to the infoMap
+	 * @param word stemmed word to add to the index
 	 * @param location path of the stemmed word
  	 * @param position position of the stemmed word
  	 */
 	public void add(String word, String location, Integer position) {
-		this.infoMap.putIfAbsent(word, new TreeMap<>());
-		this.infoMap.get(word).putIfAbsent(location, new TreeSet<Integer>());
-		this.infoMap.get(word).get(location).add(position);
-		
-		if (!countMap.containsKey(location) || position > countMap.get(location)) {
-			this.countMap.put(location, position);
+		checkNotFrozen();
+		prepared = null;
+		int document = documents.add(location);
+		int id = postingsFor(word);
+		if (!positional) {
+			if (postings.get(id).addCount(document, 1) == 1) {
+				documents.addTerm(document, id);
+			}
+			documents.updateCount(document, position);
+			return;
+		}
+		PositionList positions = postings.get(id).getOrAdd(document);
+		if (positions.isEmpty()) {
+			documents.addTerm(document, id);
+		}
+		positions.add(position.intValue());
+		documents.updateCount(document, position);
+	}
+	
+	/**
+	 * Returns the id of the word, creating an empty posting list if the word is new
+	 * 
+	 * @param word stemmed word
+	 * @return the id of the word in the term dictionary
+	 */
+	private int postingsFor(String word) {
+		int id = terms.add(word);
+		if (id == postings.size()) {
+			postings.add(new PostingList(positional));
+		}
+		return id;
+	}
+	
+	/**
+	 * Compacts the built index into an immutable snapshot that is optimized for
+	 * reading. The word ids are reassigned in sorted order so the dictionary is a
+	 * sorted array, the positions of each word are packed into one buffer, on
+	 * or off the heap as set by {@link #setOffHeap(boolean)}, and the document
+	 * table precomputes its counts and location order. The ids
+	 * left empty by removed words and documents are reused, and the scorer is
+	 * prepared for the final statistics. The index can no longer be modified
+	 * afterwards.
+	 */
+	public void freeze() {
+		if (frozen) {
+			return;
+		}
+		int[] remap = terms.freeze();
+		int[] documentRemap = documents.freeze();
+		PostingList[] sorted = new PostingList[terms.size()];
+		for (int id = 0; id < remap.length; id++) {
+			if (remap[id] >= 0) {
+				sorted[remap[id]] = postings.get(id);
+			}
+		}
+		postings.clear();
+		arena = offHeap ? new OffHeapArena() : null;
+		for (PostingList postingList : sorted) {
+			if (documentRemap != null) {
+				postingList.renumber(documentRemap);
+			}
+			postingList.freeze(arena);
+			postings.add(postingList);
+		}
+		postings.trimToSize();
+		// the ids changed, and the statistics no longer will
+		prepared = prepare();
+		frozen = true;
+	}
+	
+	/**
+	 * Checks if the index has been frozen
+	 * 
+	 * @return true if the index is an immutable snapshot
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+	
+	/**
+	 * Writes a frozen index to a compact binary file that can be loaded back with
+	 * {@link #load(Path)}. The file starts with a magic number and version, then
+	 * stores the document table, the sorted term dictionary, and the postings of
+	 * every word in id order.
+	 * 
+	 * @param writePath path that is "-save" flag's value
+	 * @throws IOException if IO error occurs
+	 * @throws IllegalStateException if the index has not been frozen
+	 */
+	public void save(Path writePath) throws IOException, IllegalStateException {
+		if (!frozen) {
+			throw new IllegalStateException("Only a frozen index can be saved.");
+		}
+		try (BinaryIndexWriter output = new BinaryIndexWriter(writePath)) {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			documents.write(output);
+			terms.write(output);
+			for (PostingList postingList : postings) {
+				postingList.write(output);
+			}
+		}
+	}
+	
+	/**
+	 * Loads a binary index file written by {@link #save(Path)} into this empty
+	 * index through memory-mapped buffers. The positions are read straight from
+	 * the mapped file when needed instead of being copied onto the heap. The
+	 * index is frozen afterwards, and stores positions only if the saved index
+	 * did. If the file cannot be read, such as when it was cut short, the index
+	 * is left empty and can still be built or loaded.
+	 * 
+	 * @param loadPath path that is "-load" flag's value
+	 * @throws IOException if IO error occurs or the file is not a saved index
+	 * @throws IllegalStateException if the index is not empty
+	 */
+	public void load(Path loadPath) throws IOException, IllegalStateException {
+		checkNotFrozen();
+		if (terms.size() > 0 || documents.size() > 0) {
+			throw new IllegalStateException("Can only load into an empty index.");
+		}
+		try (MappedIndexReader input = new MappedIndexReader(loadPath)) {
+			if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+				throw new IOException("Not a saved index file: " + loadPath);
+			}
+			documents.read(input);
+			terms.read(input);
+			postings.ensureCapacity(terms.size());
+			for (int id = 0; id < terms.size(); id++) {
+				postings.add(PostingList.read(input));
+			}
+		}
+		catch (IOException e) {
+			clear();
+			throw e;
+		}
+		catch (RuntimeException e) {
+			// a corrupt size or length, such as a negative one
+			clear();
+			throw new IOException("Corrupt index file: " + loadPath, e);
+		}
+		if (!postings.isEmpty()) {
+			positional = postings.get(0).hasPositions();
+		}
+		prepared = prepare();
+		frozen = true;
+	}
+	
+	/**
+	 * Empties an index whose load failed partway through
+	 */
+	private void clear() {
+		documents.clear();
+		terms.clear();
+		postings.clear();
+	}
+	
+	/**
+	 * Makes sure the index stores the positions the query needs
+	 * 
+	 * @param query the parsed query
+	 * @throws IllegalStateException if the query has phrase or NEAR clauses and
+	 *   the index does not store positions
+	 */
+	protected void checkPositions(Query query) throws IllegalStateException {
+		if (!positional && query.hasClauses()) {
+			throw new IllegalStateException("Cannot match phrases without positions.");
+		}
+	}
+	
+	/**
+	 * Makes sure the index can still be modified
+	 * 
+	 * @throws IllegalStateException if the index has been frozen
+	 */
+	private void checkNotFrozen() throws IllegalStateException {
+		if (frozen) {
+			throw new IllegalStateException("Cannot modify a frozen index.");
 		}
 	}
 	
@@ -109,80 +773,641 @@ public class InvertedIndex {
 	}
 	
 	/**
-	 * Search if the query stems matches the infoMap stems exactly
+	 * Returns only the best k results of an exact or partial search, using
+	 * MaxScore dynamic pruning. The posting lists of the matched words are
+	 * walked together one document at a time, sorted by the bound of their
+	 * words from the scorer. Once the best k results seen so far all score
+	 * above what the words with the lowest bounds could add up to together,
+	 * those lists stop proposing documents, and they are only galloped forward
+	 * to documents found through the others. The rest of a document is not
+	 * scored either once what is left of its lists cannot lift it to the worst
+	 * of the best k. Common words and the many words of a short prefix are
+	 * mostly skipped this way instead of scored for every document.
 	 * 
-	 * @param queries set of query words for each query line
-	 * @return a list of SearchResults objects
+	 * Every document visited this way looks at every list, so a short prefix
+	 * that matches thousands of rare words would visit far more lists than it
+	 * has postings. Such searches accumulate the matches one list at a time
+	 * instead and only keep the best k of them.
+	 * 
+	 * The results are the same as sorting every match, since only documents
+	 * that score strictly below the worst of the best k are skipped.
+	 * 
+	 * @param query set of query words for each query line
+	 * @param exactSearch searches exactly if true and by prefix otherwise
+	 * @param k the maximum number of results to return
+	 * @return a sorted list of at most k SearchResults objects
 	 */
-	public List<SearchResult> exactSearch(Set<String> queries) {
-		// return list of SearchResults to return
-		List<SearchResult> results = new ArrayList<SearchResult>();
+	public List<SearchResult> search(Set<String> query, boolean exactSearch, int k) {
+		if (k <= 0) {
+			return new ArrayList<SearchResult>();
+		}
+		
+		// a word matched by more than one query stem is counted once for each, like in a full search
+		int[] ids = query.stream()
+				.flatMapToInt(word -> Arrays.stream(termIds(word, exactSearch)))
+				.toArray();
+		long postingCount = 0;
+		for (int id : ids) {
+			postingCount += postings.get(id).size();
+		}
+		if (ids.length * Math.min(documents.size(), postingCount) > VISITS_PER_POSTING * postingCount) {
+			return top(results(accumulate(query, exactSearch)), k);
+		}
+		
+		Scorer scorer = scorer();
+		ids = Arrays.stream(ids)
+				.boxed()
+				.sorted(Comparator.comparingDouble(scorer::bound))
+				.mapToInt(Integer::intValue)
+				.toArray();
+		PostingList[] lists = postingLists(ids);
+		int[] cursors = new int[lists.length];
 		
-		// for keeping track of matched paths and checks for path duplicates
-		HashMap<String, SearchResult> lookupMap = new HashMap<String, SearchResult>();
+		// the most that the lists up to each index can add to the score of a document
+		double[] upTo = new double[lists.length];
+		for (int i = 0; i < lists.length; i++) {
+			upTo[i] = (i > 0 ? upTo[i - 1] : 0) + scorer.bound(ids[i]);
+		}
+		
+		PriorityQueue<SearchResult> heap = new PriorityQueue<SearchResult>(Math.min(k, documents.size()) + 1, Collections.reverseOrder());
+		double threshold = Double.NEGATIVE_INFINITY;
+		// the lists before this index cannot lift a document into the best k on their own
+		int essential = 0;
 		
-		// Search result object to store the results
-		SearchResult searchRes = null;
+		candidates: while (true) {
+			int document = Integer.MAX_VALUE;
+			for (int i = essential; i < lists.length; i++) {
+				if (cursors[i] < lists[i].size()) {
+					document = Math.min(document, lists[i].document(cursors[i]));
+				}
+			}
+			if (document == Integer.MAX_VALUE) {
+				break;
+			}
+			
+			int count = 0;
+			double weight = 0;
+			for (int i = essential; i < lists.length; i++) {
+				if (cursors[i] < lists[i].size() && lists[i].document(cursors[i]) == document) {
+					int matches = lists[i].count(cursors[i]);
+					count += matches;
+					weight += scorer.weight(ids[i], document, matches);
+					cursors[i]++;
+				}
+			}
+			for (int i = essential - 1; i >= 0; i--) {
+				if (scorer.score(document, count, weight) + upTo[i] < threshold) {
+					continue candidates;
+				}
+				cursors[i] = lists[i].advance(cursors[i], document);
+				if (cursors[i] < lists[i].size() && lists[i].document(cursors[i]) == document) {
+					int matches = lists[i].count(cursors[i]);
+					count += matches;
+					weight += scorer.weight(ids[i], document, matches);
+				}
+			}
+			
+			if (heap.size() < k) {
+				heap.add(new SearchResult(document, count, weight));
+			}
+			else if (!heap.peek().outranks(count, scorer.score(document, count, weight))) {
+				SearchResult result = new SearchResult(document, count, weight);
+				if (result.compareTo(heap.peek()) < 0) {
+					heap.poll();
+					heap.add(result);
+				}
+			}
+			
+			if (heap.size() == k && heap.peek().getScore() > threshold) {
+				threshold = heap.peek().getScore();
+				while (essential < lists.length && upTo[essential] < threshold) {
+					essential++;
+				}
+			}
+		}
+		return sorted(heap);
+	}
+	
+	/**
+	 * Searches for a parsed query, which may have phrase and NEAR clauses as well
+	 * as single stems. Plain queries are searched like a set of stems.
+	 * 
+	 * @param query the parsed query
+	 * @param exactSearch matches the single stems exactly if true and by prefix
+	 *   otherwise, while clauses always match exactly
+	 * @return a sorted list of SearchResults objects
+	 */
+	public List<SearchResult> search(Query query, boolean exactSearch) {
+		if (query.isPlain()) {
+			return search(query.words(), exactSearch);
+		}
+		List<SearchResult> results = matches(query, exactSearch);
+		Collections.sort(results);
+		return results;
+	}
+	
+	/**
+	 * Returns only the best k results of a search for a parsed query
+	 * 
+	 * @param query the parsed query
+	 * @param exactSearch matches the single stems exactly if true and by prefix
+	 *   otherwise, while clauses always match exactly
+	 * @param k the maximum number of results to return
+	 * @return a sorted list of at most k SearchResults objects
+	 * 
+	 * @see #search(Query, boolean)
+	 */
+	public List<SearchResult> search(Query query, boolean exactSearch, int k) {
+		if (query.isPlain()) {
+			return search(query.words(), exactSearch, k);
+		}
+		return top(matches(query, exactSearch), k);
+	}
+	
+	/**
+	 * Returns a cursor over the results of a parsed query, which only searches
+	 * for the best results as they are pulled
+	 * 
+	 * @param query the parsed query
+	 * @param exactSearch matches the single stems exactly if true and by prefix
+	 *   otherwise, while clauses always match exactly
+	 * @return a cursor over the results in sorted order
+	 * @throws IllegalStateException if the query has phrase or NEAR clauses and
+	 *   the index does not store positions
+	 * 
+	 * @see #search(Query, boolean, int)
+	 */
+	public SearchCursor cursor(Query query, boolean exactSearch) throws IllegalStateException {
+		checkPositions(query);
+		return new SearchCursor(k -> search(query, exactSearch, k));
+	}
+	
+	/**
+	 * Returns the best k results in sorted order
+	 * 
+	 * @param results the unsorted results
+	 * @param k the maximum number of results to return
+	 * @return a sorted list of at most k SearchResults objects
+	 */
+	protected static List<SearchResult> top(Collection<SearchResult> results, int k) {
+		if (k <= 0) {
+			return new ArrayList<SearchResult>();
+		}
 		
-		for (String query : queries) {
-			if (infoMap.containsKey(query)) {
-				searchHelper(query, lookupMap, searchRes, results);
+		PriorityQueue<SearchResult> heap = new PriorityQueue<SearchResult>(Math.min(k, results.size()) + 1, Collections.reverseOrder());
+		for (SearchResult result : results) {
+			if (heap.size() < k) {
+				heap.add(result);
+			}
+			else if (result.compareTo(heap.peek()) < 0) {
+				heap.poll();
+				heap.add(result);
 			}
 		}
+		return sorted(heap);
+	}
+	
+	/**
+	 * Empties a heap of results whose head is the worst result
+	 * 
+	 * @param heap the heap of results
+	 * @return the results from best to worst
+	 */
+	private static List<SearchResult> sorted(PriorityQueue<SearchResult> heap) {
+		SearchResult[] best = new SearchResult[heap.size()];
+		for (int i = best.length - 1; i >= 0; i--) {
+			best[i] = heap.poll();
+		}
+		return new ArrayList<SearchResult>(Arrays.asList(best));
+	}
+	
+	/**
+	 * Search if the query stems matches the indexed stems exactly
+	 * 
+	 * @param queries set of query words for each query line
+	 * @return a list of SearchResults objects
+	 */
+	public List<SearchResult> exactSearch(Set<String> queries) {
+		List<SearchResult> results = matches(queries, true);
 		Collections.sort(results);
 		return results;
 	}
 	
 	/**
-	 * Search if the stems in infoMap starts with query stems.
+	 * Search if the indexed stems starts with query stems.
 	 * 
 	 * @param queries set of query words for each query line
 	 * @return a list of SearchResults objects
 	 */
 	public List<SearchResult> partialSearch(Set<String> queries) {
-		// return list of SearchResults to return
-		List<SearchResult> results = new ArrayList<SearchResult>();
-
-		// for keeping track of matched paths and checks for path duplicates
-		HashMap<String, SearchResult> lookupMap = new HashMap<String, SearchResult>();
+		List<SearchResult> results = matches(queries, false);
+		Collections.sort(results);
+		return results;
+	}
+	
+	/**
+	 * Finds every document that matches the query stems without sorting them
+	 * 
+	 * @param queries set of query words for each query line
+	 * @param exactSearch matches the stems exactly if true and by prefix otherwise
+	 * @return an unsorted list of SearchResults objects
+	 */
+	protected List<SearchResult> matches(Set<String> queries, boolean exactSearch) {
+		return results(accumulate(queries, exactSearch));
+	}
+	
+	/**
+	 * Finds every document that matches the parsed query without sorting them
+	 * 
+	 * @param query the parsed query
+	 * @param exactSearch matches the single stems exactly if true and by prefix otherwise
+	 * @return an unsorted list of SearchResults objects
+	 */
+	protected List<SearchResult> matches(Query query, boolean exactSearch) {
+		checkPositions(query);
+		boolean intersect = !query.required().isEmpty() || !query.requiredClauses().isEmpty();
+		// with required stems or clauses, only the documents found by the intersection are counted
+		ScoreAccumulator accumulator = accumulate(intersect ? Collections.emptySet() : query.words(), exactSearch);
+		try {
+			if (intersect) {
+				intersect(query, exactSearch, accumulator);
+			}
+			for (Query.Clause clause : query.clauses()) {
+				accumulate(clause, accumulator, intersect);
+			}
+			
+			List<PostingList> excluded = new ArrayList<>();
+			for (String word : query.excluded()) {
+				excluded.addAll(Arrays.asList(postingLists(word, exactSearch)));
+			}
+			List<Query.Clause> excludedClauses = query.excludedClauses();
+			if (!excluded.isEmpty() || !excludedClauses.isEmpty()) {
+				accumulator.removeIf(document -> excluded.stream().anyMatch(list -> list.find(document) >= 0)
+						|| excludedClauses.stream().anyMatch(clause -> count(clause, document) > 0));
+			}
+		}
+		catch (RuntimeException e) {
+			accumulator.clear();
+			throw e;
+		}
+		return results(accumulator);
+	}
+	
+	/**
+	 * Returns the number of documents a word appears in, counted over the whole
+	 * corpus if the index is one part of a larger one, so every part weighs the
+	 * matches of a clause like matches of the same stem
+	 * 
+	 * @param id the word id
+	 * @return the number of documents of the word
+	 */
+	private int frequency(int id) {
+		CorpusStats current = corpus;
+		return current != null ? current.getFrequency(terms.word(id)) : postings.get(id).size();
+	}
+	
+	/**
+	 * Adds the matches of a phrase or NEAR clause to the accumulator. The
+	 * documents are visited one at a time in order of the rarest stem, and the
+	 * posting lists of the other stems gallop forward to that document, so
+	 * documents without every stem are skipped before any positions are read.
+	 * 
+	 * @param clause the phrase or NEAR clause
+	 * @param accumulator adds up the matches of each document
+	 * @param matchedOnly only adds matches to documents that were already matched
+	 */
+	private void accumulate(Query.Clause clause, ScoreAccumulator accumulator, boolean matchedOnly) {
+		List<String> words = clause.words();
+		PostingList[] lists = new PostingList[words.size()];
+		int lead = 0;
+		int weighedId = -1;
+		for (int i = 0; i < lists.length; i++) {
+			int id = terms.id(words.get(i));
+			if (id < 0) {
+				return;
+			}
+			lists[i] = postings.get(id);
+			if (lists[i].size() < lists[lead].size()) {
+				lead = i;
+			}
+			if (weighedId < 0 || frequency(id) < frequency(weighedId)) {
+				weighedId = id;
+			}
+		}
+		
+		// the matches of the clause are weighed like matches of its rarest stem in the whole corpus
+		Scorer scorer = scorer();
+		
+		int[] cursors = new int[lists.length];
+		PositionList[] positions = new PositionList[lists.length];
+		for (int index = 0; index < lists[lead].size(); index++) {
+			int document = lists[lead].document(index);
+			boolean all = true;
+			for (int i = 0; i < lists.length && all; i++) {
+				cursors[i] = i == lead ? index : lists[i].advance(cursors[i], document);
+				if (cursors[i] == lists[i].size()) {
+					// no later document has every stem
+					return;
+				}
+				all = lists[i].document(cursors[i]) == document;
+			}
+			if (all) {
+				for (int i = 0; i < lists.length; i++) {
+					positions[i] = lists[i].positions(cursors[i]);
+				}
+				int count = clause.count(positions);
+				if (count > 0 && (!matchedOnly || accumulator.count(document) > 0)) {
+					accumulator.add(document, count, scorer.weight(weighedId, document, count));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Counts the matches of a phrase or NEAR clause in one document
+	 * 
+	 * @param clause the phrase or NEAR clause
+	 * @param document the document id
+	 * @return the number of matches, or 0 if the document is missing a stem
+	 */
+	private int count(Query.Clause clause, int document) {
+		List<String> words = clause.words();
+		PositionList[] positions = new PositionList[words.size()];
+		for (int i = 0; i < positions.length; i++) {
+			int id = terms.id(words.get(i));
+			if (id < 0) {
+				return 0;
+			}
+			PostingList postingList = postings.get(id);
+			int index = postingList.find(document);
+			if (index < 0) {
+				return 0;
+			}
+			positions[i] = postingList.positions(index);
+		}
+		return clause.count(positions);
+	}
+	
+	/**
+	 * Adds the matches of the documents that have every required stem and
+	 * clause of the query. The posting lists of the required stems and of the
+	 * stems of the required clauses are intersected by taking turns galloping
+	 * each of them forward to the current candidate document, starting with the
+	 * rarest, so the documents between the matches are skipped instead of
+	 * visited. The positions of the required clauses are only read for the
+	 * documents with all their stems. The single stems of the query only add to
+	 * the matches of those documents.
+	 * 
+	 * @param query the parsed query with at least one required stem or clause
+	 * @param exactSearch matches the stems exactly if true and by prefix otherwise
+	 * @param accumulator adds up the matches of each document
+	 */
+	private void intersect(Query query, boolean exactSearch, ScoreAccumulator accumulator) {
+		List<int[]> requiredIds = new ArrayList<>();
+		for (String word : query.required()) {
+			int[] ids = termIds(word, exactSearch);
+			if (ids.length == 0) {
+				return;
+			}
+			requiredIds.add(ids);
+		}
+		Comparator<int[]> rarest = Comparator.comparingInt(ids -> Arrays.stream(ids).map(id -> postings.get(id).size()).sum());
+		requiredIds.sort(rarest);
+		int stems = requiredIds.size();
+		
+		// the stems of the required clauses always match exactly and only narrow down the candidates
+		List<Query.Clause> clauses = query.requiredClauses();
+		int[] weighedIds = new int[clauses.size()];
+		List<int[]> clauseIds = new ArrayList<>();
+		for (int c = 0; c < weighedIds.length; c++) {
+			weighedIds[c] = -1;
+			for (String word : clauses.get(c).words()) {
+				int id = terms.id(word);
+				if (id < 0) {
+					return;
+				}
+				clauseIds.add(new int[] { id });
+				if (weighedIds[c] < 0 || frequency(id) < frequency(weighedIds[c])) {
+					weighedIds[c] = id;
+				}
+			}
+		}
+		clauseIds.sort(rarest);
+		requiredIds.addAll(clauseIds);
 		
-		// Search result object to store the results
-		SearchResult searchRes = null;
+		List<PostingList[]> required = new ArrayList<>();
+		for (int[] ids : requiredIds) {
+			required.add(postingLists(ids));
+		}
+		
+		int[] countedIds = query.words().stream()
+				.flatMapToInt(word -> Arrays.stream(termIds(word, exactSearch)))
+				.toArray();
+		PostingList[] counted = postingLists(countedIds);
+		int[] countedCursors = new int[counted.length];
+		
+		int[][] cursors = new int[required.size()][];
+		for (int i = 0; i < cursors.length; i++) {
+			cursors[i] = new int[required.get(i).length];
+		}
+		Scorer scorer = scorer();
+		
+		int document = 0;
+		candidates: while (true) {
+			for (int i = 0; i < cursors.length; i++) {
+				int next = advance(required.get(i), cursors[i], document);
+				if (next < 0) {
+					return;
+				}
+				if (next > document) {
+					document = next;
+					continue candidates;
+				}
+			}
+			
+			// every required stem is in the document, but the clauses may not line up
+			int count = 0;
+			double weight = 0;
+			boolean matched = true;
+			for (int c = 0; c < weighedIds.length && matched; c++) {
+				int matches = count(clauses.get(c), document);
+				count += matches;
+				weight += scorer.weight(weighedIds[c], document, matches);
+				matched = matches > 0;
+			}
+			if (!matched) {
+				document++;
+				continue;
+			}
+			for (int i = 0; i < stems; i++) {
+				PostingList[] lists = required.get(i);
+				for (int j = 0; j < lists.length; j++) {
+					if (cursors[i][j] < lists[j].size() && lists[j].document(cursors[i][j]) == document) {
+						int matches = lists[j].count(cursors[i][j]);
+						count += matches;
+						weight += scorer.weight(requiredIds.get(i)[j], document, matches);
+					}
+				}
+			}
+			for (int i = 0; i < counted.length; i++) {
+				countedCursors[i] = counted[i].advance(countedCursors[i], document);
+				if (countedCursors[i] < counted[i].size() && counted[i].document(countedCursors[i]) == document) {
+					int matches = counted[i].count(countedCursors[i]);
+					count += matches;
+					weight += scorer.weight(countedIds[i], document, matches);
+				}
+			}
+			accumulator.add(document, count, weight);
+			document++;
+		}
+	}
+	
+	/**
+	 * Gallops each posting list forward to the first document at or after the
+	 * target
+	 * 
+	 * @param lists the posting lists of a stem
+	 * @param cursors the current index into each posting list, which is updated
+	 * @param target the document id to look for
+	 * @return the smallest document id at or after the target in any of the
+	 *   lists, or -1 if there is none
+	 */
+	private static int advance(PostingList[] lists, int[] cursors, int target) {
+		int next = -1;
+		for (int i = 0; i < lists.length; i++) {
+			cursors[i] = lists[i].advance(cursors[i], target);
+			if (cursors[i] < lists[i].size() && (next < 0 || lists[i].document(cursors[i]) < next)) {
+				next = lists[i].document(cursors[i]);
+			}
+		}
+		return next;
+	}
+	
+	/**
+	 * Returns the posting lists of a stem, or of every word that starts with it
+	 * 
+	 * @param word the query stem
+	 * @param exactSearch matches the stem exactly if true and by prefix otherwise
+	 * @return the posting lists, which may be empty
+	 */
+	private PostingList[] postingLists(String word, boolean exactSearch) {
+		return postingLists(termIds(word, exactSearch));
+	}
+	
+	/**
+	 * Returns the ids of a stem, or of every word that starts with it
+	 * 
+	 * @param word the query stem
+	 * @param exactSearch matches the stem exactly if true and by prefix otherwise
+	 * @return the word ids, which may be empty
+	 */
+	private int[] termIds(String word, boolean exactSearch) {
+		if (exactSearch) {
+			int id = terms.id(word);
+			return id >= 0 ? new int[] { id } : new int[0];
+		}
+		return terms.prefix(word);
+	}
+	
+	/**
+	 * Returns the posting lists of the word ids
+	 * 
+	 * @param ids the word ids
+	 * @return the posting list of each word id
+	 */
+	private PostingList[] postingLists(int[] ids) {
+		PostingList[] lists = new PostingList[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			lists[i] = postings.get(ids[i]);
+		}
+		return lists;
+	}
+	
+	/**
+	 * Adds up the matches of every document for the query stems in the score
+	 * accumulator of the current thread, which must be cleared afterwards
+	 * 
+	 * @param queries set of query words for each query line
+	 * @param exactSearch matches the stems exactly if true and by prefix otherwise
+	 * @return the accumulator of the current thread
+	 */
+	private ScoreAccumulator accumulate(Set<String> queries, boolean exactSearch) {
+		ScoreAccumulator accumulator = ACCUMULATOR.get();
+		accumulator.ensureCapacity(documents.limit());
 		
-		for (String query : queries) {
-			for (String stem : infoMap.tailMap(query).keySet()) {
-				if (!stem.startsWith(query)) {
-					break;
+		try {
+			Scorer scorer = scorer();
+			for (String query : queries) {
+				if (exactSearch) {
+					int id = terms.id(query);
+					if (id >= 0) {
+						searchHelper(id, scorer, accumulator);
+					}
 				}
 				else {
-					searchHelper(stem, lookupMap, searchRes, results);
+					for (int id : terms.prefix(query)) {
+						searchHelper(id, scorer, accumulator);
+					}
 				}
 			}
 		}
-		Collections.sort(results);
-		return results;
+		catch (RuntimeException e) {
+			accumulator.clear();
+			throw e;
+		}
+		return accumulator;
+	}
+	
+	/**
+	 * Helper method for exact and partial search that adds the matches of every document of the stem
+	 * 
+	 * @param id id of the query stem or invertedIndex stem to loop through documents of the stem
+	 * @param scorer the prepared scorer that weighs the matches
+	 * @param accumulator adds up the matches of each document
+	 */
+	private void searchHelper(int id, Scorer scorer, ScoreAccumulator accumulator) {
+		PostingList postingList = postings.get(id);
+		for (int i = 0; i < postingList.size(); i++) {
+			int document = postingList.document(i);
+			int matches = postingList.count(i);
+			accumulator.add(document, matches, scorer.weight(id, document, matches));
+		}
 	}
 	
 	/**
-	 * Helper method for exact and partial search that loops through paths and compares/updates lookupMap
+	 * Builds a result for every matched document and clears the accumulator
 	 * 
-	 * @param stem query stem or invertedIndex stem to loop through paths of the stem
-	 * @param lookupMap stores matched paths and SearchResults objects and keep track of duplicates
-	 * @param searchRes single SearchResult object
-	 * @param results list of all the SearchResult
+	 * @param accumulator the accumulator of the current thread
+	 * @return an unsorted list of SearchResults objects
 	 */
-	private void searchHelper(String stem, HashMap<String, SearchResult> lookupMap, SearchResult searchRes, List<SearchResult> results) {
-		for (String path : infoMap.get(stem).keySet()) {
-			if (lookupMap.containsKey(path)) {
-				searchRes = lookupMap.get(path);
-			} else {
-				searchRes = new SearchResult(path);
-				results.add(searchRes);
-				lookupMap.put(path, searchRes);
+	private List<SearchResult> results(ScoreAccumulator accumulator) {
+		try {
+			List<SearchResult> results = new ArrayList<SearchResult>(accumulator.size());
+			for (int i = 0; i < accumulator.size(); i++) {
+				int document = accumulator.document(i);
+				results.add(new SearchResult(document, accumulator.count(document), accumulator.weight(document)));
 			}
-			searchRes.update(stem);
+			return results;
 		}
+		finally {
+			accumulator.clear();
+		}
+	}
+	
+	/**
+	 * Builds a result for a location of this index, whose matches are weighed
+	 * like matches of the word
+	 * 
+	 * @param word the stemmed word, which must be in the index
+	 * @param location the matched location, which must be in the index
+	 * @param count the number of matches in the location
+	 * @return the search result
+	 */
+	protected SearchResult result(String word, String location, int count) {
+		int document = documents.id(location);
+		return new SearchResult(document, count, scorer().weight(terms.id(word), document, count));
 	}
+	
 	/**
 	 * class that stores a single search result and implements compareTo method for sorting
 	 *
@@ -194,24 +1419,61 @@ public class InvertedIndex {
 		/** The number of times query is found in the inverted index */
 		private int count;
 		
-		/** The matched file path from searching. */
+		/** The total weight of the matches, used by scorers other than the default */
+		private final double weight;
+		
+		/** The document id of the matched file path from searching. */
+		private final int document;
+		
+		/** The matched file path, kept in case the index changes after the search. */
 		private final String location;
 		
+		/** Whether the index was frozen, so its document ids can be compared by rank. */
+		private final boolean ranked;
+		
 		/**
-		 * initializes location, count and score
+		 * initializes document, count, weight and score
 		 * 
-		 * @param path the source
+		 * @param document the document id of the source
+		 * @param count the number of matches in the document
+		 * @param weight the total weight of the matches in the document
+		 * 
+		 * @see Scorer#weight(int, int, int)
 		 */
-		public SearchResult(String path) {
-			location = path;
-			count = 0;
-			score = 0.0;
+		public SearchResult(int document, int count, double weight) {
+			this.document = document;
+			this.count = count;
+			this.weight = weight;
+			this.score = scorer().score(document, count, weight);
+			this.location = documents.location(document);
+			this.ranked = frozen;
 		}
 		
 		@Override
 		public String toString() {
 			String formatScore = String.format("%.8f", score);
-			return "\"count\": " + count + ",\n\t\t\t" + "\"score\": " + formatScore + ",\n\t\t\t" + "\"where\": " + "\"" + location + "\"\n\t\t";
+			return "\"count\": " + count + ",\n\t\t\t" + "\"score\": " + formatScore + ",\n\t\t\t" + "\"where\": " + "\"" + getLocation() + "\"\n\t\t";
+		}
+		
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof SearchResult && ((SearchResult) other).document == document
+					&& ((SearchResult) other).index() == index();
+		}
+		
+		@Override
+		public int hashCode() {
+			return Integer.hashCode(document);
+		}
+		
+		/**
+		 * returns the index that produced the result, since document ids are only
+		 * meaningful inside the index that assigned them
+		 * 
+		 * @return the index of the result
+		 */
+		private InvertedIndex index() {
+			return InvertedIndex.this;
 		}
 
 		@Override
@@ -227,7 +1489,10 @@ public class InvertedIndex {
 					return 1;
 				}
 				else if (Integer.compare(this.count, otherResult.count) == 0) {
-					return this.location.compareToIgnoreCase(otherResult.location);
+					if (otherResult.index() == index() && ranked && otherResult.ranked) {
+						return documents.compare(this.document, otherResult.document);
+					}
+					return getLocation().compareToIgnoreCase(otherResult.getLocation());
 				}
 				else {
 					return -1;
@@ -237,13 +1502,30 @@ public class InvertedIndex {
 		}
 		
 		/**
-		 * updates score and count for the query word
+		 * combines the matches of this result with the matches of another result
+		 * for the same location, such as from another part of a split index
+		 * 
+		 * @param other a result for the same location
+		 * @return a new result with the matches of both results
+		 * 
+		 * @see InvertedIndex#split(int)
+		 */
+		public SearchResult combine(SearchResult other) {
+			return new SearchResult(document, count + other.count, weight + other.weight);
+		}
+		
+		/**
+		 * checks if this result sorts before any result with the given count and
+		 * score, without building that result
 		 * 
-		 * @param word query word
+		 * @param count the number of matches of the other result
+		 * @param score the score of the other result
+		 * @return true if this result has a higher score, or the same score and a
+		 *   higher count
 		 */
-		private void update(String word) {
-			this.count += infoMap.get(word).get(location).size();
-			this.score = (double) this.count / countMap.get(location);
+		private boolean outranks(int count, double score) {
+			int compared = Double.compare(this.score, score);
+			return compared > 0 || (compared == 0 && this.count > count);
 		}
 		
 		/**
@@ -272,15 +1554,51 @@ public class InvertedIndex {
 		public String getLocation() {
 			return location;
 		}
+		
+		/**
+		 * returns document id
+		 * 
+		 * @return document id
+		 */
+		public int getDocument() {
+			return document;
+		}
+	}
+	
+	/**
+	 * Counts the words, documents, postings and positions of the index and
+	 * estimates the memory taken by each of its structures. The estimate only
+	 * walks the arrays of the index, without decoding any positions.
+	 * 
+	 * @return the memory stats of the index
+	 * @see MemoryStats#estimate(long)
+	 */
+	public MemoryStats memoryStats() {
+		long postingCount = 0;
+		long positionCount = 0;
+		long postingBytes = MemoryStats.list(postings.size());
+		long positionBytes = 0;
+		long offHeapBytes = 0;
+		for (PostingList postingList : postings) {
+			postingCount += postingList.size();
+			for (int i = 0; i < postingList.size(); i++) {
+				positionCount += postingList.count(i);
+			}
+			postingBytes += postingList.bytes();
+			positionBytes += postingList.positionBytes();
+			offHeapBytes += postingList.offHeapBytes();
+		}
+		return new MemoryStats(terms.size(), documents.size(), postingCount, positionCount, terms.bytes(),
+				documents.locationBytes(), postingBytes, positionBytes, documents.countBytes(), offHeapBytes);
 	}
 	
 	/**
-	 * returns the size of infoMap
+	 * returns the number of stemmed words in the index
 	 * 
-	 * @return the number of keys in infoMap
+	 * @return the number of words in the term dictionary
 	 */
 	public int size() {
-		return infoMap.size();
+		return terms.size();
 	}
 	
 	/**
@@ -290,7 +1608,8 @@ public class InvertedIndex {
 	 * @return the number of paths the word appeared in
 	 */
 	public int size(String word) {
-		return contains(word) ? infoMap.get(word).size() : 0;
+		int id = terms.id(word);
+		return id >= 0 ? postings.get(id).size() : 0;
 	}
 	
 	/**
@@ -301,17 +1620,23 @@ public class InvertedIndex {
 	 * @return the number of times the word appears in the location
 	 */
 	public int size(String word, String location) {
-		return contains(word, location) ? infoMap.get(word).get(location).size() : 0;
+		int id = terms.id(word);
+		int document = documents.id(location);
+		if (id >= 0 && document >= 0) {
+			int index = postings.get(id).find(document);
+			return index >= 0 ? postings.get(id).count(index) : 0;
+		}
+		return 0;
 	}
 	
 	/**
-	 * checks if the word exists in the infoMap
+	 * checks if the word exists in the index
 	 * 
 	 * @param word stemmed word
-	 * @return true if the word exists in the map; otherwise false
+	 * @return true if the word exists in the term dictionary; otherwise false
 	 */
 	public boolean contains(String word) {
-		return infoMap.containsKey(word);
+		return terms.id(word) >= 0;
 	}
 	
 	/**
@@ -322,7 +1647,9 @@ public class InvertedIndex {
 	 * @return true if the word is in the file path; otherwise false
 	 */
 	public boolean contains(String word, String location) {
-		return contains(word) && infoMap.get(word).containsKey(location);
+		int id = terms.id(word);
+		int document = documents.id(location);
+		return id >= 0 && document >= 0 && postings.get(id).find(document) >= 0;
 	}
 	
 	/**
@@ -332,19 +1659,28 @@ public class InvertedIndex {
 	 * @param location file path
 	 * @param position position of the word in the file
 	 * @return true if the the word is in the position of the file; otherwise false
+	 * @throws IllegalStateException if the index does not store positions
 	 */
 	public boolean contains(String word, String location, Integer position) {
-		return contains(word, location) && infoMap.get(word).get(location).contains(position);
+		PositionList positions = positions(word, location);
+		return positions != null && positions.contains(position.intValue());
 	}
 	
 	/**
-	 * Write the stems, location and file path with pretty JSON to the file
+	 * Write the stems, location and file path with pretty JSON to the file. An
+	 * index without positions writes how many times each stem appears in each
+	 * location instead of the positions.
 	 * 
 	 * @param writePath path that is "-index" flag's value
 	 * @throws IOException if IO error occurs
 	 */
 	public void writeJson(Path writePath) throws IOException {
-		SimpleJsonWriter.writeTripleNested(infoMap, writePath);
+		if (positional) {
+			SimpleJsonWriter.writeTripleNested(terms.words(), this::locations, writePath);
+		}
+		else {
+			SimpleJsonWriter.writeNestedObject(terms.words(), this::counts, writePath);
+		}
 	}
 	
 	/**
@@ -353,55 +1689,122 @@ public class InvertedIndex {
 	 * @throws IOException if IO error occurs
 	 */
 	public void writeCount(Path writePath) throws IOException {
-		SimpleJsonWriter.writeObject(countMap, writePath);
+		SimpleJsonWriter.writeObject(documents.counts(), writePath);
 	}
 	
 	/**
 	 * returns the paths and total word count
-	 * @return returns the countMap
+	 * @return returns the sorted map of paths and word counts
 	 */
 	public Map<String, Integer> getCount() {
-		return Collections.unmodifiableMap(this.countMap);
+		return documents.counts();
 	}
 	
 	/**
-	 * returns the set of stemmed words in infoMap
+	 * returns the sorted set of stemmed words in the index
 	 * 
 	 * @return the set of words
 	 */
 	public Set<String> get() {
-		return Collections.unmodifiableSet(infoMap.keySet());
+		return terms.words();
 	}
 	
 	/**
-	 * returns the set of paths for the stemmed word in infoMap
+	 * returns the sorted set of paths for the stemmed word
 	 * 
 	 * @param word stemmed word
-	 * @return the nested map (all the file paths and positions of the word)
+	 * @return all the file paths of the word
 	 */
 	public Set<String> get(String word) {
-		if (contains(word)) {
-			return Collections.unmodifiableSet(infoMap.get(word).keySet());
+		int id = terms.id(word);
+		if (id >= 0) {
+			PostingList postingList = postings.get(id);
+			TreeSet<String> locations = new TreeSet<>();
+			for (int i = 0; i < postingList.size(); i++) {
+				locations.add(documents.location(postingList.document(i)));
+			}
+			return Collections.unmodifiableSet(locations);
 		}
 		return Collections.emptySet();
 	}
 	
 	/**
-	 * returns the set of location for the stemmed word and the path in infoMap
+	 * returns the set of positions for the stemmed word and the path, copied to
+	 * the heap so it stays readable after the index changes or is closed
 	 * 
 	 * @param word stemmed word
 	 * @param location file path
 	 * @return return the positions of the word
+	 * @throws IllegalStateException if the index does not store positions
 	 */
 	public Set<Integer> get(String word, String location) {
-		if (contains(word, location)) {
-			return Collections.unmodifiableSet(infoMap.get(word).get(location));
+		PositionList positions = positions(word, location);
+		if (positions != null) {
+			return Collections.unmodifiableSet(new TreeSet<>(positions));
 		}
 		return Collections.emptySet();
 	}
 	
+	/**
+	 * returns the positions of the stemmed word in the path
+	 * 
+	 * @param word stemmed word
+	 * @param location file path
+	 * @return the positions of the word, or null if the word is not in the path
+	 * @throws IllegalStateException if the index does not store positions
+	 */
+	protected PositionList positions(String word, String location) {
+		int id = terms.id(word);
+		int document = documents.id(location);
+		if (id >= 0 && document >= 0) {
+			return postings.get(id).get(document);
+		}
+		return null;
+	}
+	
+	/**
+	 * returns the paths and positions of the stemmed word sorted by path
+	 * 
+	 * @param word stemmed word
+	 * @return map of file path to positions of the word
+	 */
+	private Map<String, PositionList> locations(String word) {
+		TreeMap<String, PositionList> locations = new TreeMap<>();
+		int id = terms.id(word);
+		if (id >= 0) {
+			PostingList postingList = postings.get(id);
+			for (int i = 0; i < postingList.size(); i++) {
+				locations.put(documents.location(postingList.document(i)), postingList.positions(i));
+			}
+		}
+		return locations;
+	}
+	
+	/**
+	 * returns the paths of the stemmed word and how many times it appears in
+	 * each, sorted by path
+	 * 
+	 * @param word stemmed word
+	 * @return map of file path to the number of times the word appears
+	 */
+	private Map<String, Integer> counts(String word) {
+		TreeMap<String, Integer> counts = new TreeMap<>();
+		int id = terms.id(word);
+		if (id >= 0) {
+			PostingList postingList = postings.get(id);
+			for (int i = 0; i < postingList.size(); i++) {
+				counts.put(documents.location(postingList.document(i)), postingList.count(i));
+			}
+		}
+		return counts;
+	}
+	
 	@Override
 	public String toString() {
-		return this.infoMap.toString();
+		TreeMap<String, Map<String, ?>> ordered = new TreeMap<>();
+		for (String word : terms.words()) {
+			ordered.put(word, positional ? locations(word) : counts(word));
+		}
+		return ordered.toString();
 	}
 }
\ No newline at end of file
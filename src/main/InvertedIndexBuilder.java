@@ -1,16 +1,16 @@
 package edu.usfca.cs272;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
-import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 import opennlp.tools.stemmer.Stemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
 
 /**
  * Builder class for building the files and directories
@@ -22,25 +22,33 @@ import opennlp.tools.stemmer.snowball.SnowballStemmer;
 public class InvertedIndexBuilder {
 	/**
 	 * If it is the input path is a file, stem each path/file and write to the output file using write()
+	 * The stems of the whole file are added at once so the positions can be encoded right away.
 	 * 
 	 * @param inputPath path that is "-text" flag's value
 	 * @param infoMap data structure that stores stemmed words, path and location
 	 * @throws IOException if IO error occurs
 	 */
 	public static void buildFile(Path inputPath, InvertedIndex infoMap) throws IOException {
-		Stemmer stemmer = new SnowballStemmer(ENGLISH);
-		String location = inputPath.toString();
-		int i = 0;
+		infoMap.addAll(stemFile(inputPath), inputPath.toString());
+	}
+	
+	/**
+	 * Stems every line of the file in order
+	 * 
+	 * @param inputPath the text file to stem
+	 * @return the list of stems in the file
+	 * @throws IOException if IO error occurs
+	 */
+	public static List<String> stemFile(Path inputPath) throws IOException {
+		Stemmer stemmer = StemCache.shared().stemmer();
+		List<String> stems = new ArrayList<>();
 		try (BufferedReader reader = Files.newBufferedReader(inputPath, UTF_8)) {
 			String line = null;
 			while ((line = reader.readLine()) != null) {
-				String[] parsed = TextParser.parse(line);
-				for (String words : parsed) {
-					infoMap.add(stemmer.stem(words).toString(), location, i + 1);
-					i++;
-				}
+				TextFileStemmer.stemLine(line, stemmer, stems);
 			}
 		}
+		return stems;
 	}
 	
 	/**
@@ -5,11 +5,16 @@ import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.commons.text.StringEscapeUtils;
 import org.apache.commons.text.StringSubstitutor;
@@ -27,20 +32,28 @@ public class MainServlet extends HttpServlet {
 	/** ID used for serialization, which we are not using. */
 	private static final long serialVersionUID = 1L;
 
+	/** Number of results shown per page unless the request asks for another size. */
+	private static final int PAGE_SIZE = 10;
+
+	/** Maximum number of results shown per page. */
+	private static final int MAX_RESULTS = 50;
+
+	/** Maximum number of recent searches that can still be paged through. */
+	private static final int MAX_SEARCHES = 100;
+
+	/** Generates the continuation tokens, so they cannot be guessed. */
+	private static final SecureRandom RANDOM = new SecureRandom();
+
 	/**
 	 *
 	 */
 	ThreadedInvertedIndex threadedIndex;
 
-	/**
-	 *
-	 */
-	List<String> results;
+	/** The recent searches by continuation token. */
+	private final Map<String, Search> searches;
 
-	/**
-	 *
-	 */
-	String query;
+	/** The continuation tokens of the recent searches, oldest first. */
+	private final Queue<String> tokens;
 
 	/** HTML Template **/
 	private final String htmlTemplate;
@@ -56,8 +69,8 @@ public class MainServlet extends HttpServlet {
 	public MainServlet(ThreadedInvertedIndex threadedIndex) throws IOException {
 		super();
 		this.threadedIndex = threadedIndex;
-		this.results = new ArrayList<>();
-		this.query = new String();
+		this.searches = new ConcurrentHashMap<>();
+		this.tokens = new ConcurrentLinkedQueue<>();
 		htmlTemplate = Files.readString(BASE.resolve("index.html"), StandardCharsets.UTF_8);
 	}
 
@@ -71,15 +84,37 @@ public class MainServlet extends HttpServlet {
 		values.put("method", "POST");
 		values.put("action", request.getServletPath());
 
-		values.put("query", "Your input: " + query);
-
-		if (results.isEmpty()) {
-			values.put("results", "");
+		// a page of the search with the continuation token, which is only run again by a new post
+		String token = request.getParameter("token");
+		Search search = token != null ? searches.get(token) : null;
+		int page = parameter(request, "page", 1);
+		int size = Math.min(parameter(request, "size", PAGE_SIZE), MAX_RESULTS);
+		
+		List<String> results = new ArrayList<>();
+		if (search != null && search.error != null) {
+			results.add(search.error);
 		}
-		else {
-			values.put("results", String.join("\n\n", results));
+		else if (search != null) {
+			for (InvertedIndex.SearchResult res : search.cursor.page(page, size)) {
+				results.add(String.format("<p><a href=\"%s\">%s</a></p>", res.getLocation(), res.getLocation()));
+			}
+			if (results.isEmpty() && page == 1) {
+				results.add("No results found.");
+			}
+			if (page > 1) {
+				results.add(link(request, token, page - 1, size, "Previous page"));
+			}
+			if (search.cursor.hasNextPage(page, size)) {
+				results.add(link(request, token, page + 1, size, "Next page"));
+			}
+		}
+		else if (token != null) {
+			results.add("This search has expired, please search again.");
 		}
 		
+		values.put("query", "Your input: " + (search != null ? search.query : ""));
+		values.put("results", String.join("\n\n", results));
+		
 		StringSubstitutor replacer = new StringSubstitutor(values);
 		String html = replacer.replace(htmlTemplate);
 
@@ -89,9 +124,6 @@ public class MainServlet extends HttpServlet {
 		PrintWriter out = response.getWriter();
 		out.println(html);
 		out.flush();
-
-		results.clear();
-		query = "";
 	}
 
 	@Override
@@ -99,26 +131,92 @@ public class MainServlet extends HttpServlet {
 		response.setContentType("text/html");
 
 		String input = request.getParameter("search");
-		query = input;
-		
-		if (query.isBlank()) {
-			query = "";
-			results.add("No results found.");
+		Search search;
+		if (input == null || input.isBlank()) {
+			search = new Search("", new SearchCursor(Collections.emptyList()), null);
 		} 
 		else {
-			query = StringEscapeUtils.escapeHtml4(query);
-			Set<String> cleaned = TextFileStemmer.uniqueStems(query);
-			
-			List<InvertedIndex.SearchResult> searchResults = threadedIndex.partialSearch(cleaned);
-			for (InvertedIndex.SearchResult res : searchResults) {
-				synchronized (results) {
-					String formatted = String.format("<p><a href=\"%s\">%s</a></p>", res.getLocation(), res.getLocation());
-					results.add(formatted);
-				}
+			// the raw input is parsed, since escaping would hide the quotes of phrases
+			Query parsed = Query.parse(input);
+			String query = StringEscapeUtils.escapeHtml4(input);
+			try {
+				search = new Search(query, threadedIndex.cursor(parsed, false), null);
 			}
+			catch (IllegalStateException e) {
+				search = new Search(query, new SearchCursor(Collections.emptyList()), "Unable to search for phrases in an index without positions.");
+			}
+		}
+		
+		byte[] bytes = new byte[16];
+		RANDOM.nextBytes(bytes);
+		String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+		searches.put(token, search);
+		tokens.add(token);
+		while (tokens.size() > MAX_SEARCHES) {
+			searches.remove(tokens.poll());
 		}
+		
 		response.setStatus(HttpServletResponse.SC_OK);
-		response.sendRedirect(request.getServletPath());
+		response.sendRedirect(request.getServletPath() + "?token=" + token);
+	}
+
+	/**
+	 * Returns a positive integer parameter of the request
+	 *
+	 * @param request the request
+	 * @param name the name of the parameter
+	 * @param backup the value to use if the parameter is missing or invalid
+	 * @return the value of the parameter, or the backup value
+	 */
+	private static int parameter(HttpServletRequest request, String name, int backup) {
+		try {
+			int value = Integer.parseInt(request.getParameter(name));
+			return value > 0 ? value : backup;
+		}
+		catch (NumberFormatException e) {
+			return backup;
+		}
+	}
+
+	/**
+	 * Formats a link to another page of a search
+	 *
+	 * @param request the request
+	 * @param token the continuation token of the search
+	 * @param page the page number, starting from 1
+	 * @param size the number of results per page
+	 * @param text the text of the link
+	 * @return the HTML of the link
+	 */
+	private static String link(HttpServletRequest request, String token, int page, int size, String text) {
+		return String.format("<p><a href=\"%s?token=%s&amp;page=%d&amp;size=%d\">%s</a></p>", request.getServletPath(), token, page, size, text);
 	}
 
-}
\ No newline at end of file
+	/**
+	 * A recent search and the cursor over its results
+	 */
+	private static class Search {
+		/** The query as entered, escaped for HTML. */
+		private final String query;
+
+		/** The cursor over the results of the query. */
+		private final SearchCursor cursor;
+
+		/** The message shown instead of the results, or null if the query ran. */
+		private final String error;
+
+		/**
+		 * Initializes a search
+		 *
+		 * @param query the query as entered, escaped for HTML
+		 * @param cursor the cursor over the results of the query
+		 * @param error the message shown instead of the results, or null if the
+		 *   query ran
+		 */
+		public Search(String query, SearchCursor cursor, String error) {
+			this.query = query;
+			this.cursor = cursor;
+			this.error = error;
+		}
+	}
+}
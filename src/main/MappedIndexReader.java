@@ -0,0 +1,141 @@
+package edu.usfca.cs272;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a binary index file through memory-mapped buffers. The file is mapped
+ * in windows of up to a gigabyte, so files larger than a single buffer can
+ * still be read. Slices returned by {@link #slice(int)} point straight into
+ * the mapped file and are not copied onto the heap. The mapped buffers stay
+ * valid after the reader is closed.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class MappedIndexReader implements Closeable {
+	/**
+	 * The size of each mapped window unless a single read needs more
+	 */
+	private static final long WINDOW = 1L << 30;
+
+	/**
+	 * The channel of the index file
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * The size of the index file
+	 */
+	private final long size;
+
+	/**
+	 * Where the current window starts in the file
+	 */
+	private long base;
+
+	/**
+	 * The currently mapped window
+	 */
+	private MappedByteBuffer window;
+
+	/**
+	 * Opens the index file and maps the first window
+	 *
+	 * @param path the index file to read
+	 * @throws IOException if unable to open or map the file
+	 */
+	public MappedIndexReader(Path path) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		this.size = channel.size();
+		this.base = 0;
+		this.window = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, WINDOW));
+	}
+
+	/**
+	 * Makes sure the next bytes are inside the current window, mapping a new
+	 * window that starts at the current position if they are not
+	 *
+	 * @param length the number of bytes about to be read
+	 * @throws IOException if the file ends before the bytes or unable to map
+	 */
+	private void ensure(long length) throws IOException {
+		if (length <= window.remaining()) {
+			return;
+		}
+		long position = base + window.position();
+		if (position + length > size) {
+			throw new EOFException("Index file ended early at byte " + position);
+		}
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException("Index section too large to map: " + length + " bytes");
+		}
+		base = position;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(size - base, Math.max(WINDOW, length)));
+	}
+
+	/**
+	 * Reads the next int
+	 *
+	 * @return the int
+	 * @throws IOException if unable to read
+	 */
+	public int readInt() throws IOException {
+		ensure(Integer.BYTES);
+		return window.getInt();
+	}
+
+	/**
+	 * Fills the array with the next ints
+	 *
+	 * @param values the array to fill
+	 * @throws IOException if unable to read
+	 */
+	public void readInts(int[] values) throws IOException {
+		ensure((long) values.length * Integer.BYTES);
+		window.asIntBuffer().get(values);
+		window.position(window.position() + values.length * Integer.BYTES);
+	}
+
+	/**
+	 * Reads the next UTF-8 string, stored as its length in bytes followed by the
+	 * bytes
+	 *
+	 * @return the string
+	 * @throws IOException if unable to read
+	 */
+	public String readString() throws IOException {
+		int length = readInt();
+		ensure(length);
+		byte[] bytes = new byte[length];
+		window.get(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	/**
+	 * Returns the next bytes as a read-only buffer backed by the mapped file
+	 *
+	 * @param length the number of bytes
+	 * @return a buffer of exactly the length, starting at index 0
+	 * @throws IOException if unable to read
+	 */
+	public ByteBuffer slice(int length) throws IOException {
+		ensure(length);
+		ByteBuffer slice = window.slice(window.position(), length);
+		window.position(window.position() + length);
+		return slice;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
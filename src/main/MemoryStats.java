@@ -0,0 +1,358 @@
+package edu.usfca.cs272;
+
+/**
+ * Reports how much memory an inverted index takes, broken down by structure,
+ * along with the number of words, documents, postings and positions stored.
+ * The number of bytes is estimated from the sizes of the arrays and objects
+ * that make up each structure, assuming a 64-bit JVM with compressed object
+ * pointers (12 byte object headers, 16 byte array headers, 4 byte references
+ * and every object aligned to 8 bytes) and compact Latin-1 strings, so it is
+ * close to what a heap dump shows but not exact.
+ *
+ * An index that is still being built takes more memory than once frozen, since
+ * its arrays have room to grow and it keeps the words of every document, so the
+ * stats should be taken in the same state the index will be used in.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class MemoryStats {
+	/** The bytes of the header of every object. */
+	private static final int HEADER = 12;
+
+	/** The bytes of the header of every array, including its length. */
+	private static final int ARRAY = 16;
+
+	/** The bytes of a reference to an object. */
+	private static final int REFERENCE = 4;
+
+	/** The exponent of Heaps' law, how the number of words grows with the documents. */
+	private static final double HEAPS = 0.5;
+
+	/** The number of words. */
+	private final long terms;
+
+	/** The number of documents. */
+	private final long documents;
+
+	/** The number of documents summed over the posting list of every word. */
+	private final long postings;
+
+	/** The number of positions summed over every posting. */
+	private final long positions;
+
+	/** The bytes of the term dictionary, including the words themselves. */
+	private final long dictionaryBytes;
+
+	/** The bytes of the locations and the map from location to document id. */
+	private final long locationBytes;
+
+	/** The bytes of the document ids, counts and offsets of the posting lists. */
+	private final long postingBytes;
+
+	/** The bytes of the positions stored on the heap. */
+	private final long positionBytes;
+
+	/** The bytes of the number of stems, rank and word ids of each document. */
+	private final long countBytes;
+
+	/** The bytes of the positions stored outside of the heap or in a mapped file. */
+	private final long offHeapBytes;
+
+	/**
+	 * Initializes the stats of an index
+	 *
+	 * @param terms the number of words
+	 * @param documents the number of documents
+	 * @param postings the number of documents summed over every word
+	 * @param positions the number of positions summed over every posting
+	 * @param dictionaryBytes the bytes of the term dictionary
+	 * @param locationBytes the bytes of the locations
+	 * @param postingBytes the bytes of the posting lists without their positions
+	 * @param positionBytes the bytes of the positions stored on the heap
+	 * @param countBytes the bytes of the per-document counts
+	 * @param offHeapBytes the bytes of the positions stored outside of the heap
+	 */
+	public MemoryStats(long terms, long documents, long postings, long positions, long dictionaryBytes,
+			long locationBytes, long postingBytes, long positionBytes, long countBytes, long offHeapBytes) {
+		this.terms = terms;
+		this.documents = documents;
+		this.postings = postings;
+		this.positions = positions;
+		this.dictionaryBytes = dictionaryBytes;
+		this.locationBytes = locationBytes;
+		this.postingBytes = postingBytes;
+		this.positionBytes = positionBytes;
+		this.countBytes = countBytes;
+		this.offHeapBytes = offHeapBytes;
+	}
+
+	/**
+	 * Returns the number of words
+	 *
+	 * @return the number of words
+	 */
+	public long getTerms() {
+		return terms;
+	}
+
+	/**
+	 * Returns the number of documents
+	 *
+	 * @return the number of documents
+	 */
+	public long getDocuments() {
+		return documents;
+	}
+
+	/**
+	 * Returns the number of documents summed over the posting list of every word
+	 *
+	 * @return the number of postings
+	 */
+	public long getPostings() {
+		return postings;
+	}
+
+	/**
+	 * Returns the number of positions summed over every posting
+	 *
+	 * @return the number of positions
+	 */
+	public long getPositions() {
+		return positions;
+	}
+
+	/**
+	 * Returns the estimated bytes of the term dictionary, including the words
+	 * and the trie used while building
+	 *
+	 * @return the bytes of the term dictionary
+	 */
+	public long getDictionaryBytes() {
+		return dictionaryBytes;
+	}
+
+	/**
+	 * Returns the estimated bytes of the locations and the map from each
+	 * location to its document id
+	 *
+	 * @return the bytes of the locations
+	 */
+	public long getLocationBytes() {
+		return locationBytes;
+	}
+
+	/**
+	 * Returns the estimated bytes of the document ids, counts and offsets of the
+	 * posting lists, without their positions
+	 *
+	 * @return the bytes of the posting lists
+	 */
+	public long getPostingBytes() {
+		return postingBytes;
+	}
+
+	/**
+	 * Returns the estimated bytes of the positions stored on the heap
+	 *
+	 * @return the bytes of the positions on the heap
+	 */
+	public long getPositionBytes() {
+		return positionBytes;
+	}
+
+	/**
+	 * Returns the estimated bytes of the number of stems and rank of each
+	 * document, and of the word ids of each document while building
+	 *
+	 * @return the bytes of the per-document counts
+	 */
+	public long getCountBytes() {
+		return countBytes;
+	}
+
+	/**
+	 * Returns the bytes of the positions stored outside of the heap, either in
+	 * direct buffers or in the mapped file of a loaded index
+	 *
+	 * @return the bytes of the positions outside of the heap
+	 */
+	public long getOffHeapBytes() {
+		return offHeapBytes;
+	}
+
+	/**
+	 * Returns the estimated bytes of every structure on the heap
+	 *
+	 * @return the bytes on the heap
+	 */
+	public long getHeapBytes() {
+		return dictionaryBytes + locationBytes + postingBytes + positionBytes + countBytes;
+	}
+
+	/**
+	 * Combines the stats of two parts of an index that split its words between
+	 * them, such as two shards. Everything is summed except the documents, since
+	 * a document with words in both parts is stored by both of them.
+	 *
+	 * @param other the stats of the other part
+	 * @param documents the number of distinct documents of both parts
+	 * @return the combined stats
+	 */
+	public MemoryStats combine(MemoryStats other, long documents) {
+		return new MemoryStats(terms + other.terms, documents, postings + other.postings,
+				positions + other.positions, dictionaryBytes + other.dictionaryBytes,
+				locationBytes + other.locationBytes, postingBytes + other.postingBytes,
+				positionBytes + other.positionBytes, countBytes + other.countBytes,
+				offHeapBytes + other.offHeapBytes);
+	}
+
+	/**
+	 * Estimates the stats of an index of a larger corpus, treating this index as
+	 * a sample of it. Everything but the words grows with the number of documents.
+	 * New documents mostly repeat words already seen, so the number of words and
+	 * the size of the dictionary only grow with the square root of the number of
+	 * documents by Heaps' law. The sample should be built the same way as the
+	 * full index, and the larger it is the better the estimate.
+	 *
+	 * @param corpus the number of documents of the corpus
+	 * @return the estimated stats of an index of the corpus
+	 * @throws IllegalStateException if this index has no documents to scale from
+	 */
+	public MemoryStats estimate(long corpus) throws IllegalStateException {
+		if (documents == 0) {
+			throw new IllegalStateException("Cannot estimate from an empty sample.");
+		}
+		double factor = (double) corpus / documents;
+		double growth = Math.pow(factor, HEAPS);
+		return new MemoryStats(Math.round(terms * growth), corpus, Math.round(postings * factor),
+				Math.round(positions * factor), Math.round(dictionaryBytes * growth),
+				Math.round(locationBytes * factor), Math.round(postingBytes * factor),
+				Math.round(positionBytes * factor), Math.round(countBytes * factor),
+				Math.round(offHeapBytes * factor));
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(String.format("%-12s %,15d%n", "terms:", terms));
+		builder.append(String.format("%-12s %,15d%n", "documents:", documents));
+		builder.append(String.format("%-12s %,15d%n", "postings:", postings));
+		builder.append(String.format("%-12s %,15d%n", "positions:", positions));
+		builder.append(String.format("%-12s %15s%n", "dictionary:", format(dictionaryBytes)));
+		builder.append(String.format("%-12s %15s%n", "locations:", format(locationBytes)));
+		builder.append(String.format("%-12s %15s%n", "postings:", format(postingBytes)));
+		builder.append(String.format("%-12s %15s%n", "positions:", format(positionBytes)));
+		builder.append(String.format("%-12s %15s%n", "counts:", format(countBytes)));
+		builder.append(String.format("%-12s %15s%n", "heap:", format(getHeapBytes())));
+		builder.append(String.format("%-12s %15s", "off heap:", format(offHeapBytes)));
+		return builder.toString();
+	}
+
+	/**
+	 * Formats a number of bytes in the largest unit that keeps it at least 1
+	 *
+	 * @param bytes the number of bytes
+	 * @return the formatted number of bytes
+	 */
+	private static String format(long bytes) {
+		if (bytes < 1024) {
+			return bytes + " B";
+		}
+		int unit = (63 - Long.numberOfLeadingZeros(bytes)) / 10;
+		return String.format("%.1f %ciB", bytes / Math.pow(1024, unit), "KMGTPE".charAt(unit - 1));
+	}
+
+	/**
+	 * Estimates the bytes of an object, rounded up to the alignment of objects
+	 *
+	 * @param fields the bytes of the fields of the object
+	 * @return the bytes of the object
+	 */
+	public static long object(long fields) {
+		return align(HEADER + fields);
+	}
+
+	/**
+	 * Estimates the bytes of an array
+	 *
+	 * @param length the number of elements
+	 * @param width the bytes of each element
+	 * @return the bytes of the array
+	 */
+	public static long array(long length, int width) {
+		return align(ARRAY + length * width);
+	}
+
+	/**
+	 * Estimates the bytes of an array of references, not counting the objects
+	 * referenced
+	 *
+	 * @param length the number of elements
+	 * @return the bytes of the array
+	 */
+	public static long references(long length) {
+		return array(length, REFERENCE);
+	}
+
+	/**
+	 * Estimates the bytes of a string and its characters
+	 *
+	 * @param string the string
+	 * @return the bytes of the string
+	 */
+	public static long string(String string) {
+		// value, hash, coder and hashIsZero
+		return object(REFERENCE + 4 + 1 + 1) + array(string.length(), 1);
+	}
+
+	/**
+	 * Estimates the bytes of a heap byte buffer and its array
+	 *
+	 * @param capacity the capacity of the buffer
+	 * @return the bytes of the buffer
+	 */
+	public static long buffer(long capacity) {
+		// mark, position, limit, capacity, address, array, offset, flags and segment
+		return object(4 * 4 + 8 + REFERENCE + 4 + 3 + REFERENCE) + array(capacity, 1);
+	}
+
+	/**
+	 * Estimates the bytes of a list of references, not counting the objects
+	 * referenced
+	 *
+	 * @param capacity the capacity of the list
+	 * @return the bytes of the list
+	 */
+	public static long list(long capacity) {
+		// elementData, size and modCount
+		return object(REFERENCE + 4 + 4) + references(capacity);
+	}
+
+	/**
+	 * Estimates the bytes of a hash map from strings to ids and of its boxed ids,
+	 * not counting the strings
+	 *
+	 * @param size the number of entries
+	 * @return the bytes of the map
+	 */
+	public static long map(long size) {
+		// the table is a power of two of at least 16 that keeps the map 3/4 full
+		long table = size == 0 ? 0 : Math.max(16, Long.highestOneBit((long) Math.ceil(size / 0.75) - 1) << 1);
+		// each node has its hash, key, value and next node, and the value is boxed
+		long entry = object(4 + 3 * REFERENCE) + object(4);
+		// table, entrySet, keySet, values, size, modCount, threshold and loadFactor
+		return object(4 * REFERENCE + 4 * 4) + (table > 0 ? references(table) : 0) + size * entry;
+	}
+
+	/**
+	 * Rounds the bytes of an object up to the alignment of objects
+	 *
+	 * @param bytes the bytes of the object
+	 * @return the aligned bytes
+	 */
+	private static long align(long bytes) {
+		return (bytes + 7) & ~7L;
+	}
+}
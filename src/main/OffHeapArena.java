@@ -0,0 +1,149 @@
+package edu.usfca.cs272;
+
+import java.io.Closeable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hands out slices of large direct buffers outside of the Java heap, so data
+ * stored in them is never scanned or copied by the garbage collector. Slices
+ * are carved out of chunks one after another and are never freed on their
+ * own. Closing the arena frees every chunk at once, after which none of its
+ * slices may be read again.
+ *
+ * Warning: This class is not thread-safe. If multiple threads access this class
+ * concurrently, access must be synchronized externally.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class OffHeapArena implements Closeable {
+	/**
+	 * The size of each chunk unless a single slice needs more
+	 */
+	public static final int CHUNK = 1 << 26;
+
+	/**
+	 * Frees a direct buffer right away, or null if the JDK does not allow it and
+	 * the garbage collector has to free the buffers once they are unreachable
+	 */
+	private static final Consumer<ByteBuffer> CLEANER = cleaner();
+
+	/**
+	 * The chunks allocated so far
+	 */
+	private final List<ByteBuffer> chunks;
+
+	/**
+	 * The chunk slices are currently carved out of, or null if there is none
+	 */
+	private ByteBuffer current;
+
+	/**
+	 * The number of bytes handed out in slices
+	 */
+	private long used;
+
+	/**
+	 * The number of bytes allocated in chunks
+	 */
+	private long allocated;
+
+	/**
+	 * Initializes an arena without any chunks
+	 */
+	public OffHeapArena() {
+		this.chunks = new ArrayList<>();
+		this.current = null;
+		this.used = 0;
+		this.allocated = 0;
+	}
+
+	/**
+	 * Returns a slice of direct memory, allocating a new chunk if the current one
+	 * is too full
+	 *
+	 * @param length the number of bytes of the slice
+	 * @return a buffer of the given capacity whose contents are zero
+	 */
+	public ByteBuffer allocate(int length) {
+		if (current == null || current.remaining() < length) {
+			ByteBuffer chunk = ByteBuffer.allocateDirect(Math.max(length, CHUNK));
+			chunks.add(chunk);
+			allocated += chunk.capacity();
+			if (length >= CHUNK) {
+				// a slice that fills a chunk of its own leaves the current chunk in use
+				used += length;
+				return chunk;
+			}
+			current = chunk;
+		}
+		ByteBuffer slice = current.slice(current.position(), length);
+		current.position(current.position() + length);
+		used += length;
+		return slice;
+	}
+
+	/**
+	 * Returns the number of bytes handed out in slices
+	 *
+	 * @return the number of bytes used
+	 */
+	public long used() {
+		return used;
+	}
+
+	/**
+	 * Returns the number of bytes of direct memory held by the arena
+	 *
+	 * @return the number of bytes allocated
+	 */
+	public long allocated() {
+		return allocated;
+	}
+
+	/**
+	 * Frees every chunk. The slices handed out must not be read afterwards.
+	 */
+	@Override
+	public void close() {
+		if (CLEANER != null) {
+			chunks.forEach(CLEANER);
+		}
+		chunks.clear();
+		current = null;
+		used = 0;
+		allocated = 0;
+	}
+
+	/**
+	 * Looks up the cleaner of direct buffers, which is not part of the public API
+	 * in this version of Java, through reflection
+	 *
+	 * @return a function that frees a direct buffer, or null if there is none
+	 */
+	private static Consumer<ByteBuffer> cleaner() {
+		try {
+			Class<?> type = Class.forName("sun.misc.Unsafe");
+			Field field = type.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			Object unsafe = field.get(null);
+			Method invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+			return buffer -> {
+				try {
+					invokeCleaner.invoke(unsafe, buffer);
+				}
+				catch (ReflectiveOperationException e) {
+					// the garbage collector frees the buffer instead
+				}
+			};
+		}
+		catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+}
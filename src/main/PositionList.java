@@ -0,0 +1,387 @@
+package edu.usfca.cs272;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Sorted set of the positions of a stemmed word in a single document, stored
+ * as primitive ints instead of boxed {@link Integer} tree nodes. While a
+ * document is being added the positions are kept in a sorted int array. Once
+ * the list is finished, the positions are delta encoded and written as
+ * variable length integers, so most positions only take a single byte.
+ *
+ * Warning: This class is not thread-safe. If multiple threads access this class
+ * concurrently, access must be synchronized externally. Finished lists are
+ * never modified by reads and are safe to read from multiple threads.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class PositionList extends AbstractSet<Integer> {
+	/**
+	 * Sorted positions while the list is open, or null once finished
+	 */
+	private int[] positions;
+
+	/**
+	 * Number of positions in the list
+	 */
+	private int size;
+
+	/**
+	 * Delta and varint encoded positions once the list is finished
+	 */
+	private ByteBuffer encoded;
+
+	/**
+	 * Where the encoded positions start in the buffer
+	 */
+	private int offset;
+
+	/**
+	 * Initializes an empty open position list
+	 */
+	public PositionList() {
+		this.positions = new int[4];
+		this.size = 0;
+		this.encoded = null;
+		this.offset = 0;
+	}
+
+	/**
+	 * Initializes a finished position list that reads its positions from the
+	 * encoded buffer
+	 *
+	 * @param encoded the buffer with delta and varint encoded positions
+	 * @param offset where the positions start in the buffer
+	 * @param size the number of positions
+	 */
+	public PositionList(ByteBuffer encoded, int offset, int size) {
+		this.positions = null;
+		this.size = size;
+		this.encoded = encoded;
+		this.offset = offset;
+	}
+
+	/**
+	 * Adds the position to the list. Positions are usually added in increasing
+	 * order, which only appends to the end of the array.
+	 *
+	 * @param position the position to add
+	 * @return true if the position was not already in the list
+	 */
+	public boolean add(int position) {
+		if (isFinished()) {
+			reopen(size + 1);
+		}
+		int index = size;
+		if (size > 0 && positions[size - 1] >= position) {
+			index = Arrays.binarySearch(positions, 0, size, position);
+			if (index >= 0) {
+				return false;
+			}
+			index = -index - 1;
+		}
+		if (size == positions.length) {
+			positions = Arrays.copyOf(positions, size * 2);
+		}
+		System.arraycopy(positions, index, positions, index + 1, size - index);
+		positions[index] = position;
+		size++;
+		return true;
+	}
+
+	@Override
+	public boolean add(Integer position) {
+		return add(position.intValue());
+	}
+
+	/**
+	 * Adds all the positions of the other list to this list
+	 *
+	 * @param other the positions to add
+	 */
+	public void addAll(PositionList other) {
+		int[] added = other.toIntArray();
+		if (added.length == 0) {
+			return;
+		}
+		if (isFinished()) {
+			reopen(size + added.length);
+		}
+		if (size == 0 || positions[size - 1] < added[0]) {
+			if (size + added.length > positions.length) {
+				positions = Arrays.copyOf(positions, size + added.length);
+			}
+			System.arraycopy(added, 0, positions, size, added.length);
+			size += added.length;
+		}
+		else {
+			for (int position : added) {
+				add(position);
+			}
+		}
+	}
+
+	/**
+	 * Checks if the position is in the list
+	 *
+	 * @param position the position to look for
+	 * @return true if the position is in the list
+	 */
+	public boolean contains(int position) {
+		if (!isFinished()) {
+			return Arrays.binarySearch(positions, 0, size, position) >= 0;
+		}
+		var iterator = iterator();
+		while (iterator.hasNext()) {
+			int current = iterator.nextInt();
+			if (current >= position) {
+				return current == position;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean contains(Object position) {
+		return position instanceof Integer && contains(((Integer) position).intValue());
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the first position in the list
+	 *
+	 * @return the first position
+	 * @throws NoSuchElementException if the list is empty
+	 */
+	public int first() {
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		return isFinished() ? iterator().nextInt() : positions[0];
+	}
+
+	/**
+	 * Returns the positions as a new sorted int array
+	 *
+	 * @return the sorted positions
+	 */
+	public int[] toIntArray() {
+		if (!isFinished()) {
+			return Arrays.copyOf(positions, size);
+		}
+		int[] decoded = new int[size];
+		var iterator = iterator();
+		for (int i = 0; i < size; i++) {
+			decoded[i] = iterator.nextInt();
+		}
+		return decoded;
+	}
+
+	/**
+	 * Checks if the list has been finished and encoded
+	 *
+	 * @return true if the list is finished
+	 */
+	public boolean isFinished() {
+		return positions == null;
+	}
+
+	/**
+	 * Delta and varint encodes the positions and releases the int array. Adding
+	 * to a finished list decodes it again, so lists should only be finished once
+	 * the whole document has been added.
+	 */
+	public void finish() {
+		if (isFinished()) {
+			return;
+		}
+		byte[] bytes = new byte[encodedLength(positions, size)];
+		encode(positions, size, bytes, 0);
+		encoded = ByteBuffer.wrap(bytes);
+		offset = 0;
+		positions = null;
+	}
+
+	/**
+	 * Returns the number of bytes the encoded positions take
+	 *
+	 * @return the number of encoded bytes
+	 */
+	public int encodedLength() {
+		if (!isFinished()) {
+			return encodedLength(positions, size);
+		}
+		// every encoded position ends with exactly one byte without the high bit
+		int index = offset;
+		int ended = 0;
+		while (ended < size) {
+			if ((encoded.get(index++) & 0x80) == 0) {
+				ended++;
+			}
+		}
+		return index - offset;
+	}
+
+	/**
+	 * Writes the encoded positions into the array, encoding them first if the
+	 * list is still open
+	 *
+	 * @param bytes where to write the encoded positions
+	 * @param start the index of the first byte to write
+	 * @return the index after the last byte written
+	 */
+	public int encodeTo(byte[] bytes, int start) {
+		if (!isFinished()) {
+			return encode(positions, size, bytes, start);
+		}
+		int length = encodedLength();
+		encoded.get(offset, bytes, start, length);
+		return start + length;
+	}
+
+	/**
+	 * Estimates the bytes taken by the list, counting the whole encoded buffer,
+	 * which only lists finished on their own have to themselves
+	 *
+	 * @return the estimated number of bytes
+	 * @see MemoryStats
+	 */
+	public long bytes() {
+		long bytes = MemoryStats.object(4 * 4);
+		if (positions != null) {
+			bytes += MemoryStats.array(positions.length, 4);
+		}
+		if (encoded != null) {
+			bytes += MemoryStats.buffer(encoded.capacity());
+		}
+		return bytes;
+	}
+
+	/**
+	 * Decodes a finished list back into a sorted int array
+	 *
+	 * @param capacity the minimum capacity of the array
+	 */
+	private void reopen(int capacity) {
+		int[] decoded = toIntArray();
+		positions = Arrays.copyOf(decoded, Math.max(capacity, 4));
+		encoded = null;
+		offset = 0;
+	}
+
+	/**
+	 * Returns the number of bytes needed to encode the sorted positions
+	 *
+	 * @param positions the sorted positions
+	 * @param size the number of positions to encode
+	 * @return the number of bytes
+	 */
+	public static int encodedLength(int[] positions, int size) {
+		int length = 0;
+		int previous = 0;
+		for (int i = 0; i < size; i++) {
+			int delta = positions[i] - previous;
+			previous = positions[i];
+			do {
+				delta >>>= 7;
+				length++;
+			} while (delta != 0);
+		}
+		return length;
+	}
+
+	/**
+	 * Writes the gaps between the sorted positions as variable length integers,
+	 * using the low seven bits of each byte and the high bit to mark that more
+	 * bytes follow
+	 *
+	 * @param positions the sorted positions
+	 * @param size the number of positions to encode
+	 * @param bytes where to write the encoded positions
+	 * @param start the index of the first byte to write
+	 * @return the index after the last byte written
+	 */
+	public static int encode(int[] positions, int size, byte[] bytes, int start) {
+		int index = start;
+		int previous = 0;
+		for (int i = 0; i < size; i++) {
+			int delta = positions[i] - previous;
+			previous = positions[i];
+			while ((delta & ~0x7F) != 0) {
+				bytes[index++] = (byte) ((delta & 0x7F) | 0x80);
+				delta >>>= 7;
+			}
+			bytes[index++] = (byte) delta;
+		}
+		return index;
+	}
+
+	@Override
+	public PrimitiveIterator.OfInt iterator() {
+		if (!isFinished()) {
+			return Arrays.stream(positions, 0, size).iterator();
+		}
+		return new DecodingIterator();
+	}
+
+	/**
+	 * Iterates through the positions of a finished list by decoding the gaps
+	 */
+	private class DecodingIterator implements PrimitiveIterator.OfInt {
+		/**
+		 * The index of the next byte to decode
+		 */
+		private int index;
+
+		/**
+		 * The number of positions returned so far
+		 */
+		private int returned;
+
+		/**
+		 * The last position returned
+		 */
+		private int previous;
+
+		/**
+		 * Initializes the iterator at the start of the encoded positions
+		 */
+		public DecodingIterator() {
+			this.index = offset;
+			this.returned = 0;
+			this.previous = 0;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return returned < size;
+		}
+
+		@Override
+		public int nextInt() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			int delta = 0;
+			int shift = 0;
+			byte current;
+			do {
+				current = encoded.get(index++);
+				delta |= (current & 0x7F) << shift;
+				shift += 7;
+			} while ((current & 0x80) != 0);
+			previous += delta;
+			returned++;
+			return previous;
+		}
+	}
+}
@@ -0,0 +1,739 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Postings of a single stemmed word, stored as document ids sorted in
+ * increasing order with the positions of the word in each document. Once
+ * frozen, the positions of every document are packed into one shared buffer
+ * and only the counts and offsets into that buffer are kept per document.
+ *
+ * A list can also keep only the number of positions of each document, as a
+ * packed int array next to the document ids, which is all that searches need
+ * unless they match phrases. Such a list has no positions to return.
+ *
+ * Warning: This class is not thread-safe. If multiple threads access this class
+ * concurrently, access must be synchronized externally.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class PostingList {
+	/**
+	 * Sorted document ids
+	 */
+	private int[] documents;
+
+	/**
+	 * Positions of the word stored in the same order as the document ids, or
+	 * null once frozen or if the positions are not stored
+	 */
+	private PositionList[] positions;
+
+	/**
+	 * Number of positions in each document once frozen, or all along if the
+	 * positions are not stored
+	 */
+	private int[] counts;
+
+	/**
+	 * Where the positions of each document start in the packed buffer once
+	 * frozen, or null if the positions are not stored
+	 */
+	private int[] offsets;
+
+	/**
+	 * Packed encoded positions of every document once frozen, or null if the
+	 * positions are not stored
+	 */
+	private ByteBuffer packed;
+
+	/**
+	 * Number of documents in the list
+	 */
+	private int size;
+
+	/**
+	 * Whether the positions are stored, or only their number
+	 */
+	private boolean positional;
+
+	/**
+	 * Whether the list has been frozen
+	 */
+	private boolean frozen;
+
+	/**
+	 * Initializes an empty posting list that stores positions
+	 */
+	public PostingList() {
+		this(true);
+	}
+
+	/**
+	 * Initializes an empty posting list
+	 *
+	 * @param positional whether to store the positions, or only their number
+	 */
+	public PostingList(boolean positional) {
+		this.documents = new int[4];
+		this.positions = positional ? new PositionList[4] : null;
+		this.counts = positional ? null : new int[4];
+		this.size = 0;
+		this.positional = positional;
+		this.frozen = false;
+	}
+
+	/**
+	 * Initializes a frozen posting list
+	 *
+	 * @param documents the sorted document ids
+	 * @param counts the number of positions in each document
+	 * @param offsets where the positions of each document start in the buffer,
+	 *   or null if the positions are not stored
+	 * @param packed the packed encoded positions, or null if the positions are
+	 *   not stored
+	 */
+	private PostingList(int[] documents, int[] counts, int[] offsets, ByteBuffer packed) {
+		this.documents = documents;
+		this.positions = null;
+		this.counts = counts;
+		this.offsets = offsets;
+		this.packed = packed;
+		this.size = documents.length;
+		this.positional = packed != null;
+		this.frozen = true;
+	}
+
+	/**
+	 * Checks if the list stores the positions of the word
+	 *
+	 * @return true if the positions are stored, or false if only their number is
+	 */
+	public boolean hasPositions() {
+		return positional;
+	}
+
+	/**
+	 * Makes sure the list stores positions
+	 *
+	 * @throws IllegalStateException if only the number of positions is stored
+	 */
+	private void checkPositional() throws IllegalStateException {
+		if (!positional) {
+			throw new IllegalStateException("Positions are not stored in this posting list.");
+		}
+	}
+
+	/**
+	 * Returns the number of documents in the list
+	 *
+	 * @return the number of documents
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the document id at the index
+	 *
+	 * @param index index into the list
+	 * @return the document id
+	 */
+	public int document(int index) {
+		return documents[index];
+	}
+
+	/**
+	 * Returns the number of positions at the index
+	 *
+	 * @param index index into the list
+	 * @return the number of times the word appears in the document
+	 */
+	public int count(int index) {
+		return positions != null ? positions[index].size() : counts[index];
+	}
+
+	/**
+	 * Returns the positions at the index
+	 *
+	 * @param index index into the list
+	 * @return the positions of the word in the document
+	 * @throws IllegalStateException if the positions are not stored
+	 */
+	public PositionList positions(int index) {
+		checkPositional();
+		if (positions != null) {
+			return positions[index];
+		}
+		return new PositionList(packed, offsets[index], counts[index]);
+	}
+
+	/**
+	 * Finds the index of the document. Documents are usually added in increasing
+	 * order, so the last document is checked before searching.
+	 *
+	 * @param document the document id
+	 * @return the index of the document, or {@code -(insertion point) - 1} if the
+	 *   document is not in the list
+	 *
+	 * @see Arrays#binarySearch(int[], int, int, int)
+	 */
+	public int find(int document) {
+		if (size == 0 || documents[size - 1] < document) {
+			return -size - 1;
+		}
+		if (documents[size - 1] == document) {
+			return size - 1;
+		}
+		return Arrays.binarySearch(documents, 0, size, document);
+	}
+
+	/**
+	 * Finds the first index at or after the given index whose document id is at
+	 * least the given document, with a galloping search
+	 *
+	 * @param from the index to start from
+	 * @param document the document id to look for
+	 * @return the index of the first document id that is not smaller, or the
+	 *   size of the list if there is none
+	 */
+	public int advance(int from, int document) {
+		return gallop(documents, from, size, document);
+	}
+
+	/**
+	 * Finds the first index at or after the given index whose value is at least
+	 * the target. The search doubles its step until it passes the target and
+	 * then searches the last step in half, so it only takes time logarithmic in
+	 * the distance moved, which makes intersecting sorted lists of very
+	 * different lengths cheap.
+	 *
+	 * @param sorted the sorted values
+	 * @param from the index to start from
+	 * @param size the number of values
+	 * @param target the value to look for
+	 * @return the index of the first value that is not smaller than the target,
+	 *   or the size if there is none
+	 */
+	public static int gallop(int[] sorted, int from, int size, int target) {
+		if (from >= size || sorted[from] >= target) {
+			return from;
+		}
+		int low = from;
+		int step = 1;
+		while (step < size - low && sorted[low + step] < target) {
+			low += step;
+			step *= 2;
+		}
+		int high = low + Math.min(step, size - low);
+		// sorted[low] is smaller than the target and sorted[high] is not, if it exists
+		while (high - low > 1) {
+			int middle = (low + high) >>> 1;
+			if (sorted[middle] < target) {
+				low = middle;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return high;
+	}
+
+	/**
+	 * Returns the positions of the word in the document
+	 *
+	 * @param document the document id
+	 * @return the positions, or {@code null} if the document is not in the list
+	 */
+	public PositionList get(int document) {
+		int index = find(document);
+		return index >= 0 ? positions(index) : null;
+	}
+
+	/**
+	 * Returns the positions of the word in the document, adding an empty set of
+	 * positions if the document is not in the list yet
+	 *
+	 * @param document the document id
+	 * @return the positions of the word in the document
+	 */
+	public PositionList getOrAdd(int document) {
+		checkPositional();
+		int index = find(document);
+		if (index >= 0) {
+			return positions[index];
+		}
+		PositionList added = new PositionList();
+		insert(-index - 1, document, added);
+		return added;
+	}
+
+	/**
+	 * Adds the positions for the document, merging them with any positions
+	 * already stored for the document. New documents keep the other list
+	 * instead of copying it.
+	 *
+	 * @param document the document id
+	 * @param other the positions to add
+	 * @return the positions now stored for the document
+	 */
+	public PositionList addAll(int document, PositionList other) {
+		checkPositional();
+		int index = find(document);
+		if (index >= 0) {
+			positions[index].addAll(other);
+			return positions[index];
+		}
+		insert(-index - 1, document, other);
+		return other;
+	}
+
+	/**
+	 * Adds to the number of positions of the word in the document of a list
+	 * that does not store positions, adding the document if it is not in the
+	 * list yet
+	 *
+	 * @param document the document id
+	 * @param count the number of positions to add
+	 * @return the number of positions now counted for the document
+	 */
+	public int addCount(int document, int count) {
+		if (positional) {
+			throw new IllegalStateException("Cannot count positions in a posting list that stores them.");
+		}
+		int index = find(document);
+		if (index < 0) {
+			index = -index - 1;
+			insert(index, document, null);
+		}
+		counts[index] += count;
+		return counts[index];
+	}
+
+	/**
+	 * Stops storing the positions of the list and only keeps their number
+	 */
+	public void dropPositions() {
+		if (frozen) {
+			throw new IllegalStateException("Cannot drop the positions of a frozen posting list.");
+		}
+		if (!positional) {
+			return;
+		}
+		counts = new int[documents.length];
+		for (int i = 0; i < size; i++) {
+			counts[i] = positions[i].size();
+		}
+		positions = null;
+		positional = false;
+	}
+
+	/**
+	 * Adds every document of the other list in a single merge pass over both
+	 * sorted lists, instead of searching for and inserting each document. If
+	 * this list is empty or all the other documents come after its documents,
+	 * the other positions are adopted or appended without merging. Positions
+	 * of documents in both lists are merged. The other positions are finished,
+	 * since they are stored instead of copied.
+	 *
+	 * @param other the posting list to add, which may be frozen
+	 * @param remap the id in this list of each document id of the other list
+	 * @throws IllegalArgumentException if this list stores positions and the
+	 *   other list does not
+	 */
+	public void addAll(PostingList other, int[] remap) throws IllegalArgumentException {
+		if (!positional) {
+			addCounts(other, remap);
+			return;
+		}
+		if (!other.hasPositions()) {
+			throw new IllegalArgumentException("Cannot add postings without positions to a list with positions.");
+		}
+		int added = other.size();
+		if (added == 0) {
+			return;
+		}
+
+		int[] otherDocuments = new int[added];
+		PositionList[] otherPositions = new PositionList[added];
+		boolean sorted = true;
+		for (int i = 0; i < added; i++) {
+			otherDocuments[i] = remap[other.document(i)];
+			otherPositions[i] = other.positions(i);
+			otherPositions[i].finish();
+			sorted &= i == 0 || otherDocuments[i - 1] < otherDocuments[i];
+		}
+		if (!sorted) {
+			sort(otherDocuments, otherPositions);
+		}
+
+		if (size == 0) {
+			documents = otherDocuments;
+			positions = otherPositions;
+			size = added;
+			return;
+		}
+
+		if (documents[size - 1] < otherDocuments[0]) {
+			if (size + added > documents.length) {
+				documents = Arrays.copyOf(documents, Math.max(size + added, size * 2));
+				positions = Arrays.copyOf(positions, documents.length);
+			}
+			System.arraycopy(otherDocuments, 0, documents, size, added);
+			System.arraycopy(otherPositions, 0, positions, size, added);
+			size += added;
+			return;
+		}
+
+		int[] mergedDocuments = new int[size + added];
+		PositionList[] mergedPositions = new PositionList[size + added];
+		int i = 0;
+		int j = 0;
+		int merged = 0;
+		while (i < size || j < added) {
+			if (j == added || (i < size && documents[i] < otherDocuments[j])) {
+				mergedDocuments[merged] = documents[i];
+				mergedPositions[merged++] = positions[i++];
+			}
+			else if (i == size || otherDocuments[j] < documents[i]) {
+				mergedDocuments[merged] = otherDocuments[j];
+				mergedPositions[merged++] = otherPositions[j++];
+			}
+			else {
+				positions[i].addAll(otherPositions[j++]);
+				positions[i].finish();
+				mergedDocuments[merged] = documents[i];
+				mergedPositions[merged++] = positions[i++];
+			}
+		}
+		documents = mergedDocuments;
+		positions = mergedPositions;
+		size = merged;
+	}
+
+	/**
+	 * Adds the number of positions of every document of the other list in a
+	 * single merge pass, like {@link #addAll(PostingList, int[])}. The numbers of
+	 * documents in both lists are summed. The other list may store positions,
+	 * which are only counted.
+	 *
+	 * @param other the posting list to add, which may be frozen
+	 * @param remap the id in this list of each document id of the other list
+	 */
+	private void addCounts(PostingList other, int[] remap) {
+		int added = other.size();
+		if (added == 0) {
+			return;
+		}
+
+		// the document id is in the high half, so sorting the pairs sorts by document
+		long[] pairs = new long[added];
+		boolean sorted = true;
+		for (int i = 0; i < added; i++) {
+			pairs[i] = (long) remap[other.document(i)] << 32 | other.count(i);
+			sorted &= i == 0 || pairs[i - 1] < pairs[i];
+		}
+		if (!sorted) {
+			Arrays.sort(pairs);
+		}
+
+		if (size == 0 || documents[size - 1] < (int) (pairs[0] >>> 32)) {
+			if (size + added > documents.length) {
+				documents = Arrays.copyOf(documents, Math.max(size + added, size * 2));
+				counts = Arrays.copyOf(counts, documents.length);
+			}
+			for (long pair : pairs) {
+				documents[size] = (int) (pair >>> 32);
+				counts[size++] = (int) pair;
+			}
+			return;
+		}
+
+		int[] mergedDocuments = new int[size + added];
+		int[] mergedCounts = new int[size + added];
+		int i = 0;
+		int j = 0;
+		int merged = 0;
+		while (i < size || j < added) {
+			int otherDocument = j < added ? (int) (pairs[j] >>> 32) : -1;
+			if (j == added || (i < size && documents[i] < otherDocument)) {
+				mergedDocuments[merged] = documents[i];
+				mergedCounts[merged++] = counts[i++];
+			}
+			else if (i == size || otherDocument < documents[i]) {
+				mergedDocuments[merged] = otherDocument;
+				mergedCounts[merged++] = (int) pairs[j++];
+			}
+			else {
+				mergedDocuments[merged] = documents[i];
+				mergedCounts[merged++] = counts[i++] + (int) pairs[j++];
+			}
+		}
+		documents = mergedDocuments;
+		counts = mergedCounts;
+		size = merged;
+	}
+
+	/**
+	 * Sorts the document ids together with their positions
+	 *
+	 * @param ids the document ids to sort, which must be distinct
+	 * @param lists the positions of each document
+	 */
+	private static void sort(int[] ids, PositionList[] lists) {
+		Integer[] order = new Integer[ids.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (first, second) -> Integer.compare(ids[first], ids[second]));
+
+		int[] sortedIds = new int[ids.length];
+		PositionList[] sortedLists = new PositionList[ids.length];
+		for (int i = 0; i < order.length; i++) {
+			sortedIds[i] = ids[order[i]];
+			sortedLists[i] = lists[order[i]];
+		}
+		System.arraycopy(sortedIds, 0, ids, 0, ids.length);
+		System.arraycopy(sortedLists, 0, lists, 0, lists.length);
+	}
+
+	/**
+	 * Inserts the document at the index, growing the arrays as needed
+	 *
+	 * @param index where to insert
+	 * @param document the document id
+	 * @param added the positions of the word in the document, or null if the
+	 *   positions are not stored
+	 */
+	private void insert(int index, int document, PositionList added) {
+		if (size == documents.length) {
+			documents = Arrays.copyOf(documents, size * 2);
+			if (positional) {
+				positions = Arrays.copyOf(positions, size * 2);
+			}
+			else {
+				counts = Arrays.copyOf(counts, size * 2);
+			}
+		}
+		System.arraycopy(documents, index, documents, index + 1, size - index);
+		documents[index] = document;
+		if (positional) {
+			System.arraycopy(positions, index, positions, index + 1, size - index);
+			positions[index] = added;
+		}
+		else {
+			System.arraycopy(counts, index, counts, index + 1, size - index);
+			counts[index] = 0;
+		}
+		size++;
+	}
+
+	/**
+	 * Removes the document and its positions from the list
+	 *
+	 * @param document the document id
+	 * @return true if the document was in the list
+	 */
+	public boolean remove(int document) {
+		if (frozen) {
+			throw new IllegalStateException("Cannot remove documents from a frozen posting list.");
+		}
+		int index = find(document);
+		if (index < 0) {
+			return false;
+		}
+		size--;
+		System.arraycopy(documents, index + 1, documents, index, size - index);
+		if (positional) {
+			System.arraycopy(positions, index + 1, positions, index, size - index);
+			positions[size] = null;
+		}
+		else {
+			System.arraycopy(counts, index + 1, counts, index, size - index);
+		}
+		return true;
+	}
+
+	/**
+	 * Replaces every document id with its new id. The new ids must be in the
+	 * same order as the old ids, so the list stays sorted.
+	 *
+	 * @param remap the new id of each document indexed by its old id
+	 */
+	public void renumber(int[] remap) {
+		for (int i = 0; i < size; i++) {
+			documents[i] = remap[documents[i]];
+		}
+	}
+
+	/**
+	 * Trims the arrays and packs the encoded positions of every document into a
+	 * single buffer, if they are stored. The list must not be modified
+	 * afterwards.
+	 */
+	public void freeze() {
+		freeze(null);
+	}
+
+	/**
+	 * Trims the arrays and packs the encoded positions of every document into a
+	 * single buffer, which is a slice of the arena if there is one. A list that
+	 * does not store positions only trims its arrays. The list must not be
+	 * modified afterwards.
+	 *
+	 * @param arena where to store the positions outside of the heap, or null to
+	 *   keep them on the heap
+	 */
+	public void freeze(OffHeapArena arena) {
+		if (frozen) {
+			return;
+		}
+		frozen = true;
+		documents = Arrays.copyOf(documents, size);
+		if (!positional) {
+			counts = Arrays.copyOf(counts, size);
+			return;
+		}
+		counts = new int[size];
+		offsets = new int[size];
+		int length = 0;
+		for (int i = 0; i < size; i++) {
+			counts[i] = positions[i].size();
+			offsets[i] = length;
+			length += positions[i].encodedLength();
+		}
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < size; i++) {
+			positions[i].encodeTo(bytes, offsets[i]);
+		}
+		packed = arena != null ? arena.allocate(length).put(bytes).flip() : ByteBuffer.wrap(bytes);
+		positions = null;
+	}
+
+	/**
+	 * Empties a frozen list and lets go of its positions, so they are never read
+	 * once the memory they are stored in has been freed
+	 */
+	public void release() {
+		if (!frozen) {
+			return;
+		}
+		documents = new int[0];
+		counts = new int[0];
+		if (positional) {
+			offsets = new int[0];
+			packed = ByteBuffer.allocate(0);
+		}
+		size = 0;
+	}
+
+	/**
+	 * Estimates the bytes taken by the document ids, counts and offsets of the
+	 * list, not counting its positions
+	 *
+	 * @return the estimated number of bytes
+	 * @see MemoryStats
+	 */
+	public long bytes() {
+		long bytes = MemoryStats.object(6 * 4 + 2) + MemoryStats.array(documents.length, 4);
+		if (positions != null) {
+			bytes += MemoryStats.references(positions.length);
+		}
+		if (counts != null) {
+			bytes += MemoryStats.array(counts.length, 4);
+		}
+		if (offsets != null) {
+			bytes += MemoryStats.array(offsets.length, 4);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Estimates the bytes taken by the positions of the list on the heap, which
+	 * is none once they are packed into a direct or mapped buffer, or if they
+	 * are not stored
+	 *
+	 * @return the estimated number of bytes
+	 * @see MemoryStats
+	 */
+	public long positionBytes() {
+		if (positions == null) {
+			return packed == null || packed.isDirect() ? 0 : MemoryStats.buffer(packed.capacity());
+		}
+		long bytes = 0;
+		for (int i = 0; i < size; i++) {
+			bytes += positions[i].bytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns the number of bytes of the positions of a frozen list that are
+	 * stored in a direct or mapped buffer outside of the heap
+	 *
+	 * @return the number of bytes outside of the heap
+	 */
+	public long offHeapBytes() {
+		return packed != null && packed.isDirect() ? packed.capacity() : 0;
+	}
+
+	/**
+	 * Writes a frozen posting list. A list that does not store positions is
+	 * written with a negative length of positions and without offsets.
+	 *
+	 * @param output the binary index file to write to
+	 * @throws IOException if unable to write
+	 */
+	public void write(BinaryIndexWriter output) throws IOException {
+		output.writeInt(size);
+		output.writeInt(positional ? packed.limit() : -1);
+		output.writeInts(documents, size);
+		output.writeInts(counts, size);
+		if (positional) {
+			output.writeInts(offsets, size);
+			output.writeBytes(packed);
+		}
+	}
+
+	/**
+	 * Reads a frozen posting list. The document ids, counts and offsets are read
+	 * onto the heap, but the positions stay in the mapped file and are only
+	 * decoded when they are iterated.
+	 *
+	 * @param input the binary index file to read from
+	 * @return the frozen posting list
+	 * @throws IOException if unable to read
+	 */
+	public static PostingList read(MappedIndexReader input) throws IOException {
+		int size = input.readInt();
+		int length = input.readInt();
+		int[] documents = new int[size];
+		int[] counts = new int[size];
+		input.readInts(documents);
+		input.readInts(counts);
+		if (length < 0) {
+			return new PostingList(documents, counts, null, null);
+		}
+		int[] offsets = new int[size];
+		input.readInts(offsets);
+		return new PostingList(documents, counts, offsets, input.slice(length));
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("{");
+		for (int i = 0; i < size; i++) {
+			builder.append(i == 0 ? "" : ", ").append(documents[i]).append('=');
+			if (positional) {
+				builder.append(positions(i));
+			}
+			else {
+				builder.append(counts[i]);
+			}
+		}
+		return builder.append('}').toString();
+	}
+}
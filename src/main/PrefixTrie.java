@@ -0,0 +1,292 @@
+package edu.usfca.cs272;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed trie (radix tree) mapping words to integer ids. Each edge is
+ * labeled with a run of characters instead of a single character, and the
+ * label points into a word that was already added rather than copying it, so
+ * the trie only adds one small node per branch on top of the words themselves.
+ * Every word under a prefix is found by walking down to the prefix once and
+ * then visiting only the nodes below it, in sorted word order.
+ *
+ * Warning: This class is not thread-safe. If multiple threads access this class
+ * concurrently, access must be synchronized externally.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class PrefixTrie {
+	/**
+	 * The root node, which has an empty label
+	 */
+	private final Node root;
+
+	/**
+	 * The number of words in the trie
+	 */
+	private int size;
+
+	/**
+	 * Initializes an empty trie
+	 */
+	public PrefixTrie() {
+		this.root = new Node("", 0, 0, -1);
+		this.size = 0;
+	}
+
+	/**
+	 * Adds the word with its id, replacing the id if the word was already added
+	 *
+	 * @param word the word to add
+	 * @param id the id of the word, which must not be negative
+	 */
+	public void put(String word, int id) {
+		Node node = root;
+		int index = 0;
+		while (index < word.length()) {
+			int slot = node.find(word.charAt(index));
+			if (slot < 0) {
+				node.insert(-slot - 1, new Node(word, index, word.length(), id));
+				size++;
+				return;
+			}
+
+			Node child = node.children[slot];
+			int matched = child.match(word, index);
+			if (matched < child.length()) {
+				Node split = new Node(child.source, child.start, child.start + matched, -1);
+				child.start += matched;
+				split.insert(0, child);
+				node.children[slot] = split;
+				child = split;
+			}
+			node = child;
+			index += matched;
+		}
+
+		if (node.id < 0) {
+			size++;
+		}
+		node.id = id;
+	}
+
+	/**
+	 * Removes the word. Its node is kept as a branch for other words, so removing
+	 * words does not shrink the trie.
+	 *
+	 * @param word the word to remove
+	 * @return true if the word was in the trie
+	 */
+	public boolean remove(String word) {
+		Node node = root;
+		int index = 0;
+		while (index < word.length()) {
+			int slot = node.find(word.charAt(index));
+			if (slot < 0) {
+				return false;
+			}
+			node = node.children[slot];
+			int matched = node.match(word, index);
+			if (matched < node.length()) {
+				return false;
+			}
+			index += matched;
+		}
+
+		if (node.id < 0) {
+			return false;
+		}
+		node.id = -1;
+		size--;
+		return true;
+	}
+
+	/**
+	 * Passes the id of every word that starts with the prefix to the action, in
+	 * sorted word order
+	 *
+	 * @param prefix the prefix to look for
+	 * @param action called with each matching id
+	 */
+	public void forEach(String prefix, IntConsumer action) {
+		Node node = root;
+		int index = 0;
+		while (index < prefix.length()) {
+			int slot = node.find(prefix.charAt(index));
+			if (slot < 0) {
+				return;
+			}
+			node = node.children[slot];
+			int matched = node.match(prefix, index);
+			if (matched < node.length() && index + matched < prefix.length()) {
+				return;
+			}
+			index += matched;
+		}
+		visit(node, action);
+	}
+
+	/**
+	 * Passes the id of the node and of every node below it to the action, in
+	 * sorted word order
+	 *
+	 * @param node the node to start from
+	 * @param action called with each id
+	 */
+	private static void visit(Node node, IntConsumer action) {
+		if (node.id >= 0) {
+			action.accept(node.id);
+		}
+		for (int i = 0; i < node.count; i++) {
+			visit(node.children[i], action);
+		}
+	}
+
+	/**
+	 * Returns the number of words in the trie
+	 *
+	 * @return the number of words
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Estimates the bytes taken by the nodes of the trie, not counting the words
+	 * their labels point into
+	 *
+	 * @return the estimated number of bytes
+	 * @see MemoryStats
+	 */
+	public long bytes() {
+		return MemoryStats.object(4 + 4) + bytes(root);
+	}
+
+	/**
+	 * Estimates the bytes taken by the node and every node below it
+	 *
+	 * @param node the node to start from
+	 * @return the estimated number of bytes
+	 */
+	private static long bytes(Node node) {
+		// source, start, end, id, children and count
+		long bytes = MemoryStats.object(6 * 4);
+		if (node.children != null) {
+			bytes += MemoryStats.references(node.children.length);
+			for (int i = 0; i < node.count; i++) {
+				bytes += bytes(node.children[i]);
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * A node of the trie and the label of the edge leading to it
+	 */
+	private static class Node {
+		/** The word the label is taken from. */
+		private final String source;
+
+		/** Where the label starts in the source word. */
+		private int start;
+
+		/** Where the label ends in the source word. */
+		private final int end;
+
+		/** The id of the word ending at this node, or -1 if none does. */
+		private int id;
+
+		/** The child nodes sorted by the first character of their labels. */
+		private Node[] children;
+
+		/** The number of child nodes. */
+		private int count;
+
+		/**
+		 * Initializes a node without children
+		 *
+		 * @param source the word the label is taken from
+		 * @param start where the label starts in the source word
+		 * @param end where the label ends in the source word
+		 * @param id the id of the word ending at this node, or -1 if none does
+		 */
+		public Node(String source, int start, int end, int id) {
+			this.source = source;
+			this.start = start;
+			this.end = end;
+			this.id = id;
+			this.children = null;
+			this.count = 0;
+		}
+
+		/**
+		 * Returns the length of the label
+		 *
+		 * @return the number of characters in the label
+		 */
+		public int length() {
+			return end - start;
+		}
+
+		/**
+		 * Counts how many characters of the label match the word from the index on
+		 *
+		 * @param word the word to compare to
+		 * @param index where to start in the word
+		 * @return the number of matching characters
+		 */
+		public int match(String word, int index) {
+			int limit = Math.min(length(), word.length() - index);
+			int matched = 0;
+			while (matched < limit && source.charAt(start + matched) == word.charAt(index + matched)) {
+				matched++;
+			}
+			return matched;
+		}
+
+		/**
+		 * Finds the child whose label starts with the character
+		 *
+		 * @param first the first character of the label
+		 * @return the slot of the child, or (-(insertion slot) - 1) if there is none
+		 */
+		public int find(char first) {
+			int low = 0;
+			int high = count - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				char other = children[middle].source.charAt(children[middle].start);
+				if (other < first) {
+					low = middle + 1;
+				}
+				else if (other > first) {
+					high = middle - 1;
+				}
+				else {
+					return middle;
+				}
+			}
+			return -(low + 1);
+		}
+
+		/**
+		 * Inserts a child at the slot, shifting later children over
+		 *
+		 * @param slot where to insert the child
+		 * @param child the child to insert
+		 */
+		public void insert(int slot, Node child) {
+			if (children == null) {
+				children = new Node[2];
+			}
+			else if (count == children.length) {
+				children = Arrays.copyOf(children, count * 2);
+			}
+			System.arraycopy(children, slot, children, slot + 1, count - slot);
+			children[slot] = child;
+			count++;
+		}
+	}
+}
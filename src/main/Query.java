@@ -0,0 +1,419 @@
+package edu.usfca.cs272;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import opennlp.tools.stemmer.Stemmer;
+
+/**
+ * A parsed query line. Words outside of any operator are matched one at a
+ * time like before. Words in double quotes form a phrase, which only matches
+ * where the stems appear next to each other in order, and
+ * {@code first NEAR/k second} only matches where the two stems are at most k
+ * positions apart in either order. Each phrase or NEAR clause adds one match
+ * per occurrence, so it is scored like a single word.
+ *
+ * Words and clauses joined by {@code AND} are required, so only documents with
+ * every one of them match, and a word or clause after {@code NOT} excludes
+ * every document with it. The other words and clauses only add to the matches
+ * of the documents that pass. Required and excluded words match by prefix in a
+ * partial search.
+ *
+ * {@code AND} is only an operator between two words or clauses, and
+ * {@code NOT} only before one, possibly after other operators. A double quote
+ * only starts a phrase if it is closed. Otherwise they are plain words, so a
+ * line such as {@code rock AND} or {@code 5" tall} searches for every word in
+ * it, the same as before these operators existed.
+ *
+ * The stems of phrases and NEAR clauses always match exactly, even in a
+ * partial search, since their positions have to line up.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class Query {
+	/** Matches a closed quoted phrase or a single token. */
+	private static final Pattern TOKEN_REGEX = Pattern.compile("\"([^\"]*)\"|(\\S+)");
+
+	/** Matches the NEAR operator and captures its distance, which must fit in an int. */
+	private static final Pattern NEAR_REGEX = Pattern.compile("NEAR/([1-9]\\d{0,8})");
+
+	/** The stems matched one at a time. */
+	private final Set<String> words;
+
+	/** The stems every matching document must have. */
+	private final Set<String> required;
+
+	/** The stems no matching document may have. */
+	private final Set<String> excluded;
+
+	/** The phrase and NEAR clauses. */
+	private final List<Clause> clauses;
+
+	/** The phrase and NEAR clauses every matching document must have. */
+	private final List<Clause> requiredClauses;
+
+	/** The phrase and NEAR clauses no matching document may have. */
+	private final List<Clause> excludedClauses;
+
+	/**
+	 * Initializes an empty query
+	 */
+	private Query() {
+		this.words = new TreeSet<>();
+		this.required = new TreeSet<>();
+		this.excluded = new TreeSet<>();
+		this.clauses = new ArrayList<>();
+		this.requiredClauses = new ArrayList<>();
+		this.excludedClauses = new ArrayList<>();
+	}
+
+	/**
+	 * Parses and stems a query line
+	 *
+	 * @param line the query line
+	 * @return the parsed query
+	 */
+	public static Query parse(String line) {
+		Stemmer stemmer = StemCache.shared().stemmer();
+		Query query = new Query();
+
+		List<String> tokens = new ArrayList<>();
+		List<Boolean> quoted = new ArrayList<>();
+		Matcher matcher = TOKEN_REGEX.matcher(line);
+		while (matcher.find()) {
+			quoted.add(matcher.group(2) == null);
+			tokens.add(matcher.group(2) == null ? matcher.group(1) : matcher.group(2));
+		}
+
+		// the stems or clause of the last word, which AND makes required as well
+		List<String> previous = List.of();
+		Clause previousClause = null;
+		boolean parsed = false;
+		boolean require = false;
+		boolean exclude = false;
+		int i = 0;
+		while (i < tokens.size()) {
+			if (isOperator(tokens, quoted, i) && (parsed || tokens.get(i).equals("NOT"))
+					&& isFollowed(tokens, quoted, i, stemmer)) {
+				if (tokens.get(i).equals("AND")) {
+					query.words.removeAll(previous);
+					query.required.addAll(previous);
+					if (previousClause != null && query.clauses.remove(previousClause)) {
+						query.requiredClauses.add(previousClause);
+					}
+					require = !previous.isEmpty() || previousClause != null;
+				}
+				else {
+					exclude = true;
+				}
+				i++;
+				continue;
+			}
+
+			List<String> stems = TextFileStemmer.listStems(tokens.get(i), stemmer);
+			Clause clause = null;
+			int length = 1;
+			Matcher near = i + 2 < tokens.size() && !quoted.get(i + 1) ? NEAR_REGEX.matcher(tokens.get(i + 1)) : null;
+			if (near != null && near.matches() && !quoted.get(i + 2) && stems.size() == 1) {
+				List<String> second = TextFileStemmer.listStems(tokens.get(i + 2), stemmer);
+				if (second.size() == 1) {
+					clause = new Clause(List.of(stems.get(0), second.get(0)), Integer.parseInt(near.group(1)));
+					length = 3;
+				}
+			}
+			else if (quoted.get(i) && stems.size() > 1) {
+				clause = new Clause(stems, 0);
+			}
+
+			previous = List.of();
+			previousClause = null;
+			parsed |= clause != null || !stems.isEmpty();
+			if (clause != null) {
+				if (exclude) {
+					query.excludedClauses.add(clause);
+				}
+				else if (require) {
+					query.requiredClauses.add(clause);
+					previousClause = clause;
+				}
+				else {
+					query.clauses.add(clause);
+					previousClause = clause;
+				}
+			}
+			else if (exclude) {
+				query.excluded.addAll(stems);
+			}
+			else if (require) {
+				query.required.addAll(stems);
+				previous = stems;
+			}
+			else {
+				query.words.addAll(stems);
+				previous = stems;
+			}
+			require = false;
+			exclude = false;
+			i += length;
+		}
+
+		// a required stem is only counted once
+		query.words.removeAll(query.required);
+		return query;
+	}
+
+	/**
+	 * Checks if a token is spelled like an operator, which it is only if it is
+	 * also not quoted
+	 *
+	 * @param tokens the tokens of the query line
+	 * @param quoted whether each token was quoted
+	 * @param i the index of the token
+	 * @return true if the token is an unquoted {@code AND} or {@code NOT}
+	 */
+	private static boolean isOperator(List<String> tokens, List<Boolean> quoted, int i) {
+		return !quoted.get(i) && (tokens.get(i).equals("AND") || tokens.get(i).equals("NOT"));
+	}
+
+	/**
+	 * Checks if a word or clause follows an operator, skipping any other
+	 * operators in between
+	 *
+	 * @param tokens the tokens of the query line
+	 * @param quoted whether each token was quoted
+	 * @param i the index of the operator
+	 * @param stemmer the stemmer of the query line
+	 * @return true if a token with at least one stem follows the operator
+	 */
+	private static boolean isFollowed(List<String> tokens, List<Boolean> quoted, int i, Stemmer stemmer) {
+		for (int j = i + 1; j < tokens.size(); j++) {
+			if (!isOperator(tokens, quoted, j)) {
+				return !TextFileStemmer.listStems(tokens.get(j), stemmer).isEmpty();
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the stems matched one at a time
+	 *
+	 * @return an unmodifiable sorted set of stems
+	 */
+	public Set<String> words() {
+		return Collections.unmodifiableSet(words);
+	}
+
+	/**
+	 * Returns the stems every matching document must have
+	 *
+	 * @return an unmodifiable sorted set of stems
+	 */
+	public Set<String> required() {
+		return Collections.unmodifiableSet(required);
+	}
+
+	/**
+	 * Returns the stems no matching document may have
+	 *
+	 * @return an unmodifiable sorted set of stems
+	 */
+	public Set<String> excluded() {
+		return Collections.unmodifiableSet(excluded);
+	}
+
+	/**
+	 * Returns the phrase and NEAR clauses
+	 *
+	 * @return an unmodifiable list of clauses
+	 */
+	public List<Clause> clauses() {
+		return Collections.unmodifiableList(clauses);
+	}
+
+	/**
+	 * Returns the phrase and NEAR clauses every matching document must have
+	 *
+	 * @return an unmodifiable list of clauses
+	 */
+	public List<Clause> requiredClauses() {
+		return Collections.unmodifiableList(requiredClauses);
+	}
+
+	/**
+	 * Returns the phrase and NEAR clauses no matching document may have
+	 *
+	 * @return an unmodifiable list of clauses
+	 */
+	public List<Clause> excludedClauses() {
+		return Collections.unmodifiableList(excludedClauses);
+	}
+
+	/**
+	 * Checks if the query has any phrase or NEAR clauses, which need positions
+	 *
+	 * @return true if the query has clauses, whether required, excluded or not
+	 */
+	public boolean hasClauses() {
+		return !clauses.isEmpty() || !requiredClauses.isEmpty() || !excludedClauses.isEmpty();
+	}
+
+	/**
+	 * Checks if the query only has stems matched one at a time
+	 *
+	 * @return true if the query has no clauses and no required or excluded stems
+	 */
+	public boolean isPlain() {
+		return !hasClauses() && required.isEmpty() && excluded.isEmpty();
+	}
+
+	/**
+	 * Checks if the query has nothing to search for
+	 *
+	 * @return true if the query has no stems that can match
+	 */
+	public boolean isEmpty() {
+		return words.isEmpty() && required.isEmpty() && clauses.isEmpty() && requiredClauses.isEmpty();
+	}
+
+	/**
+	 * Returns the cleaned query, which is the same for query lines that search
+	 * for the same thing. A plain query is its stems joined by spaces.
+	 */
+	@Override
+	public String toString() {
+		List<String> parts = new ArrayList<>();
+		List<String> all = new ArrayList<>(required);
+		for (Clause clause : requiredClauses) {
+			all.add(clause.toString());
+		}
+		if (!all.isEmpty()) {
+			parts.add(String.join(" AND ", all));
+		}
+		parts.addAll(words);
+		for (Clause clause : clauses) {
+			parts.add(clause.toString());
+		}
+		for (String word : excluded) {
+			parts.add("NOT " + word);
+		}
+		for (Clause clause : excludedClauses) {
+			parts.add("NOT " + clause);
+		}
+		return String.join(" ", parts);
+	}
+
+	/**
+	 * A phrase or NEAR clause, which matches where its stems are at the right
+	 * positions relative to each other
+	 */
+	public static class Clause {
+		/** The stems of the clause in order. */
+		private final List<String> words;
+
+		/** The maximum distance of a NEAR clause, or 0 for a phrase. */
+		private final int distance;
+
+		/**
+		 * Initializes a clause
+		 *
+		 * @param words the stems of the clause in order
+		 * @param distance the maximum distance of a NEAR clause, or 0 for a phrase
+		 */
+		public Clause(List<String> words, int distance) {
+			this.words = List.copyOf(words);
+			this.distance = distance;
+		}
+
+		/**
+		 * Returns the stems of the clause
+		 *
+		 * @return an unmodifiable list of stems in order
+		 */
+		public List<String> words() {
+			return words;
+		}
+
+		/**
+		 * Counts the matches of the clause in a document. A phrase matches once for
+		 * each position of its first stem that the other stems follow in order. A
+		 * NEAR clause matches once for each position of its first stem that has the
+		 * second stem within the distance. The positions are intersected with
+		 * galloping searches that only move forward.
+		 *
+		 * @param positions the positions of each stem of the clause in the document
+		 * @return the number of matches
+		 */
+		public int count(PositionList[] positions) {
+			int[][] sorted = new int[positions.length][];
+			for (int i = 0; i < positions.length; i++) {
+				sorted[i] = positions[i].toIntArray();
+			}
+			return distance > 0 ? near(sorted[0], sorted[1]) : phrase(sorted);
+		}
+
+		/**
+		 * Counts the positions where the stems of the phrase follow each other
+		 *
+		 * @param sorted the sorted positions of each stem
+		 * @return the number of matches
+		 */
+		private static int phrase(int[][] sorted) {
+			int[] cursors = new int[sorted.length];
+			int count = 0;
+			for (int start : sorted[0]) {
+				boolean matched = true;
+				for (int i = 1; i < sorted.length && matched; i++) {
+					cursors[i] = PostingList.gallop(sorted[i], cursors[i], sorted[i].length, start + i);
+					if (cursors[i] == sorted[i].length) {
+						return count;
+					}
+					matched = sorted[i][cursors[i]] == start + i;
+				}
+				if (matched) {
+					count++;
+				}
+			}
+			return count;
+		}
+
+		/**
+		 * Counts the positions of the first stem that have the second stem within
+		 * the distance
+		 *
+		 * @param first the sorted positions of the first stem
+		 * @param second the sorted positions of the second stem
+		 * @return the number of matches
+		 */
+		private int near(int[] first, int[] second) {
+			boolean same = words.get(0).equals(words.get(1));
+			int cursor = 0;
+			int count = 0;
+			for (int position : first) {
+				cursor = PostingList.gallop(second, cursor, second.length, position - distance);
+				int other = cursor;
+				if (same && other < second.length && second[other] == position) {
+					// the same stem must be found at another position
+					other++;
+				}
+				if (other < second.length && second[other] - position <= distance) {
+					count++;
+				}
+			}
+			return count;
+		}
+
+		@Override
+		public String toString() {
+			if (distance > 0) {
+				return words.get(0) + " NEAR/" + distance + " " + words.get(1);
+			}
+			return "\"" + String.join(" ", words) + "\"";
+		}
+	}
+}
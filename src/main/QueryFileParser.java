@@ -3,7 +3,6 @@ package edu.usfca.cs272;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
-import java.util.Set;
 import java.util.TreeMap;
 
 /**
@@ -42,13 +41,17 @@ public class QueryFileParser implements QueryFileParserInterface {
 	 */
 	@Override
 	public void buildSearch(String line, boolean exactSearch) {
-		Set<String> cleaned = TextFileStemmer.uniqueStems(line);
-		if (cleaned.isEmpty()) {
+		Query parsed = Query.parse(line);
+		if (parsed.isEmpty()) {
 			return;
 		}
-		String queryLine = String.join(" " , cleaned);
+		if (parsed.hasClauses() && !invertedIndex.hasPositions()) {
+			System.out.println("Unable to search for phrases in an index without positions: " + line);
+			return;
+		}
+		String queryLine = parsed.toString();
 		if (!resultsMap.containsKey(queryLine)) {
-			resultsMap.put(queryLine, invertedIndex.search(cleaned, exactSearch));
+			resultsMap.put(queryLine, invertedIndex.search(parsed, exactSearch));
 		}
 	}
 	
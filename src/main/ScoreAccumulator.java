@@ -0,0 +1,152 @@
+package edu.usfca.cs272;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Adds up the number of matches and the weight of the matches of each
+ * document during a search in primitive arrays indexed by document id. The ids of the documents touched so
+ * far are kept in a dirty list, so reading the matched documents and clearing
+ * the counts afterwards only visits those documents instead of the whole
+ * array. An accumulator is meant to be reused for every search of a thread.
+ *
+ * Warning: This class is not thread-safe. If multiple threads access this class
+ * concurrently, access must be synchronized externally.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class ScoreAccumulator {
+	/**
+	 * Number of matches stored by document id
+	 */
+	private int[] counts;
+
+	/**
+	 * Total weight of the matches stored by document id
+	 *
+	 * @see Scorer#weight(int, int, int)
+	 */
+	private double[] weights;
+
+	/**
+	 * Ids of the documents with at least one match, in the order first matched
+	 */
+	private int[] dirty;
+
+	/**
+	 * Number of documents in the dirty list
+	 */
+	private int size;
+
+	/**
+	 * Initializes an empty accumulator
+	 */
+	public ScoreAccumulator() {
+		this.counts = new int[16];
+		this.weights = new double[16];
+		this.dirty = new int[16];
+		this.size = 0;
+	}
+
+	/**
+	 * Makes room for document ids below the given number of documents
+	 *
+	 * @param documents the number of documents that may be matched
+	 */
+	public void ensureCapacity(int documents) {
+		if (documents > counts.length) {
+			counts = Arrays.copyOf(counts, Math.max(documents, counts.length * 2));
+			weights = Arrays.copyOf(weights, counts.length);
+		}
+	}
+
+	/**
+	 * Adds matches to the document
+	 *
+	 * @param document the document id, which must be below the ensured capacity
+	 * @param matches the number of matches to add, which must be positive
+	 * @param weight the weight of the matches
+	 */
+	public void add(int document, int matches, double weight) {
+		if (counts[document] == 0) {
+			if (size == dirty.length) {
+				dirty = Arrays.copyOf(dirty, size * 2);
+			}
+			dirty[size++] = document;
+		}
+		counts[document] += matches;
+		weights[document] += weight;
+	}
+
+	/**
+	 * Returns the number of matched documents
+	 *
+	 * @return the number of matched documents
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the id of a matched document
+	 *
+	 * @param index the index in the dirty list
+	 * @return the document id
+	 */
+	public int document(int index) {
+		return dirty[index];
+	}
+
+	/**
+	 * Returns the number of matches of the document
+	 *
+	 * @param document the document id
+	 * @return the number of matches
+	 */
+	public int count(int document) {
+		return counts[document];
+	}
+
+	/**
+	 * Returns the total weight of the matches of the document
+	 *
+	 * @param document the document id
+	 * @return the total weight
+	 */
+	public double weight(int document) {
+		return weights[document];
+	}
+
+	/**
+	 * Removes the matched documents that pass the test, resetting their counts
+	 * and weights
+	 *
+	 * @param test checks if a document id should be removed
+	 */
+	public void removeIf(IntPredicate test) {
+		int kept = 0;
+		for (int i = 0; i < size; i++) {
+			if (test.test(dirty[i])) {
+				counts[dirty[i]] = 0;
+				weights[dirty[i]] = 0;
+			}
+			else {
+				dirty[kept++] = dirty[i];
+			}
+		}
+		size = kept;
+	}
+
+	/**
+	 * Resets the counts and weights of the matched documents and empties the
+	 * dirty list
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			counts[dirty[i]] = 0;
+			weights[dirty[i]] = 0;
+		}
+		size = 0;
+	}
+}
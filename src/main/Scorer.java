@@ -0,0 +1,70 @@
+package edu.usfca.cs272;
+
+import java.util.List;
+
+/**
+ * Scores the documents matched by a search. While searching, the index adds up
+ * the number of matches of each document, and also the weight of every
+ * posting it visits, which is what the matches of one word in one document
+ * are worth to the scorer. The scorer then turns both totals into the score of
+ * the document.
+ *
+ * A scorer is prepared for the statistics of one index before it is used, so
+ * whatever it needs from those statistics is computed once instead of on every
+ * search. The index prepares its scorer again whenever it changes. An index
+ * that is one part of a larger one is prepared for the statistics of the whole
+ * corpus instead, wherever they differ from its own.
+ *
+ * Scores must add up over the words of a document: the score of a document is
+ * the sum of the scores of the matches of each word on their own, so a search
+ * for the best results can skip documents whose words cannot add up to enough
+ * with {@link #bound(int)}.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public interface Scorer {
+	/**
+	 * Returns a scorer prepared for the current statistics of an index. The
+	 * statistics must not change while the returned scorer is used.
+	 *
+	 * @param terms the term dictionary of the index
+	 * @param documents the document table of the index
+	 * @param postings the posting list of every word id of the index
+	 * @param corpus the statistics of the whole corpus the index is a part of,
+	 *   or null if the index is the whole corpus
+	 * @return the prepared scorer
+	 */
+	public Scorer prepare(TermDictionary terms, DocumentTable documents, List<PostingList> postings,
+			CorpusStats corpus);
+
+	/**
+	 * Returns the weight of the matches of a word in a document
+	 *
+	 * @param term the word id
+	 * @param document the document id
+	 * @param matches the number of matches of the word in the document
+	 * @return the weight of the matches
+	 */
+	public double weight(int term, int document, int matches);
+
+	/**
+	 * Returns the score of a matched document
+	 *
+	 * @param document the document id
+	 * @param count the total number of matches in the document
+	 * @param weight the total weight of the matches in the document
+	 * @return the score of the document
+	 */
+	public double score(int document, int count, double weight);
+
+	/**
+	 * Returns an upper bound on the score of the matches of a word in any single
+	 * document, which must be at least the largest such score even after
+	 * rounding, and is best kept as tight as possible
+	 *
+	 * @param term the word id
+	 * @return the upper bound on the score of the word in a document
+	 */
+	public double bound(int term);
+}
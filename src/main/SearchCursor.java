@@ -0,0 +1,140 @@
+package edu.usfca.cs272;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+import edu.usfca.cs272.InvertedIndex.SearchResult;
+
+/**
+ * Returns the results of a search lazily in sorted order. Only the best
+ * results are searched for at first, just enough for the page that is read,
+ * so reading the first page of a search goes through the top-k search instead
+ * of ranking every match. Reading past them searches again for at least twice
+ * as many results, so reading n results only takes about log(n) searches.
+ * Results that were already pulled are kept, so earlier pages can be read
+ * again without searching again.
+ *
+ * Each search runs against the index as it is at that time. If the index
+ * changes between pages, such as while it is being watched, later pages come
+ * from the changed index, but a location is never returned twice.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class SearchCursor implements Iterator<SearchResult> {
+	/** Searches for the best k results in sorted order. */
+	private final IntFunction<List<SearchResult>> search;
+
+	/** The results pulled so far in sorted order. */
+	private final List<SearchResult> pulled;
+
+	/** The locations of the results pulled so far. */
+	private final Set<String> seen;
+
+	/** Whether the last search found fewer results than asked for. */
+	private boolean exhausted;
+
+	/** The number of results returned through {@link #next()}. */
+	private int position;
+
+	/**
+	 * Initializes a cursor that searches for results as they are pulled
+	 *
+	 * @param search returns the best k results in sorted order, with one result
+	 *   per location
+	 */
+	public SearchCursor(IntFunction<List<SearchResult>> search) {
+		this.search = search;
+		this.pulled = new ArrayList<>();
+		this.seen = new HashSet<>();
+		this.exhausted = false;
+		this.position = 0;
+	}
+
+	/**
+	 * Initializes a cursor over the unsorted matches of a search that already
+	 * ran
+	 *
+	 * @param matches the unsorted matches, with one result per location
+	 */
+	public SearchCursor(Collection<SearchResult> matches) {
+		this(k -> InvertedIndex.top(matches, k));
+	}
+
+	/**
+	 * Searches until the given number of results have been pulled or there are
+	 * none left
+	 *
+	 * @param count the number of results to pull in total
+	 */
+	private void pull(long count) {
+		while (pulled.size() < count && !exhausted) {
+			int k = (int) Math.min(Integer.MAX_VALUE, Math.max(count, 2L * pulled.size()));
+			List<SearchResult> best = search.apply(k);
+			for (SearchResult result : best) {
+				if (seen.add(result.getLocation())) {
+					pulled.add(result);
+				}
+			}
+			exhausted = best.size() < k;
+		}
+	}
+
+	@Override
+	public synchronized boolean hasNext() {
+		pull(position + 1L);
+		return position < pulled.size();
+	}
+
+	/**
+	 * Returns the next result in sorted order, independently of the pages read
+	 */
+	@Override
+	public synchronized SearchResult next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return pulled.get(position++);
+	}
+
+	/**
+	 * Returns a page of the results, pulling only as many results as needed
+	 *
+	 * @param page the page number, starting from 1
+	 * @param size the number of results per page
+	 * @return an unmodifiable list of at most size results, which is empty past
+	 *   the last page
+	 */
+	public synchronized List<SearchResult> page(int page, int size) {
+		if (page < 1 || size < 1) {
+			throw new IllegalArgumentException("The page and page size must be positive.");
+		}
+		long start = (long) (page - 1) * size;
+		// one more result tells whether there is a next page without searching again
+		pull(start + size + 1);
+		if (start >= pulled.size()) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(new ArrayList<>(pulled.subList((int) start, (int) Math.min(start + size, pulled.size()))));
+	}
+
+	/**
+	 * Checks if there are results after the given page
+	 *
+	 * @param page the page number, starting from 1
+	 * @param size the number of results per page
+	 * @return true if the next page has at least one result
+	 */
+	public synchronized boolean hasNextPage(int page, int size) {
+		long end = (long) page * size;
+		pull(end + 1);
+		return pulled.size() > end;
+	}
+}
@@ -0,0 +1,771 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A thread-safe inverted index made of immutable segments. Workers flush their
+ * local index as a new frozen segment without taking the write lock, and a
+ * background merger combines segments of the same size tier on the work queue.
+ * Searches fan out over the current list of segments, which is replaced
+ * atomically whenever segments are added or merged.
+ *
+ * Other reads also combine the underlying threaded index with the current
+ * segments under the read lock. Only {@link #freeze()} and {@link #save(Path)}
+ * merge every segment into the underlying index first.
+ *
+ * {@link #publish()} prepares the scorer of the underlying index and of every
+ * segment for the statistics of all of them, so they score their matches the
+ * same as one index. A segment added afterwards uses its own statistics until
+ * the next publish.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class SegmentedInvertedIndex extends ThreadedInvertedIndex {
+	/** Number of segments of the same tier that are merged together. */
+	public static final int MERGE_FACTOR = 10;
+
+	/** The current immutable list of segments. */
+	private final AtomicReference<List<Segment>> segments;
+
+	/**
+	 * Every location added so far, used to detect locations added twice. Also
+	 * the lock held while a location is checked and its segment is added, so a
+	 * location is never in two segments, and while the segments are prepared
+	 * for new statistics, so a merged segment is never swapped in with old ones.
+	 */
+	private final Set<String> locations;
+
+	/** Whether a background merge is scheduled or running. */
+	private final AtomicBoolean merging;
+
+	/** Worker threads that run the background merges. */
+	private final WorkQueue workers;
+
+	/**
+	 * Initializes an empty segmented index
+	 *
+	 * @param workers worker threads used for background merges
+	 */
+	public SegmentedInvertedIndex(WorkQueue workers) {
+		this.segments = new AtomicReference<>(List.of());
+		this.locations = new HashSet<>();
+		this.merging = new AtomicBoolean(false);
+		this.workers = workers;
+	}
+
+	/**
+	 * Returns the number of segments that have not been merged into the
+	 * underlying index yet
+	 *
+	 * @return the number of segments
+	 */
+	public int segments() {
+		return segments.get().size();
+	}
+
+	/**
+	 * Freezes the other index and adds it as a new segment without taking the
+	 * write lock. The other index must not be used by the caller afterwards. If
+	 * any of its locations were added before, it is merged under the write lock
+	 * instead so the positions of that location are combined. If this index does
+	 * not store positions, the positions of the other index are dropped first.
+	 * 
+	 * Checking the locations and adding the segment happen together while
+	 * holding the lock of the locations, so a location added again always finds
+	 * the segment of its first batch to merge with, and a location removed
+	 * meanwhile is not added back by a segment added later.
+	 */
+	@Override
+	public void addAll(InvertedIndex otherInvertedIndex) {
+		if (isFrozen()) {
+			throw new IllegalStateException("Cannot modify a frozen index.");
+		}
+		if (hasPositions() && !otherInvertedIndex.hasPositions()) {
+			throw new IllegalArgumentException("Cannot add an index without positions to an index with them.");
+		}
+
+		otherInvertedIndex.setPositions(hasPositions());
+		otherInvertedIndex.setScorer(getScorer());
+		otherInvertedIndex.freeze();
+		Segment added = new Segment(otherInvertedIndex, weight(otherInvertedIndex));
+
+		synchronized (locations) {
+			boolean duplicate = false;
+			for (String location : otherInvertedIndex.getCount().keySet()) {
+				duplicate |= !locations.add(location);
+			}
+
+			if (duplicate) {
+				lock.writeLock().lock();
+				try {
+					forceMerge();
+					super.addAll(otherInvertedIndex);
+				}
+				finally {
+					lock.writeLock().unlock();
+				}
+				return;
+			}
+
+			List<Segment> current;
+			List<Segment> next;
+			do {
+				current = segments.get();
+				next = new ArrayList<>(current);
+				next.add(added);
+			} while (!segments.compareAndSet(current, List.copyOf(next)));
+		}
+
+		maybeMerge();
+	}
+
+	@Override
+	public void addAll(List<String> listStems, String inputPath) {
+		InvertedIndex local = newPart();
+		local.addAll(listStems, inputPath);
+		addAll(local);
+	}
+
+	@Override
+	public void add(String word, String location, Integer position) {
+		synchronized (locations) {
+			lock.writeLock().lock();
+			try {
+				forceMerge();
+				locations.add(location);
+				super.add(word, location, position);
+			}
+			finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Merges every segment into the underlying index first, since the location
+	 * may be in any of them
+	 */
+	@Override
+	public boolean remove(String location) {
+		synchronized (locations) {
+			lock.writeLock().lock();
+			try {
+				forceMerge();
+				locations.remove(location);
+				return super.remove(location);
+			}
+			finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Merges every segment into the underlying index first, since the location
+	 * may be in any of them
+	 */
+	@Override
+	public void replace(List<String> listStems, String location) {
+		synchronized (locations) {
+			lock.writeLock().lock();
+			try {
+				forceMerge();
+				locations.add(location);
+				super.replace(listStems, location);
+			}
+			finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Merges every segment into the underlying index under the write lock. The
+	 * underlying index then holds every document, so it goes back to its own
+	 * statistics.
+	 */
+	public void forceMerge() {
+		if (segments.get().isEmpty()) {
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			for (Segment segment : segments.getAndSet(List.of())) {
+				super.addAll(segment.index);
+			}
+			super.setCorpusStats(null);
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Merges every segment into the underlying index and then freezes it. Must
+	 * not be called while segments are still being added.
+	 */
+	@Override
+	public void freeze() {
+		lock.writeLock().lock();
+		try {
+			forceMerge();
+			super.freeze();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Prepares the scorer of the underlying index and of every segment for the
+	 * statistics of all of them. Does nothing once frozen, since every segment
+	 * is merged into the underlying index by then.
+	 */
+	@Override
+	public void publish() {
+		synchronized (locations) {
+			lock.writeLock().lock();
+			try {
+				if (isFrozen()) {
+					return;
+				}
+				List<Segment> current = segments.get();
+				CorpusStats corpus = current.isEmpty() ? null : corpusStats(current);
+				super.setCorpusStats(corpus);
+				for (Segment segment : current) {
+					segment.index.setCorpusStats(corpus);
+				}
+			}
+			finally {
+				lock.writeLock().unlock();
+			}
+		}
+		super.publish();
+	}
+
+	/**
+	 * Combines the statistics of the underlying index and every segment
+	 */
+	@Override
+	public CorpusStats corpusStats() {
+		SimpleLock readLock = readLock();
+		readLock.lock();
+		try {
+			return corpusStats(segments.get());
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Combines the statistics of the underlying index and some segments, which
+	 * each have different locations. The read lock must be held by the caller.
+	 *
+	 * @param current the segments to combine
+	 * @return the combined statistics
+	 */
+	private CorpusStats corpusStats(List<Segment> current) {
+		CorpusStats corpus = super.corpusStats();
+		for (Segment segment : current) {
+			corpus = corpus.combine(segment.index.corpusStats());
+		}
+		return corpus;
+	}
+
+	/**
+	 * Sets the scorer of every segment as well, which keeps the statistics it
+	 * was last prepared for
+	 */
+	@Override
+	public void setScorer(Scorer scorer) {
+		super.setScorer(scorer);
+		for (Segment segment : segments.get()) {
+			segment.index.setScorer(scorer);
+		}
+	}
+
+	@Override
+	public List<SearchResult> exactSearch(Set<String> queries) {
+		SimpleLock readLock = readLock();
+		readLock.lock();
+		try {
+			List<SearchResult> results = super.exactSearch(queries);
+			for (Segment segment : segments.get()) {
+				results.addAll(segment.index.exactSearch(queries));
+			}
+			Collections.sort(results);
+			return results;
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public List<SearchResult> partialSearch(Set<String> queries) {
+		SimpleLock readLock = readLock();
+		readLock.lock();
+		try {
+			List<SearchResult> results = super.partialSearch(queries);
+			for (Segment segment : segments.get()) {
+				results.addAll(segment.index.partialSearch(queries));
+			}
+			Collections.sort(results);
+			return results;
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public List<SearchResult> search(Set<String> query, boolean exactSearch, int k) {
+		SimpleLock readLock = readLock();
+		readLock.lock();
+		try {
+			List<SearchResult> results = super.search(query, exactSearch, k);
+			for (Segment segment : segments.get()) {
+				results.addAll(segment.index.search(query, exactSearch, k));
+			}
+			return top(results, k);
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Adds the matches of every segment, which always holds whole documents, so
+	 * phrase and NEAR clauses can be matched within each segment
+	 */
+	@Override
+	protected List<SearchResult> matches(Query query, boolean exactSearch) {
+		List<SearchResult> results = super.matches(query, exactSearch);
+		for (Segment segment : segments.get()) {
+			results.addAll(segment.index.matches(query, exactSearch));
+		}
+		return results;
+	}
+
+	/**
+	 * Schedules a background merge if some size tier has at least
+	 * {@link #MERGE_FACTOR} segments and no merge is already running
+	 */
+	private void maybeMerge() {
+		if (workers == null || !merging.compareAndSet(false, true)) {
+			return;
+		}
+		List<Segment> candidates = candidates(segments.get());
+		if (candidates.isEmpty()) {
+			merging.set(false);
+			return;
+		}
+		workers.execute(new MergeTask(candidates));
+	}
+
+	/**
+	 * Finds the segments of the smallest size tier that has enough segments to
+	 * merge. The tier of a segment is the number of digits of its weight in base
+	 * {@link #MERGE_FACTOR}.
+	 *
+	 * @param current the current list of segments
+	 * @return the segments to merge, or an empty list if no tier is full
+	 */
+	private static List<Segment> candidates(List<Segment> current) {
+		List<List<Segment>> tiers = new ArrayList<>();
+		for (Segment segment : current) {
+			while (tiers.size() <= segment.tier) {
+				tiers.add(new ArrayList<>());
+			}
+			tiers.get(segment.tier).add(segment);
+		}
+		for (List<Segment> tier : tiers) {
+			if (tier.size() >= MERGE_FACTOR) {
+				return tier.subList(0, MERGE_FACTOR);
+			}
+		}
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Returns the total number of stems in the index, used as its size
+	 *
+	 * @param index the inverted index
+	 * @return the total number of stems
+	 */
+	private static long weight(InvertedIndex index) {
+		long weight = 0;
+		for (int count : index.getCount().values()) {
+			weight += count;
+		}
+		return weight;
+	}
+
+	/**
+	 * A frozen segment of the index and its size tier
+	 */
+	private static class Segment {
+		/** The frozen index of the segment. */
+		private final InvertedIndex index;
+
+		/** The total number of stems in the segment. */
+		private final long weight;
+
+		/** The size tier of the segment. */
+		private final int tier;
+
+		/**
+		 * Initializes a segment
+		 *
+		 * @param index the frozen index of the segment
+		 * @param weight the total number of stems in the segment
+		 */
+		public Segment(InvertedIndex index, long weight) {
+			this.index = index;
+			this.weight = weight;
+			int digits = 0;
+			for (long remaining = weight / MERGE_FACTOR; remaining > 0; remaining /= MERGE_FACTOR) {
+				digits++;
+			}
+			this.tier = digits;
+		}
+	}
+
+	/**
+	 * Merges a group of segments into one new segment and swaps it in for the
+	 * group, unless the group was merged into the underlying index meanwhile
+	 */
+	private class MergeTask implements Runnable {
+		/** The segments to merge. */
+		private final List<Segment> inputs;
+
+		/**
+		 * Initializes the merge task
+		 *
+		 * @param inputs the segments to merge
+		 */
+		public MergeTask(List<Segment> inputs) {
+			this.inputs = List.copyOf(inputs);
+		}
+
+		@Override
+		public void run() {
+			try {
+				InvertedIndex merged = newPart();
+				merged.setScorer(getScorer());
+				long weight = 0;
+				for (Segment segment : inputs) {
+					merged.addAll(segment.index);
+					weight += segment.weight;
+				}
+				// merging leaves the corpus as it is, so the last published statistics still hold
+				merged.setCorpusStats(getCorpusStats());
+				merged.freeze();
+				Segment output = new Segment(merged, weight);
+
+				synchronized (locations) {
+					// a publish during the merge prepared the other segments for newer statistics
+					if (merged.getCorpusStats() != getCorpusStats()) {
+						merged.setCorpusStats(getCorpusStats());
+					}
+					List<Segment> current;
+					List<Segment> next;
+					do {
+						current = segments.get();
+						if (!current.containsAll(inputs)) {
+							return;
+						}
+						next = new ArrayList<>(current);
+						next.removeAll(inputs);
+						next.add(output);
+					} while (!segments.compareAndSet(current, List.copyOf(next)));
+				}
+			}
+			finally {
+				merging.set(false);
+				maybeMerge();
+			}
+		}
+	}
+
+	/**
+	 * Sums the stats of the underlying index and every segment. Each location is
+	 * in exactly one of them, so the documents add up, while a word in several of
+	 * them is counted once by each.
+	 */
+	@Override
+	public MemoryStats memoryStats() {
+		SimpleLock readLock = readLock();
+		readLock.lock();
+		try {
+			MemoryStats stats = super.memoryStats();
+			for (Segment segment : segments.get()) {
+				MemoryStats other = segment.index.memoryStats();
+				stats = stats.combine(other, stats.getDocuments() + other.getDocuments());
+			}
+			return stats;
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public int size() {
+		return get().size();
+	}
+
+	@Override
+	public int size(String word) {
+		return get(word).size();
+	}
+
+	@Override
+	public int size(String word, String location) {
+		SimpleLock readLock = readLock();
+		readLock.lock();
+		try {
+			int size = super.size(word, location);
+			for (Segment segment : segments.get()) {
+				size += segment.index.size(word, location);
+			}
+			return size;
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public boolean contains(String word) {
+		SimpleLock readLock = readLock();
+		readLock.lock();
+		try {
+			if (super.contains(word)) {
+				return true;
+			}
+			for (Segment segment : segments.get()) {
+				if (segment.index.contains(word)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public boolean contains(String word, String location) {
+		SimpleLock readLock = readLock();
+		readLock.lock();
+		try {
+			if (super.contains(word, location)) {
+				return true;
+			}
+			for (Segment segment : segments.get()) {
+				if (segment.index.contains(word, location)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public boolean contains(String word, String location, Integer position) {
+		SimpleLock readLock = readLock();
+		readLock.lock();
+		try {
+			if (super.contains(word, location, position)) {
+				return true;
+			}
+			for (Segment segment : segments.get()) {
+				if (segment.index.contains(word, location, position)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public void writeJson(Path writePath) throws IOException {
+		SimpleLock readLock = readLock();
+		readLock.lock();
+		try {
+			List<Segment> current = segments.get();
+			if (hasPositions()) {
+				SimpleJsonWriter.writeTripleNested(get(), word -> locations(word, current), writePath);
+			}
+			else {
+				SimpleJsonWriter.writeNestedObject(get(), word -> counts(word, current), writePath);
+			}
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the paths and positions of the stemmed word in the underlying index
+	 * and the segments, sorted by path. The read lock must be held by the caller.
+	 *
+	 * @param word stemmed word
+	 * @param current the segments to read
+	 * @return map of file path to the positions of the word
+	 */
+	private Map<String, Set<Integer>> locations(String word, List<Segment> current) {
+		TreeMap<String, Set<Integer>> locations = new TreeMap<>();
+		for (String location : super.get(word)) {
+			locations.put(location, super.get(word, location));
+		}
+		for (Segment segment : current) {
+			for (String location : segment.index.get(word)) {
+				locations.put(location, segment.index.get(word, location));
+			}
+		}
+		return locations;
+	}
+
+	/**
+	 * Returns the paths of the stemmed word and how many times it appears in
+	 * each, sorted by path. The read lock must be held by the caller.
+	 *
+	 * @param word stemmed word
+	 * @param current the segments to read
+	 * @return map of file path to the number of times the word appears
+	 */
+	private Map<String, Integer> counts(String word, List<Segment> current) {
+		TreeMap<String, Integer> counts = new TreeMap<>();
+		for (String location : super.get(word)) {
+			counts.put(location, super.size(word, location));
+		}
+		for (Segment segment : current) {
+			for (String location : segment.index.get(word)) {
+				counts.put(location, segment.index.size(word, location));
+			}
+		}
+		return counts;
+	}
+
+	@Override
+	public void writeCount(Path writePath) throws IOException {
+		SimpleJsonWriter.writeObject(getCount(), writePath);
+	}
+
+	@Override
+	public void save(Path writePath) throws IOException {
+		forceMerge();
+		super.save(writePath);
+	}
+
+	@Override
+	public Map<String, Integer> getCount() {
+		SimpleLock readLock = readLock();
+		readLock.lock();
+		try {
+			TreeMap<String, Integer> counts = new TreeMap<>(super.getCount());
+			for (Segment segment : segments.get()) {
+				counts.putAll(segment.index.getCount());
+			}
+			return Collections.unmodifiableMap(counts);
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public Set<String> get() {
+		SimpleLock readLock = readLock();
+		readLock.lock();
+		try {
+			TreeSet<String> words = new TreeSet<>(super.get());
+			for (Segment segment : segments.get()) {
+				words.addAll(segment.index.get());
+			}
+			return Collections.unmodifiableSet(words);
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public Set<String> get(String word) {
+		SimpleLock readLock = readLock();
+		readLock.lock();
+		try {
+			TreeSet<String> locations = new TreeSet<>(super.get(word));
+			for (Segment segment : segments.get()) {
+				locations.addAll(segment.index.get(word));
+			}
+			return Collections.unmodifiableSet(locations);
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the positions from whichever part holds the location, since each
+	 * location is in exactly one of them
+	 */
+	@Override
+	public Set<Integer> get(String word, String location) {
+		SimpleLock readLock = readLock();
+		readLock.lock();
+		try {
+			if (super.contains(word, location)) {
+				return super.get(word, location);
+			}
+			for (Segment segment : segments.get()) {
+				if (segment.index.contains(word, location)) {
+					return segment.index.get(word, location);
+				}
+			}
+			return super.get(word, location);
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public String toString() {
+		SimpleLock readLock = readLock();
+		readLock.lock();
+		try {
+			List<Segment> current = segments.get();
+			TreeMap<String, Map<String, ?>> ordered = new TreeMap<>();
+			for (String word : get()) {
+				ordered.put(word, hasPositions() ? locations(word, current) : counts(word, current));
+			}
+			return ordered.toString();
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+}
@@ -0,0 +1,800 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * A thread-safe inverted index that partitions the words by hash into shards,
+ * each an independent index with its own read/write lock. Writers only lock
+ * the shards their words belong to, exact searches only lock the shards of
+ * their query words, and partial searches visit every shard in parallel.
+ *
+ * A shard only stores the documents that have words in it, along with their
+ * number of stems, so with the default scorer each shard scores its matches
+ * the same as one big index would. Other scorers also depend on the number of
+ * documents and their average length, so {@link #publish()} prepares every
+ * shard for the statistics of all of them. The matches of a location from
+ * different shards are combined before sorting. A document that is being
+ * added may briefly be visible in some shards and not yet in others.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class ShardedInvertedIndex extends ThreadedInvertedIndex {
+	/** The shards, indexed by {@link InvertedIndex#partOf(String, int)}. */
+	private final InvertedIndex[] shards;
+
+	/** The lock protecting each shard. */
+	private final SimpleReadWriteLock[] locks;
+
+	/**
+	 * The number of stems of every location added so far, used to detect
+	 * locations added twice.
+	 */
+	private final Map<String, Integer> locations;
+
+	/**
+	 * Initializes an empty sharded index
+	 *
+	 * @param shards the number of shards
+	 */
+	public ShardedInvertedIndex(int shards) {
+		if (shards < 1) {
+			throw new IllegalArgumentException("Need at least one shard.");
+		}
+		this.shards = new InvertedIndex[shards];
+		this.locks = new SimpleReadWriteLock[shards];
+		for (int i = 0; i < shards; i++) {
+			this.shards[i] = new InvertedIndex();
+			this.locks[i] = new SimpleReadWriteLock();
+		}
+		this.locations = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Returns the number of shards
+	 *
+	 * @return the number of shards
+	 */
+	public int shards() {
+		return shards.length;
+	}
+
+	/**
+	 * Returns the lock to use for reads of a shard
+	 *
+	 * @param shard the shard to read
+	 * @return the read lock, or a lock that only counts the reads if the index
+	 *   is frozen
+	 */
+	private SimpleLock readLock(int shard) {
+		return isFrozen() ? readLock() : locks[shard].readLock();
+	}
+
+	/**
+	 * Returns the shard of a word
+	 *
+	 * @param word stemmed word
+	 * @return the shard the word belongs to
+	 */
+	private int shardOf(String word) {
+		return partOf(word, shards.length);
+	}
+
+	/**
+	 * Splits the other index by shard and merges each part into its shard,
+	 * skipping shards the other index has no words for. If any of its locations
+	 * were added before, every shard is updated instead, including the shards
+	 * that did not have that location yet, so they all agree on the number of
+	 * stems of that location. The other index must not be used by the caller
+	 * afterwards.
+	 */
+	@Override
+	public void addAll(InvertedIndex otherInvertedIndex) {
+		if (isFrozen()) {
+			throw new IllegalStateException("Cannot modify a frozen index.");
+		}
+
+		// the number of stems of each location added before, combined with this batch
+		Map<String, Integer> duplicates = new HashMap<>();
+		otherInvertedIndex.getCount().forEach((location, count) -> {
+			if (locations.putIfAbsent(location, count) != null) {
+				duplicates.put(location, locations.merge(location, count, Math::max));
+			}
+		});
+
+		InvertedIndex[] parts = otherInvertedIndex.split(shards.length);
+		for (int i = 0; i < shards.length; i++) {
+			if (!duplicates.isEmpty() || parts[i].size() > 0) {
+				locks[i].writeLock().lock();
+				try {
+					duplicates.forEach(shards[i]::updateCount);
+					shards[i].addAll(parts[i]);
+				}
+				finally {
+					locks[i].writeLock().unlock();
+				}
+			}
+		}
+	}
+
+	@Override
+	public void addAll(List<String> listStems, String inputPath) {
+		InvertedIndex local = newPart();
+		local.addAll(listStems, inputPath);
+		addAll(local);
+	}
+
+	@Override
+	public void add(String word, String location, Integer position) {
+		InvertedIndex local = newPart();
+		local.add(word, location, position);
+		addAll(local);
+	}
+
+	/**
+	 * Removes the location from every shard, since its words may be in any of
+	 * them. Searches may briefly see the location in some shards only.
+	 */
+	@Override
+	public boolean remove(String location) {
+		if (isFrozen()) {
+			throw new IllegalStateException("Cannot modify a frozen index.");
+		}
+		boolean removed = false;
+		for (int i = 0; i < shards.length; i++) {
+			locks[i].writeLock().lock();
+			try {
+				removed |= shards[i].remove(location);
+			}
+			finally {
+				locks[i].writeLock().unlock();
+			}
+		}
+		locations.remove(location);
+		return removed;
+	}
+
+	/**
+	 * Removes the location from every shard and then adds the new stems, so
+	 * searches may briefly miss the location in between
+	 */
+	@Override
+	public void replace(List<String> listStems, String location) {
+		remove(location);
+		addAll(listStems, location);
+	}
+
+	/**
+	 * Prepares the scorer of every shard for the statistics of all of them,
+	 * under the write lock of each shard in turn. Does nothing once frozen,
+	 * since the shards were prepared when frozen.
+	 */
+	@Override
+	public void publish() {
+		if (isFrozen()) {
+			return;
+		}
+		CorpusStats corpus = corpusStats();
+		for (int i = 0; i < shards.length; i++) {
+			locks[i].writeLock().lock();
+			try {
+				shards[i].setCorpusStats(corpus);
+				shards[i].prepareScorer();
+			}
+			finally {
+				locks[i].writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Combines the statistics of every shard. Each word is in a single shard,
+	 * while the documents and their stems are counted once each, from every
+	 * location added.
+	 */
+	@Override
+	public CorpusStats corpusStats() {
+		long stems = 0;
+		for (int count : locations.values()) {
+			stems += count;
+		}
+		CorpusStats corpus = new CorpusStats(0, 0, Map.of());
+		for (int i = 0; i < shards.length; i++) {
+			SimpleLock readLock = readLock(i);
+			readLock.lock();
+			try {
+				corpus = corpus.combine(shards[i].corpusStats(), locations.size(), stems);
+			}
+			finally {
+				readLock.unlock();
+			}
+		}
+		return corpus;
+	}
+
+	/**
+	 * Sets the statistics every shard is prepared for
+	 */
+	@Override
+	public void setCorpusStats(CorpusStats corpus) {
+		for (int i = 0; i < shards.length; i++) {
+			locks[i].writeLock().lock();
+			try {
+				shards[i].setCorpusStats(corpus);
+			}
+			finally {
+				locks[i].writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Prepares every shard for the statistics of all of them before freezing it
+	 */
+	@Override
+	public void freeze() {
+		if (!isFrozen()) {
+			setCorpusStats(corpusStats());
+		}
+		for (int i = 0; i < shards.length; i++) {
+			locks[i].writeLock().lock();
+			try {
+				shards[i].freeze();
+			}
+			finally {
+				locks[i].writeLock().unlock();
+			}
+		}
+		super.freeze();
+	}
+
+	/**
+	 * Sets whether every shard stores positions
+	 */
+	@Override
+	public void setPositions(boolean positional) {
+		super.setPositions(positional);
+		for (int i = 0; i < shards.length; i++) {
+			locks[i].writeLock().lock();
+			try {
+				shards[i].setPositions(positional);
+			}
+			finally {
+				locks[i].writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Stores the positions of every shard outside of the heap once frozen
+	 */
+	@Override
+	public void setOffHeap(boolean offHeap) {
+		super.setOffHeap(offHeap);
+		for (int i = 0; i < shards.length; i++) {
+			locks[i].writeLock().lock();
+			try {
+				shards[i].setOffHeap(offHeap);
+			}
+			finally {
+				locks[i].writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Frees the memory of every shard under its write lock, once the reads of
+	 * the frozen shards have finished
+	 */
+	@Override
+	protected void free() {
+		super.free();
+		for (int i = 0; i < shards.length; i++) {
+			locks[i].writeLock().lock();
+			try {
+				shards[i].close();
+			}
+			finally {
+				locks[i].writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Sets the scorer of every shard, which each shard prepares for the
+	 * statistics of all shards as of the last publish
+	 */
+	@Override
+	public void setScorer(Scorer scorer) {
+		super.setScorer(scorer);
+		for (int i = 0; i < shards.length; i++) {
+			locks[i].writeLock().lock();
+			try {
+				shards[i].setScorer(scorer);
+			}
+			finally {
+				locks[i].writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Combines the shards into one index and saves it, so the file can be
+	 * loaded by any index regardless of the number of shards
+	 */
+	@Override
+	public void save(Path writePath) throws IOException {
+		if (!isFrozen()) {
+			throw new IllegalStateException("Only a frozen index can be saved.");
+		}
+		InvertedIndex combined = newPart();
+		for (InvertedIndex shard : shards) {
+			combined.addAll(shard);
+		}
+		combined.freeze();
+		combined.save(writePath);
+	}
+
+	/**
+	 * Loads the saved index and splits it into the shards, which are frozen
+	 * afterwards and store positions only if the saved index did
+	 */
+	@Override
+	public void load(Path loadPath) throws IOException {
+		if (!locations.isEmpty()) {
+			throw new IllegalStateException("Can only load into an empty index.");
+		}
+		InvertedIndex loaded = new InvertedIndex();
+		loaded.load(loadPath);
+		setPositions(loaded.hasPositions());
+		addAll(loaded);
+		freeze();
+	}
+
+	@Override
+	public List<SearchResult> search(Set<String> query, boolean exactSearch, int k) {
+		return top(combine(matches(query, exactSearch)), k);
+	}
+
+	@Override
+	public List<SearchResult> exactSearch(Set<String> queries) {
+		List<SearchResult> results = new ArrayList<>(combine(matches(queries, true)));
+		Collections.sort(results);
+		return results;
+	}
+
+	@Override
+	public List<SearchResult> partialSearch(Set<String> queries) {
+		List<SearchResult> results = new ArrayList<>(combine(matches(queries, false)));
+		Collections.sort(results);
+		return results;
+	}
+
+	/**
+	 * Finds the matches of every shard. Exact searches only visit the shards of
+	 * the query words, while partial searches visit every shard in parallel
+	 * since any shard may have words starting with a query word. A location may
+	 * be matched by more than one shard.
+	 */
+	@Override
+	protected List<SearchResult> matches(Set<String> queries, boolean exactSearch) {
+		if (exactSearch) {
+			Map<Integer, Set<String>> byShard = queries.stream()
+					.collect(Collectors.groupingBy(this::shardOf, Collectors.toSet()));
+			List<SearchResult> results = new ArrayList<>();
+			for (var entry : byShard.entrySet()) {
+				results.addAll(shardMatches(entry.getKey(), entry.getValue(), true));
+			}
+			return results;
+		}
+		return IntStream.range(0, shards.length).parallel()
+				.mapToObj(i -> shardMatches(i, queries, false))
+				.flatMap(List::stream)
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Finds the matches of the single and required stems like any other query,
+	 * and then the matches of the phrase and NEAR clauses with every shard
+	 * locked, since their stems may be in different shards. The results are
+	 * combined by location. The document ids of the shards differ, so required
+	 * and excluded stems and clauses filter the combined results by location
+	 * instead of intersecting posting lists.
+	 */
+	@Override
+	protected List<SearchResult> matches(Query query, boolean exactSearch) {
+		checkPositions(query);
+		Set<String> words = new TreeSet<>(query.words());
+		words.addAll(query.required());
+		List<SearchResult> results = matches(words, exactSearch);
+		List<Set<String>> requiredClauses = new ArrayList<>();
+		Set<String> excludedClauses = new HashSet<>();
+		lockAll();
+		try {
+			for (Query.Clause clause : query.clauses()) {
+				clauseMatches(clause, results);
+			}
+			for (Query.Clause clause : query.requiredClauses()) {
+				int start = results.size();
+				clauseMatches(clause, results);
+				requiredClauses.add(locationsOf(results.subList(start, results.size())));
+			}
+			for (Query.Clause clause : query.excludedClauses()) {
+				List<SearchResult> excluded = new ArrayList<>();
+				clauseMatches(clause, excluded);
+				excludedClauses.addAll(locationsOf(excluded));
+			}
+		}
+		finally {
+			unlockAll();
+		}
+		
+		Collection<SearchResult> combined = combine(results);
+		for (String word : query.required()) {
+			Set<String> found = matchedLocations(word, exactSearch);
+			combined.removeIf(result -> !found.contains(result.getLocation()));
+		}
+		for (Set<String> found : requiredClauses) {
+			combined.removeIf(result -> !found.contains(result.getLocation()));
+		}
+		for (String word : query.excluded()) {
+			Set<String> found = matchedLocations(word, exactSearch);
+			combined.removeIf(result -> found.contains(result.getLocation()));
+		}
+		combined.removeIf(result -> excludedClauses.contains(result.getLocation()));
+		return new ArrayList<>(combined);
+	}
+
+	/**
+	 * Returns the locations of some results
+	 *
+	 * @param results the results
+	 * @return the set of their locations
+	 */
+	private static Set<String> locationsOf(Collection<SearchResult> results) {
+		return results.stream()
+				.map(SearchResult::getLocation)
+				.collect(Collectors.toSet());
+	}
+
+	/**
+	 * Returns the locations of a stem, or of every word that starts with it
+	 *
+	 * @param word the query stem
+	 * @param exactSearch matches the stem exactly if true and by prefix otherwise
+	 * @return the set of locations
+	 */
+	private Set<String> matchedLocations(String word, boolean exactSearch) {
+		return locationsOf(matches(Set.of(word), exactSearch));
+	}
+
+	/**
+	 * Finds the matches of a phrase or NEAR clause across the shards of its
+	 * stems. The locations of the rarest stem are visited one at a time, and the
+	 * positions of the other stems are looked up by location, so locations
+	 * without every stem are skipped before any positions are read. The shards
+	 * must be locked by the caller.
+	 *
+	 * @param clause the phrase or NEAR clause
+	 * @param results where to add the matches
+	 */
+	private void clauseMatches(Query.Clause clause, List<SearchResult> results) {
+		List<String> words = clause.words();
+		String lead = words.get(0);
+		for (String word : words) {
+			if (shards[shardOf(word)].size(word) < shards[shardOf(lead)].size(lead)) {
+				lead = word;
+			}
+		}
+
+		InvertedIndex leadShard = shards[shardOf(lead)];
+		PositionList[] positions = new PositionList[words.size()];
+		for (String location : leadShard.get(lead)) {
+			boolean all = true;
+			for (int i = 0; i < positions.length && all; i++) {
+				positions[i] = shards[shardOf(words.get(i))].positions(words.get(i), location);
+				all = positions[i] != null;
+			}
+			if (all) {
+				int count = clause.count(positions);
+				if (count > 0) {
+					results.add(leadShard.result(lead, location, count));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the matches of one shard under its read lock
+	 *
+	 * @param shard the shard to search
+	 * @param queries set of query words for each query line
+	 * @param exactSearch matches the stems exactly if true and by prefix otherwise
+	 * @return an unsorted list of SearchResults objects
+	 */
+	private List<SearchResult> shardMatches(int shard, Set<String> queries, boolean exactSearch) {
+		SimpleLock readLock = readLock(shard);
+		readLock.lock();
+		try {
+			return shards[shard].matches(queries, exactSearch);
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Combines the results of the same location from different shards
+	 *
+	 * @param results the results of every shard
+	 * @return one result per location
+	 */
+	private static Collection<SearchResult> combine(List<SearchResult> results) {
+		Map<String, SearchResult> combined = new HashMap<>();
+		for (SearchResult result : results) {
+			combined.merge(result.getLocation(), result, SearchResult::combine);
+		}
+		return combined.values();
+	}
+
+	/**
+	 * Combines the stats of every shard, including the bytes of the document
+	 * table each shard keeps for the documents with words in it. The documents
+	 * are counted once each, from every location added.
+	 */
+	@Override
+	public MemoryStats memoryStats() {
+		MemoryStats stats = super.memoryStats();
+		for (int i = 0; i < shards.length; i++) {
+			SimpleLock readLock = readLock(i);
+			readLock.lock();
+			try {
+				stats = stats.combine(shards[i].memoryStats(), locations.size());
+			}
+			finally {
+				readLock.unlock();
+			}
+		}
+		return stats;
+	}
+
+	@Override
+	public int size() {
+		int size = 0;
+		for (int i = 0; i < shards.length; i++) {
+			SimpleLock readLock = readLock(i);
+			readLock.lock();
+			try {
+				size += shards[i].size();
+			}
+			finally {
+				readLock.unlock();
+			}
+		}
+		return size;
+	}
+
+	@Override
+	public int size(String word) {
+		int shard = shardOf(word);
+		SimpleLock readLock = readLock(shard);
+		readLock.lock();
+		try {
+			return shards[shard].size(word);
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public int size(String word, String location) {
+		int shard = shardOf(word);
+		SimpleLock readLock = readLock(shard);
+		readLock.lock();
+		try {
+			return shards[shard].size(word, location);
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public boolean contains(String word) {
+		int shard = shardOf(word);
+		SimpleLock readLock = readLock(shard);
+		readLock.lock();
+		try {
+			return shards[shard].contains(word);
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public boolean contains(String word, String location) {
+		int shard = shardOf(word);
+		SimpleLock readLock = readLock(shard);
+		readLock.lock();
+		try {
+			return shards[shard].contains(word, location);
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public boolean contains(String word, String location, Integer position) {
+		int shard = shardOf(word);
+		SimpleLock readLock = readLock(shard);
+		readLock.lock();
+		try {
+			return shards[shard].contains(word, location, position);
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public void writeJson(Path writePath) throws IOException {
+		lockAll();
+		try {
+			if (hasPositions()) {
+				SimpleJsonWriter.writeTripleNested(get(), this::locations, writePath);
+			}
+			else {
+				SimpleJsonWriter.writeNestedObject(get(), this::counts, writePath);
+			}
+		}
+		finally {
+			unlockAll();
+		}
+	}
+
+	/**
+	 * Locks every shard for reading, so reads that span all shards see a
+	 * consistent index
+	 */
+	private void lockAll() {
+		for (int i = 0; i < shards.length; i++) {
+			readLock(i).lock();
+		}
+	}
+
+	/**
+	 * Unlocks every shard locked by {@link #lockAll()}
+	 */
+	private void unlockAll() {
+		for (int i = shards.length - 1; i >= 0; i--) {
+			readLock(i).unlock();
+		}
+	}
+
+	/**
+	 * Returns the paths and positions of the stemmed word sorted by path. The
+	 * shards must be locked by the caller.
+	 *
+	 * @param word stemmed word
+	 * @return map of file path to positions of the word
+	 */
+	private Map<String, Set<Integer>> locations(String word) {
+		InvertedIndex shard = shards[shardOf(word)];
+		TreeMap<String, Set<Integer>> locations = new TreeMap<>();
+		for (String location : shard.get(word)) {
+			locations.put(location, shard.get(word, location));
+		}
+		return locations;
+	}
+
+	/**
+	 * Returns the paths of the stemmed word and how many times it appears in
+	 * each, sorted by path. The shards must be locked by the caller.
+	 *
+	 * @param word stemmed word
+	 * @return map of file path to the number of times the word appears
+	 */
+	private Map<String, Integer> counts(String word) {
+		InvertedIndex shard = shards[shardOf(word)];
+		TreeMap<String, Integer> counts = new TreeMap<>();
+		for (String location : shard.get(word)) {
+			counts.put(location, shard.size(word, location));
+		}
+		return counts;
+	}
+
+	@Override
+	public void writeCount(Path writePath) throws IOException {
+		SimpleJsonWriter.writeObject(getCount(), writePath);
+	}
+
+	@Override
+	public Map<String, Integer> getCount() {
+		TreeMap<String, Integer> counts = new TreeMap<>();
+		for (int i = 0; i < shards.length; i++) {
+			SimpleLock readLock = readLock(i);
+			readLock.lock();
+			try {
+				shards[i].getCount().forEach((location, count) -> counts.merge(location, count, Math::max));
+			}
+			finally {
+				readLock.unlock();
+			}
+		}
+		return Collections.unmodifiableMap(counts);
+	}
+
+	@Override
+	public Set<String> get() {
+		TreeSet<String> words = new TreeSet<>();
+		for (int i = 0; i < shards.length; i++) {
+			SimpleLock readLock = readLock(i);
+			readLock.lock();
+			try {
+				words.addAll(shards[i].get());
+			}
+			finally {
+				readLock.unlock();
+			}
+		}
+		return Collections.unmodifiableSet(words);
+	}
+
+	@Override
+	public Set<String> get(String word) {
+		int shard = shardOf(word);
+		SimpleLock readLock = readLock(shard);
+		readLock.lock();
+		try {
+			return shards[shard].get(word);
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public Set<Integer> get(String word, String location) {
+		int shard = shardOf(word);
+		SimpleLock readLock = readLock(shard);
+		readLock.lock();
+		try {
+			return shards[shard].get(word, location);
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public String toString() {
+		lockAll();
+		try {
+			TreeMap<String, Map<String, ?>> ordered = new TreeMap<>();
+			for (String word : get()) {
+				ordered.put(word, hasPositions() ? locations(word) : counts(word));
+			}
+			return ordered.toString();
+		}
+		finally {
+			unlockAll();
+		}
+	}
+}
@@ -13,6 +13,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.function.Function;
 
 /**
  * Outputs several simple data structures in "pretty" JSON format where newlines
@@ -175,9 +176,116 @@ public class SimpleJsonWriter {
 		writer.write("}");
 	}
 	
+	/**
+	 * @param words the sorted stems to write
+	 * @param locations looks up the sorted paths and positions of a stem
+	 * @return a {@link String} containing the elements in pretty JSON format
+	 */
+	public static String writeTripleNested(Iterable<String> words, Function<String, ? extends Map<String, ? extends Collection<Integer>>> locations) {
+		try {
+			StringWriter writer = new StringWriter();
+			writeTripleNested(words, locations, writer, 0);
+			return writer.toString();
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param words the sorted stems to write
+	 * @param locations looks up the sorted paths and positions of a stem
+	 * @param path the file path to use
+	 * @throws IOException if IO error occurs
+	 */
+	public static void writeTripleNested(Iterable<String> words, Function<String, ? extends Map<String, ? extends Collection<Integer>>> locations, Path path) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, UTF_8)) {
+			writeTripleNested(words, locations, writer, 0);
+		}
+	}
+
+	/**
+	 * Writes the stems as a pretty JSON object with triple nested arrays to file.
+	 * The paths and positions of only one stem are looked up at a time, so the
+	 * whole index is never copied into a nested map before writing.
+	 *
+	 * @param words the sorted stems to write
+	 * @param locations looks up the sorted paths and positions of a stem
+	 * @param writer Buffered writer
+	 * @param indent the number of indent
+	 * @throws IOException if IO error occurs
+	 */
+	public static void writeTripleNested(Iterable<String> words, Function<String, ? extends Map<String, ? extends Collection<Integer>>> locations, Writer writer, int indent) throws IOException {
+		var iterator = words.iterator();
+
+		writer.write("{\n");
+		if (iterator.hasNext()) {
+			String firstElem = iterator.next();
+			writeIndent("\"" + firstElem, writer, indent + 1);
+			writer.write("\": ");
+			writeNestedArray(locations.apply(firstElem), writer, indent + 1);
+
+			while (iterator.hasNext()) {
+				String nextElem = iterator.next();
+				writer.write(",\n");
+				writeIndent("\"" + nextElem, writer, indent + 1);
+				writer.write("\": ");
+				writeNestedArray(locations.apply(nextElem), writer, indent + 1);
+			}
+			writer.write("\n");
+		}
+		writeIndent(writer, indent);
+		writer.write("}");
+	}
+
+	/**
+	 * @param words the sorted stems to write
+	 * @param counts looks up the sorted paths of a stem and its count in each
+	 * @param path the file path to use
+	 * @throws IOException if IO error occurs
+	 */
+	public static void writeNestedObject(Iterable<String> words, Function<String, ? extends Map<String, Integer>> counts, Path path) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, UTF_8)) {
+			writeNestedObject(words, counts, writer, 0);
+		}
+	}
+
+	/**
+	 * Writes the stems as a pretty JSON object with a nested object of counts by
+	 * path for each stem. The counts of only one stem are looked up at a time.
+	 *
+	 * @param words the sorted stems to write
+	 * @param counts looks up the sorted paths of a stem and its count in each
+	 * @param writer Buffered writer
+	 * @param indent the number of indent
+	 * @throws IOException if IO error occurs
+	 */
+	public static void writeNestedObject(Iterable<String> words, Function<String, ? extends Map<String, Integer>> counts, Writer writer, int indent) throws IOException {
+		var iterator = words.iterator();
+
+		writer.write("{\n");
+		if (iterator.hasNext()) {
+			String firstElem = iterator.next();
+			writeIndent("\"" + firstElem, writer, indent + 1);
+			writer.write("\": ");
+			writeObject(counts.apply(firstElem), writer, indent + 1);
+
+			while (iterator.hasNext()) {
+				String nextElem = iterator.next();
+				writer.write(",\n");
+				writeIndent("\"" + nextElem, writer, indent + 1);
+				writer.write("\": ");
+				writeObject(counts.apply(nextElem), writer, indent + 1);
+			}
+			writer.write("\n");
+		}
+		writeIndent(writer, indent);
+		writer.write("}");
+	}
+
 	/**
 	 * Writes the elements of search results as a pretty JSON object to file.
-	 * 
+	 *
 	 * @param results search results map that stores all query lines and its matched results
 	 * @return a {@link String} containing the elements in pretty JSON format
 	 */
@@ -397,7 +505,8 @@ public class SimpleJsonWriter {
 
 	/**
 	 * Indents and then writes the text element surrounded by {@code " "}
-	 * quotation marks.
+	 * quotation marks. Quotation marks and backslashes in the element are
+	 * escaped, such as those of a phrase query.
 	 *
 	 * @param element the element to write
 	 * @param writer the writer to use
@@ -407,7 +516,7 @@ public class SimpleJsonWriter {
 	public static void writeQuote(String element, Writer writer, int indent) throws IOException {
 		writeIndent(writer, indent);
 		writer.write('"');
-		writer.write(element);
+		writer.write(element.replace("\\", "\\\\").replace("\"", "\\\""));
 		writer.write('"');
 	}
 }
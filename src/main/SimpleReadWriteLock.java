@@ -1,10 +1,12 @@
 package edu.usfca.cs272;
 
+import java.lang.invoke.VarHandle;
 import java.util.ConcurrentModificationException;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
@@ -16,6 +18,13 @@ import org.apache.logging.log4j.Logger;
  * threads, so long as there are no writers. The write lock is exclusive. The
  * active writer is able to acquire read or write locks as long as it is active.
  *
+ * Short reads may also be done optimistically without acquiring any lock, by
+ * getting a stamp with {@link #tryOptimisticRead()} before reading and checking
+ * it with {@link #validate(long)} afterwards. The stamp is only valid if no
+ * writer was active in between, similar to {@link StampedLock}. Optimistic
+ * reads do not modify any shared state, so they do not contend with each
+ * other.
+ *
  * <!-- simplified lock used for this class -->
  *
  * @see SimpleLock
@@ -25,6 +34,7 @@ import org.apache.logging.log4j.Logger;
  * @see ReentrantLock
  * @see ReadWriteLock
  * @see ReentrantReadWriteLock
+ * @see StampedLock
  *
  * @author CS 272 Software Development (University of San Francisco)
  * @version Spring 2022
@@ -45,6 +55,13 @@ public class SimpleReadWriteLock {
 	/** The thread that holds the write lock. */
 	private Thread activeWriter;
 
+	/**
+	 * Incremented whenever the write lock is first acquired and finally
+	 * released, so it is odd exactly while there is an active writer. Only
+	 * changed while synchronized on the lock object.
+	 */
+	private volatile long version;
+
 	/** The log4j2 logger. */
 	private static final Logger log = LogManager.getLogger();
 
@@ -70,6 +87,7 @@ public class SimpleReadWriteLock {
 		writers = 0;
 
 		activeWriter = null;
+		version = 0;
 	}
 
 	/**
@@ -129,6 +147,36 @@ public class SimpleReadWriteLock {
 		}
 	}
 
+	/**
+	 * Returns a stamp for an optimistic read, or zero if there is an active
+	 * writer. The read must not trust anything it read until the stamp is
+	 * validated, and must tolerate seeing the data in an inconsistent state in
+	 * the meantime. The active writer always gets zero, so it falls back to the
+	 * read lock it may already acquire.
+	 *
+	 * @return a nonzero stamp, or zero if optimistic reads are not possible
+	 *
+	 * @see #validate(long)
+	 */
+	public long tryOptimisticRead() {
+		long current = version;
+		return (current & 1) == 0 ? current + 2 : 0;
+	}
+
+	/**
+	 * Checks that no writer has been active since the stamp was returned by
+	 * {@link #tryOptimisticRead()}, in which case everything read after getting
+	 * the stamp was consistent.
+	 *
+	 * @param stamp the stamp of the optimistic read
+	 * @return true if the stamp is nonzero and no writer has been active since
+	 */
+	public boolean validate(long stamp) {
+		// keeps the reads of the data from moving after the version check
+		VarHandle.acquireFence();
+		return stamp != 0 && version + 2 == stamp;
+	}
+
 	/**
 	 * Used to maintain simultaneous read operations.
 	 */
@@ -143,13 +191,17 @@ public class SimpleReadWriteLock {
 		public void lock() {
 			try {
 				synchronized (lock) {
-					log.debug("Requesting read (readers: {}, writers: {})", readers, writers);
+					if (log.isDebugEnabled()) {
+						log.debug("Requesting read (readers: {}, writers: {})", readers, writers);
+					}
 					while (writers > 0 && activeWriter != Thread.currentThread()) {
 						log.debug("Waiting for read...");
 						lock.wait();
 					}
 					readers++;
-					log.debug("Acquired read (readers: {}, writers: {})", readers, writers);
+					if (log.isDebugEnabled()) {
+						log.debug("Acquired read (readers: {}, writers: {})", readers, writers);
+					}
 				}
 			}
 			catch (InterruptedException ex) {
@@ -193,14 +245,23 @@ public class SimpleReadWriteLock {
 		public void lock() {
 			try {
 				synchronized (lock) {
-					log.debug("Requesting read (readers: {}, writers: {})", readers, writers);
+					if (log.isDebugEnabled()) {
+						log.debug("Requesting write (readers: {}, writers: {})", readers, writers);
+					}
 					while ((readers > 0 || writers > 0) && activeWriter != Thread.currentThread()) {
 						log.debug("Waiting for write...");
 						lock.wait();
 					}
+					if (writers == 0) {
+						version++;
+						// optimistic readers must see the odd version before any write
+						VarHandle.storeStoreFence();
+					}
 					writers++;
 					activeWriter = Thread.currentThread();
-					log.debug("Acquired read (readers: {}, writers: {})", readers, writers);
+					if (log.isDebugEnabled()) {
+						log.debug("Acquired write (readers: {}, writers: {})", readers, writers);
+					}
 				}
 			}
 			catch (InterruptedException ex) {
@@ -229,6 +290,7 @@ public class SimpleReadWriteLock {
 				}
 				if (writers == 0) {
 					activeWriter = null;
+					version++;
 					lock.notifyAll();
 				}
 			}
@@ -0,0 +1,252 @@
+package edu.usfca.cs272;
+
+import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import opennlp.tools.stemmer.Stemmer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer;
+
+/**
+ * Remembers the stems of words already stemmed, since text repeats a small
+ * vocabulary over and over and stemming the same word again is wasted work.
+ * Each thread first looks in a small front cache of its own, which needs no
+ * locking, then in a back cache shared by every thread, which is split into
+ * stripes with a lock each so threads rarely wait on each other. Only words
+ * found in neither are stemmed, by a stemmer of the thread's own.
+ *
+ * Both caches are bounded. A word in a front cache is replaced by the next
+ * word that falls in the same slot, and each stripe of the back cache drops
+ * the word used least recently once it is full.
+ *
+ * The stem of a word never changes, so one cache can be shared by every index
+ * and query, and the stems are the same as without the cache.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class StemCache {
+	/** The default number of words kept in the back cache. */
+	public static final int CAPACITY = 1 << 16;
+
+	/** The number of slots of each front cache, a power of two. */
+	private static final int FRONT = 1 << 10;
+
+	/** The number of stripes of the back cache, a power of two. */
+	private static final int STRIPES = 16;
+
+	/** The cache shared by the builders, the crawler and the queries. */
+	private static final StemCache SHARED = new StemCache(CAPACITY);
+
+	/** The stripes of the back cache, picked by the hash of the word. */
+	private final Stripe[] stripes;
+
+	/** The front cache and stemmer of each thread. */
+	private final ThreadLocal<Front> fronts;
+
+	/** The number of words found in a front cache. */
+	private final LongAdder frontHits;
+
+	/** The number of words found in the back cache. */
+	private final LongAdder backHits;
+
+	/** The number of words that had to be stemmed. */
+	private final LongAdder misses;
+
+	/**
+	 * Initializes an empty cache
+	 *
+	 * @param capacity the number of words kept in the back cache, spread evenly
+	 *   over its stripes
+	 */
+	public StemCache(int capacity) {
+		if (capacity < STRIPES) {
+			throw new IllegalArgumentException("The cache must hold at least " + STRIPES + " words.");
+		}
+		this.stripes = new Stripe[STRIPES];
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new Stripe(capacity / STRIPES);
+		}
+		this.fronts = ThreadLocal.withInitial(Front::new);
+		this.frontHits = new LongAdder();
+		this.backHits = new LongAdder();
+		this.misses = new LongAdder();
+	}
+
+	/**
+	 * Returns the cache shared by the builders, the crawler and the queries
+	 *
+	 * @return the shared cache
+	 */
+	public static StemCache shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Returns an English stemmer that goes through this cache. The stemmer
+	 * belongs to the calling thread and must not be handed to other threads.
+	 *
+	 * @return the cached stemmer of the calling thread
+	 */
+	public Stemmer stemmer() {
+		return fronts.get();
+	}
+
+	/**
+	 * Returns the number of words looked up
+	 *
+	 * @return the number of lookups
+	 */
+	public long getLookups() {
+		return frontHits.sum() + backHits.sum() + misses.sum();
+	}
+
+	/**
+	 * Returns the number of words found in the front cache of their thread
+	 *
+	 * @return the number of front cache hits
+	 */
+	public long getFrontHits() {
+		return frontHits.sum();
+	}
+
+	/**
+	 * Returns the number of words found in the back cache after missing the
+	 * front cache
+	 *
+	 * @return the number of back cache hits
+	 */
+	public long getBackHits() {
+		return backHits.sum();
+	}
+
+	/**
+	 * Returns the number of words that were in neither cache and had to be
+	 * stemmed
+	 *
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the fraction of words found in either cache
+	 *
+	 * @return the hit rate from 0 to 1, or 0 if no words were looked up
+	 */
+	public double getHitRate() {
+		long lookups = getLookups();
+		return lookups == 0 ? 0 : 1 - (double) getMisses() / lookups;
+	}
+
+	@Override
+	public String toString() {
+		long lookups = Math.max(getLookups(), 1);
+		StringBuilder builder = new StringBuilder();
+		builder.append(String.format("%-12s %,15d%n", "stems:", getLookups()));
+		builder.append(String.format("%-12s %,15d %5.1f%%%n", "front hits:", getFrontHits(), 100.0 * getFrontHits() / lookups));
+		builder.append(String.format("%-12s %,15d %5.1f%%%n", "back hits:", getBackHits(), 100.0 * getBackHits() / lookups));
+		builder.append(String.format("%-12s %,15d %5.1f%%", "misses:", getMisses(), 100.0 * getMisses() / lookups));
+		return builder.toString();
+	}
+
+	/**
+	 * The front cache of one thread, a direct-mapped table where each word has
+	 * exactly one slot, along with the stemmer of the thread
+	 */
+	private class Front implements Stemmer {
+		/** The word cached in each slot, or null if there is none. */
+		private final String[] words;
+
+		/** The stem of the word in each slot. */
+		private final String[] stems;
+
+		/** The stemmer of this thread, since stemmers are not thread-safe. */
+		private final Stemmer stemmer;
+
+		/**
+		 * Initializes an empty front cache
+		 */
+		private Front() {
+			this.words = new String[FRONT];
+			this.stems = new String[FRONT];
+			this.stemmer = new SnowballStemmer(ENGLISH);
+		}
+
+		@Override
+		public CharSequence stem(CharSequence word) {
+			String key = word.toString();
+			int hash = key.hashCode();
+			hash ^= hash >>> 16;
+			int slot = hash & (FRONT - 1);
+			if (key.equals(words[slot])) {
+				frontHits.increment();
+				return stems[slot];
+			}
+
+			// the slot bits are the same for every word in a slot, so use other bits
+			Stripe stripe = stripes[(hash >>> 10) & (STRIPES - 1)];
+			String stem = stripe.get(key);
+			if (stem != null) {
+				backHits.increment();
+			}
+			else {
+				stem = stemmer.stem(key).toString();
+				misses.increment();
+				stripe.put(key, stem);
+			}
+			words[slot] = key;
+			stems[slot] = stem;
+			return stem;
+		}
+	}
+
+	/**
+	 * One stripe of the back cache, which drops the word used least recently
+	 * once full
+	 */
+	private static class Stripe {
+		/** The stems of the words, in order of use. */
+		private final LinkedHashMap<String, String> stems;
+
+		/**
+		 * Initializes an empty stripe
+		 *
+		 * @param capacity the number of words kept
+		 */
+		private Stripe(int capacity) {
+			this.stems = new LinkedHashMap<>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+					return size() > capacity;
+				}
+			};
+		}
+
+		/**
+		 * Returns the stem of a word and marks it as used
+		 *
+		 * @param word the word
+		 * @return the stem, or null if the word is not cached
+		 */
+		private synchronized String get(String word) {
+			return stems.get(word);
+		}
+
+		/**
+		 * Caches the stem of a word, dropping the word used least recently if the
+		 * stripe is full
+		 *
+		 * @param word the word
+		 * @param stem the stem of the word
+		 */
+		private synchronized void put(String word, String stem) {
+			stems.put(word, stem);
+		}
+	}
+}
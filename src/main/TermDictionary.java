@@ -0,0 +1,316 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Assigns every stemmed word a dense integer id so the inverted index can keep
+ * its postings in arrays instead of string keyed maps. Exact lookups are a
+ * single hash probe, and a compressed trie over the words is only used for
+ * prefix lookups and ordered output. Once frozen, the ids are reassigned in
+ * sorted word order so the words themselves become the sorted view, and the
+ * words under a prefix are a single range of ids. Removed ids are left empty
+ * until then.
+ *
+ * Warning: This class is not thread-safe. If multiple threads access this class
+ * concurrently, access must be synchronized externally.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class TermDictionary {
+	/**
+	 * Maps each word to its id
+	 */
+	private final HashMap<String, Integer> ids;
+
+	/**
+	 * Words stored by id
+	 */
+	private final ArrayList<String> words;
+
+	/**
+	 * Trie of the words used for prefix lookups and ordered output, or null once
+	 * frozen
+	 */
+	private PrefixTrie sorted;
+
+	/**
+	 * Initializes an empty dictionary
+	 */
+	public TermDictionary() {
+		this.ids = new HashMap<>();
+		this.words = new ArrayList<>();
+		this.sorted = new PrefixTrie();
+	}
+
+	/**
+	 * Returns the id of the word, assigning the next available id if the word
+	 * has not been seen before
+	 *
+	 * @param word stemmed word
+	 * @return the id of the word
+	 */
+	public int add(String word) {
+		Integer id = ids.get(word);
+		if (id == null) {
+			if (isFrozen()) {
+				throw new IllegalStateException("Cannot add words to a frozen dictionary.");
+			}
+			id = words.size();
+			ids.put(word, id);
+			words.add(word);
+			sorted.put(word, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Removes the word with the given id. The id is left empty, so adding the
+	 * word again assigns it a new id.
+	 *
+	 * @param id the id of the word
+	 */
+	public void remove(int id) {
+		if (isFrozen()) {
+			throw new IllegalStateException("Cannot remove words from a frozen dictionary.");
+		}
+		String word = words.set(id, null);
+		ids.remove(word);
+		sorted.remove(word);
+	}
+
+	/**
+	 * Returns the id of the word
+	 *
+	 * @param word stemmed word
+	 * @return the id of the word, or -1 if the word is not in the dictionary
+	 */
+	public int id(String word) {
+		Integer id = ids.get(word);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns the word with the given id
+	 *
+	 * @param id the id of the word
+	 * @return the stemmed word, or null if the word was removed
+	 */
+	public String word(int id) {
+		return words.get(id);
+	}
+
+	/**
+	 * Returns the ids of every word that starts with the prefix, in sorted word
+	 * order
+	 *
+	 * @param prefix the prefix to look for
+	 * @return the matching ids
+	 */
+	public int[] prefix(String prefix) {
+		if (isFrozen()) {
+			int start = Collections.binarySearch(words, prefix);
+			start = start < 0 ? -start - 1 : start;
+			return IntStream.range(start, end(prefix, start)).toArray();
+		}
+		IntStream.Builder matches = IntStream.builder();
+		sorted.forEach(prefix, matches);
+		return matches.build().toArray();
+	}
+
+	/**
+	 * Finds the end of the range of words that start with the prefix in a frozen
+	 * dictionary, where those words are next to each other
+	 *
+	 * @param prefix the prefix to look for
+	 * @param start the first id that could start with the prefix
+	 * @return one past the last id that starts with the prefix
+	 */
+	private int end(String prefix, int start) {
+		int low = start;
+		int high = words.size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (words.get(middle).startsWith(prefix)) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the number of words in the dictionary
+	 *
+	 * @return the number of words
+	 */
+	public int size() {
+		return ids.size();
+	}
+
+	/**
+	 * Returns one more than the largest id assigned so far, including the ids of
+	 * removed words
+	 *
+	 * @return the upper bound of the ids
+	 */
+	public int limit() {
+		return words.size();
+	}
+
+	/**
+	 * Estimates the bytes taken by the dictionary, including the words and the
+	 * trie used until frozen
+	 *
+	 * @return the estimated number of bytes
+	 * @see MemoryStats
+	 */
+	public long bytes() {
+		long bytes = MemoryStats.object(3 * 4) + MemoryStats.map(ids.size()) + MemoryStats.list(words.size());
+		for (String word : words) {
+			if (word != null) {
+				bytes += MemoryStats.string(word);
+			}
+		}
+		return sorted != null ? bytes + sorted.bytes() : bytes;
+	}
+
+	/**
+	 * Returns the words in sorted order
+	 *
+	 * @return an unmodifiable sorted set of words
+	 */
+	public Set<String> words() {
+		if (isFrozen()) {
+			return new SortedWords(null);
+		}
+		IntStream.Builder order = IntStream.builder();
+		sorted.forEach("", order);
+		return new SortedWords(order.build().toArray());
+	}
+
+	/**
+	 * Reassigns the ids in sorted word order and drops the sorted view. No words
+	 * may be added or removed afterwards.
+	 *
+	 * @return the new id of each word indexed by its old id, with -1 for removed
+	 *   words
+	 */
+	public int[] freeze() {
+		int[] remap = new int[words.size()];
+		Arrays.fill(remap, -1);
+		String[] reordered = new String[ids.size()];
+		int[] next = { 0 };
+		sorted.forEach("", id -> {
+			remap[id] = next[0];
+			reordered[next[0]] = words.get(id);
+			ids.put(words.get(id), next[0]);
+			next[0]++;
+		});
+		words.clear();
+		words.addAll(Arrays.asList(reordered));
+		words.trimToSize();
+		sorted = null;
+		return remap;
+	}
+
+	/**
+	 * Writes the words of a frozen dictionary in id order
+	 *
+	 * @param output the binary index file to write to
+	 * @throws IOException if unable to write
+	 */
+	public void write(BinaryIndexWriter output) throws IOException {
+		output.writeInt(words.size());
+		for (String word : words) {
+			output.writeString(word);
+		}
+	}
+
+	/**
+	 * Reads the words of a frozen dictionary into this empty dictionary, which is
+	 * frozen afterwards
+	 *
+	 * @param input the binary index file to read from
+	 * @throws IOException if unable to read
+	 */
+	public void read(MappedIndexReader input) throws IOException {
+		int size = input.readInt();
+		words.ensureCapacity(size);
+		for (int id = 0; id < size; id++) {
+			String word = input.readString();
+			ids.put(word, id);
+			words.add(word);
+		}
+		sorted = null;
+	}
+
+	/**
+	 * Removes every word and unfreezes the dictionary, leaving it empty as if it
+	 * had just been created
+	 */
+	public void clear() {
+		ids.clear();
+		words.clear();
+		sorted = new PrefixTrie();
+	}
+
+	/**
+	 * Checks if the dictionary has been frozen
+	 *
+	 * @return true if the ids are in sorted word order
+	 */
+	public boolean isFrozen() {
+		return sorted == null;
+	}
+
+	@Override
+	public String toString() {
+		return words().toString();
+	}
+
+	/**
+	 * Unmodifiable set view of the words in sorted order
+	 */
+	private class SortedWords extends AbstractSet<String> {
+		/** The ids in sorted word order, or null if the ids already are. */
+		private final int[] order;
+
+		/**
+		 * Initializes the view
+		 *
+		 * @param order the ids in sorted word order, or null if the ids already are
+		 */
+		public SortedWords(int[] order) {
+			this.order = order;
+		}
+
+		@Override
+		public Iterator<String> iterator() {
+			if (order == null) {
+				return Collections.unmodifiableList(words).iterator();
+			}
+			return Arrays.stream(order).mapToObj(words::get).iterator();
+		}
+
+		@Override
+		public boolean contains(Object word) {
+			return ids.containsKey(word);
+		}
+
+		@Override
+		public int size() {
+			return order == null ? words.size() : order.length;
+		}
+	}
+}
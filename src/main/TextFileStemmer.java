@@ -1,7 +1,6 @@
 package edu.usfca.cs272;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
-import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -20,7 +19,8 @@ import opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM;
 
 /**
  * Utility class for parsing and stemming text and text files into collections
- * of stemmed words.
+ * of stemmed words. The methods that use the default stemmer look up stems in
+ * the shared {@link StemCache} first.
  *
  * @see TextParser
  *
@@ -69,7 +69,7 @@ public class TextFileStemmer {
 	 * @see #listStems(String, Stemmer)
 	 */
 	public static List<String> listStems(String line) {
-		return listStems(line, new SnowballStemmer(ENGLISH));
+		return listStems(line, StemCache.shared().stemmer());
 	}
 
 	/**
@@ -86,7 +86,7 @@ public class TextFileStemmer {
 	 * @see #listStems(String, Stemmer)
 	 */
 	public static List<String> listStems(Path input) throws IOException {
-		Stemmer stemmer = new SnowballStemmer(ENGLISH);
+		Stemmer stemmer = StemCache.shared().stemmer();
 		List<String> cleaned = new ArrayList<>();
 		try (BufferedReader reader = Files.newBufferedReader(input, UTF_8)) {
 			String line = null;
@@ -125,7 +125,7 @@ public class TextFileStemmer {
 	 * @see #uniqueStems(String, Stemmer)
 	 */
 	public static Set<String> uniqueStems(String line) {
-		return uniqueStems(line, new SnowballStemmer(ENGLISH));
+		return uniqueStems(line, StemCache.shared().stemmer());
 	}
 
 	/**
@@ -142,7 +142,7 @@ public class TextFileStemmer {
 	 * @see #uniqueStems(String, Stemmer)
 	 */
 	public static Set<String> uniqueStems(Path input) throws IOException {
-		Stemmer stemmer = new SnowballStemmer(ENGLISH);
+		Stemmer stemmer = StemCache.shared().stemmer();
 		Set<String> cleaned = new TreeSet<>();
 		try (BufferedReader reader = Files.newBufferedReader(input, UTF_8)) {
 			String line = null;
@@ -169,7 +169,7 @@ public class TextFileStemmer {
 	 * @see #uniqueStems(String, Stemmer)
 	 */
 	public static List<Set<String>> listUniqueStems(Path input) throws IOException {
-		Stemmer stemmer = new SnowballStemmer(ENGLISH);
+		Stemmer stemmer = StemCache.shared().stemmer();
 		List<Set<String>> cleaned = new ArrayList <Set<String>>();
 		try (BufferedReader reader = Files.newBufferedReader(input, UTF_8)) {
 			String line = null;
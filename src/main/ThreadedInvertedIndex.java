@@ -2,30 +2,473 @@ package edu.usfca.cs272;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * A thread-safe version of Inverted Index using a read/write lock.
  * 
+ * The index can also publish read-only snapshots while it is being built.
+ * After every few batches added with addAll, the changes since the last
+ * snapshot are added to it as new frozen parts, outside of the write lock, and
+ * the new list of parts is swapped in through an atomic reference. Searches
+ * then run against the latest snapshot without locking, so they never wait
+ * behind the writers, at the cost of missing the batches added since it was
+ * published. The scorer of every part is prepared for the statistics of the
+ * whole snapshot, so the parts score their matches the same as one index.
+ * 
  * @author Amanda Wang CS 272 Software Development (University of San Francisco)
  * @version Spring 2022
  */
 public class ThreadedInvertedIndex extends InvertedIndex {
 
 	/** The lock used to protect concurrent access to the underlying inverted index. */
-	private final SimpleReadWriteLock lock;
+	protected final SimpleReadWriteLock lock;
+	
+	/** Lock that only counts the reads, used once the index is frozen and can no longer change. */
+	private final SimpleLock frozenLock;
+	
+	/** Number of reads of the frozen index running without the read lock. */
+	private final AtomicInteger frozenReads;
+	
+	/** Whether the index has been closed, set while holding the write lock. */
+	private volatile boolean closed;
+	
+	/** Number of batches added between published snapshots, or 0 if no snapshots are published. */
+	private final int publishInterval;
+	
+	/** Number of batches added since the last published snapshot, protected by the write lock. */
+	private int batches;
+	
+	/** The changes since the last published snapshot, made again on a copy of it, protected by the write lock. */
+	private List<Consumer<InvertedIndex>> changes;
+	
+	/** The frozen batches added since the last published snapshot, protected by the write lock. */
+	private List<InvertedIndex> added;
+	
+	/** Whether any change since the last published snapshot was not a batch added, protected by the write lock. */
+	private boolean rewritten;
+	
+	/** Lock held while building a snapshot, so snapshots are built one at a time in order. */
+	private final Object publishing;
+	
+	/** Every location in the latest published snapshot, protected by the publishing lock. */
+	private final Set<String> published;
+	
+	/** The parts of the latest published snapshot searched without locking, or null if there is none. */
+	private final AtomicReference<List<Part>> snapshot;
 	
 	/**
 	 * Initializes ReadWriteLock
 	 */
 	public ThreadedInvertedIndex() {
+		this(0);
+	}
+	
+	/**
+	 * Initializes ReadWriteLock and publishes a snapshot for searching after
+	 * every given number of batches added with addAll
+	 * 
+	 * @param publishInterval the number of batches between snapshots, or 0 to
+	 *   never publish snapshots and search under the read lock instead
+	 */
+	public ThreadedInvertedIndex(int publishInterval) {
+		if (publishInterval < 0) {
+			throw new IllegalArgumentException("The publish interval cannot be negative.");
+		}
 		this.lock = new SimpleReadWriteLock();
+		this.frozenLock = new FrozenLock();
+		this.frozenReads = new AtomicInteger();
+		this.closed = false;
+		this.publishInterval = publishInterval;
+		this.batches = 0;
+		this.changes = new ArrayList<>();
+		this.added = new ArrayList<>();
+		this.rewritten = false;
+		this.publishing = new Object();
+		this.published = new HashSet<>();
+		this.snapshot = new AtomicReference<>();
+	}
+	
+	/**
+	 * Publishes a snapshot of everything added so far, so searches see it
+	 * without waiting for the next publish interval. If the index does not
+	 * publish snapshots, the scorer is prepared for the current statistics under
+	 * the read lock instead, so the searches after a batch do not each have to
+	 * prepare it.
+	 * 
+	 * The writers are only blocked while the changes since the last snapshot are
+	 * taken. If they only added batches of new locations, the batches become a
+	 * new part of the snapshot, and the newest parts are merged whenever a part
+	 * has at least as many stems as the one before it. So there are only a few
+	 * parts, and each stem is copied a few times at most. Any other change is
+	 * made again on a copy of the snapshot, which becomes its only part. The
+	 * parts are then prepared for the statistics of the new snapshot, so a
+	 * search still running on the previous snapshot may score some of its parts
+	 * with the new statistics.
+	 */
+	public void publish() {
+		if (publishInterval == 0) {
+			if (!isFrozen()) {
+				SimpleLock readLock = lock.readLock();
+				readLock.lock();
+				try {
+					prepareScorer();
+				}
+				finally {
+					readLock.unlock();
+				}
+			}
+			return;
+		}
+		
+		synchronized (publishing) {
+			List<Consumer<InvertedIndex>> replays;
+			List<InvertedIndex> batchesAdded;
+			boolean rebuild;
+			lock.writeLock().lock();
+			try {
+				if (isFrozen()) {
+					return;
+				}
+				replays = changes;
+				batchesAdded = added;
+				rebuild = rewritten;
+				changes = new ArrayList<>();
+				added = new ArrayList<>();
+				rewritten = false;
+				batches = 0;
+			}
+			finally {
+				lock.writeLock().unlock();
+			}
+			
+			List<Part> current = snapshot.get();
+			if (current != null && replays.isEmpty() && !rebuild) {
+				return;
+			}
+			List<Part> parts = current == null ? new ArrayList<>() : new ArrayList<>(current);
+			for (InvertedIndex batch : batchesAdded) {
+				for (String location : batch.getCount().keySet()) {
+					// a location added again has to be combined with its earlier part
+					rebuild |= !published.add(location);
+				}
+			}
+			
+			if (rebuild) {
+				InvertedIndex copy = newPart();
+				for (Part part : parts) {
+					copy.addAll(part.index);
+				}
+				for (Consumer<InvertedIndex> replay : replays) {
+					replay.accept(copy);
+				}
+				copy.freeze();
+				published.clear();
+				published.addAll(copy.getCount().keySet());
+				parts.clear();
+				parts.add(new Part(copy));
+			}
+			else if (!batchesAdded.isEmpty()) {
+				parts.add(new Part(merge(batchesAdded)));
+				while (parts.size() > 1 && parts.get(parts.size() - 1).weight >= parts.get(parts.size() - 2).weight) {
+					Part newest = parts.remove(parts.size() - 1);
+					Part previous = parts.remove(parts.size() - 1);
+					parts.add(new Part(merge(List.of(previous.index, newest.index))));
+				}
+			}
+			
+			lock.writeLock().lock();
+			try {
+				if (!isFrozen()) {
+					CorpusStats corpus = corpusStats(parts);
+					for (Part part : parts) {
+						if (part.index.getScorer() != getScorer()) {
+							part.index.setScorer(getScorer());
+						}
+						part.index.setCorpusStats(corpus);
+					}
+					snapshot.set(List.copyOf(parts));
+				}
+			}
+			finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+	
+	/**
+	 * Combines the statistics of the parts of a snapshot, which each have
+	 * different locations
+	 * 
+	 * @param parts the parts of the snapshot
+	 * @return the statistics of the whole snapshot, or null if it has only one
+	 *   part, which then uses its own
+	 */
+	private static CorpusStats corpusStats(List<Part> parts) {
+		if (parts.size() < 2) {
+			return null;
+		}
+		CorpusStats corpus = parts.get(0).index.corpusStats();
+		for (int i = 1; i < parts.size(); i++) {
+			corpus = corpus.combine(parts.get(i).index.corpusStats());
+		}
+		return corpus;
+	}
+	
+	/**
+	 * Merges frozen indexes with different locations into one new frozen index
+	 * 
+	 * @param indexes the frozen indexes
+	 * @return the merged index, or the only index if there is just one
+	 */
+	private InvertedIndex merge(List<InvertedIndex> indexes) {
+		if (indexes.size() == 1) {
+			return indexes.get(0);
+		}
+		InvertedIndex merged = newPart();
+		for (InvertedIndex index : indexes) {
+			merged.addAll(index);
+		}
+		merged.freeze();
+		return merged;
+	}
+	
+	/**
+	 * Records a change for the next snapshot if the index publishes snapshots.
+	 * Must be called while holding the write lock.
+	 * 
+	 * @param batch the frozen batch of documents added, or null if the change is
+	 *   anything else
+	 * @param replay makes the same change to a copy of the snapshot
+	 */
+	private void changed(InvertedIndex batch, Consumer<InvertedIndex> replay) {
+		if (publishInterval > 0) {
+			changes.add(replay);
+			if (batch != null) {
+				added.add(batch);
+			}
+			else {
+				rewritten = true;
+			}
+		}
+	}
+	
+	/**
+	 * Counts an added batch. Must be called while holding the write lock.
+	 * 
+	 * @return true if the publish interval is reached, so a snapshot should be
+	 *   published once the write lock is released
+	 */
+	private boolean batchAdded() {
+		return publishInterval > 0 && ++batches >= publishInterval;
+	}
+	
+	/**
+	 * Copies a batch into a new frozen index for the next snapshot. The copy
+	 * packs its own positions when frozen, so it shares nothing with the batch.
+	 * 
+	 * @param batch the batch to copy
+	 * @return the frozen copy
+	 */
+	private InvertedIndex frozenCopy(InvertedIndex batch) {
+		InvertedIndex copy = newPart();
+		copy.addAll(batch);
+		copy.freeze();
+		return copy;
+	}
+
+	/**
+	 * Returns the lock to use for reads. A frozen index is immutable, so reads do
+	 * not need to lock at all, and are only counted so {@link #close()} can wait
+	 * for them.
+	 * 
+	 * @return the read lock, or a lock that only counts the reads if the index
+	 *   is frozen
+	 */
+	protected SimpleLock readLock() {
+		return isFrozen() ? frozenLock : lock.readLock();
+	}
+	
+	/**
+	 * Runs a short read optimistically without locking, and runs it again under
+	 * the read lock if a writer was active at any point during the read. An
+	 * optimistic read may see the index while it is being modified, so any
+	 * exception it throws is treated as a failed read as well.
+	 * 
+	 * @param <T> the type of the result
+	 * @param read the read to run, which must not modify anything
+	 * @return the result of the read
+	 */
+	protected <T> T optimisticRead(Supplier<T> read) {
+		if (isFrozen()) {
+			frozenLock.lock();
+			try {
+				return read.get();
+			}
+			finally {
+				frozenLock.unlock();
+			}
+		}
+		
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0) {
+			try {
+				T result = read.get();
+				if (lock.validate(stamp)) {
+					return result;
+				}
+			}
+			catch (RuntimeException e) {
+				// the index changed during the read, so try again under the lock
+			}
+		}
+		
+		SimpleLock readLock = lock.readLock();
+		readLock.lock();
+		try {
+			return read.get();
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+	
+	@Override
+	public void freeze() {
+		lock.writeLock().lock();
+		try {
+			super.freeze();
+			// the index itself is now read without locking
+			snapshot.set(null);
+			changes = new ArrayList<>();
+			added = new ArrayList<>();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Frees the memory under the write lock. Reads of a frozen index do not take
+	 * the read lock, so this first waits for the reads already running to
+	 * finish, and reads started afterwards throw an
+	 * {@link IllegalStateException} instead of reading freed memory. Published
+	 * snapshots always stay on the heap.
+	 */
+	@Override
+	public void close() {
+		lock.writeLock().lock();
+		try {
+			closed = true;
+			while (frozenReads.get() > 0) {
+				Thread.yield();
+			}
+			free();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Frees the memory outside of the heap once no read is running. Called by
+	 * {@link #close()} while holding the write lock.
+	 */
+	protected void free() {
+		super.close();
+	}
+	
+	/**
+	 * Drops the positions under the write lock. A snapshot published before
+	 * keeps its positions until the next one is published, which is a copy
+	 * without them.
+	 */
+	@Override
+	public void setPositions(boolean positional) {
+		lock.writeLock().lock();
+		try {
+			super.setPositions(positional);
+			if (publishInterval > 0) {
+				rewritten = true;
+			}
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Sets the scorer of every part of the published snapshot as well
+	 */
+	@Override
+	public void setScorer(Scorer scorer) {
+		lock.writeLock().lock();
+		try {
+			super.setScorer(scorer);
+			List<Part> parts = snapshot.get();
+			if (parts != null) {
+				for (Part part : parts) {
+					part.index.setScorer(scorer);
+				}
+			}
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void setCorpusStats(CorpusStats corpus) {
+		lock.writeLock().lock();
+		try {
+			super.setCorpusStats(corpus);
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void save(Path writePath) throws IOException {
+		SimpleLock readLock = readLock();
+		readLock.lock();
+		try {
+			super.save(writePath);
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+	
+	@Override
+	public void load(Path loadPath) throws IOException {
+		lock.writeLock().lock();
+		try {
+			super.load(loadPath);
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
 	}
 
 	@Override
 	public void addAll(List<String> listStems, String inputPath) {
+		if (publishInterval > 0) {
+			InvertedIndex local = newPart();
+			local.addAll(listStems, inputPath);
+			addAll(local);
+			return;
+		}
+		
 		lock.writeLock().lock();
 		try {
 			super.addAll(listStems, inputPath);
@@ -35,190 +478,364 @@ public class ThreadedInvertedIndex extends InvertedIndex {
 		}
 	}
 
+	/**
+	 * Adds the other index under the write lock. If the index publishes
+	 * snapshots, a frozen copy of the other index is made first, before this
+	 * index takes over its posting lists, and becomes part of the next snapshot.
+	 */
 	@Override
 	public void addAll(InvertedIndex otherInvertedIndex) {
+		InvertedIndex batch = publishInterval > 0 ? frozenCopy(otherInvertedIndex) : null;
+		boolean publish;
 		lock.writeLock().lock();
 		try {
 			super.addAll(otherInvertedIndex);
+			changed(batch, index -> index.addAll(batch));
+			publish = batchAdded();
 		}
 		finally {
 			lock.writeLock().unlock();
 		}
+		if (publish) {
+			publish();
+		}
 	}
 	
 	@Override
-	public void add(String word, String location, Integer position) {
+	public boolean remove(String location) {
+		boolean removed;
+		boolean publish;
 		lock.writeLock().lock();
 		try {
-			super.add(word, location, position);
+			removed = super.remove(location);
+			changed(null, index -> index.remove(location));
+			publish = batchAdded();
 		}
 		finally {
 			lock.writeLock().unlock();
 		}
+		if (publish) {
+			publish();
+		}
+		return removed;
 	}
 	
 	@Override
-	public List<SearchResult> exactSearch(Set<String> queries) {
-		lock.readLock().lock();
+	public void replace(List<String> listStems, String location) {
+		boolean publish;
+		lock.writeLock().lock();
 		try {
-			return super.exactSearch(queries);
+			super.replace(listStems, location);
+			changed(null, index -> index.replace(listStems, location));
+			publish = batchAdded();
 		}
 		finally {
-			lock.readLock().unlock();
+			lock.writeLock().unlock();
+		}
+		if (publish) {
+			publish();
 		}
 	}
-
+	
 	@Override
-	public List<SearchResult> partialSearch(Set<String> queries) {
-		lock.readLock().lock();
+	public void add(String word, String location, Integer position) {
+		lock.writeLock().lock();
 		try {
-			return super.partialSearch(queries);
+			super.add(word, location, position);
+			changed(null, index -> index.add(word, location, position));
 		}
 		finally {
-			lock.readLock().unlock();
+			lock.writeLock().unlock();
 		}
 	}
 	
 	@Override
-	public int size() {
-		lock.readLock().lock();
+	public List<SearchResult> search(Set<String> query, boolean exactSearch, int k) {
+		List<Part> parts = snapshot.get();
+		if (parts != null) {
+			List<SearchResult> results = new ArrayList<>();
+			for (Part part : parts) {
+				results.addAll(part.index.search(query, exactSearch, k));
+			}
+			return parts.size() == 1 ? results : top(results, k);
+		}
+		
+		SimpleLock readLock = readLock();
+		readLock.lock();
 		try {
-			return super.size();
+			return super.search(query, exactSearch, k);
 		}
 		finally {
-			lock.readLock().unlock();
+			readLock.unlock();
 		}
 	}
-
+	
 	@Override
-	public int size(String word) {
-		lock.readLock().lock();
+	public List<SearchResult> search(Query query, boolean exactSearch) {
+		List<Part> parts = snapshot.get();
+		if (parts != null) {
+			List<SearchResult> results = new ArrayList<>();
+			for (Part part : parts) {
+				results.addAll(part.index.search(query, exactSearch));
+			}
+			if (parts.size() > 1) {
+				Collections.sort(results);
+			}
+			return results;
+		}
+		
+		SimpleLock readLock = readLock();
+		readLock.lock();
 		try {
-			return super.size(word);
+			return super.search(query, exactSearch);
 		}
 		finally {
-			lock.readLock().unlock();
+			readLock.unlock();
 		}
 	}
-
+	
 	@Override
-	public int size(String word, String location) {
-		lock.readLock().lock();
+	public List<SearchResult> search(Query query, boolean exactSearch, int k) {
+		List<Part> parts = snapshot.get();
+		if (parts != null) {
+			List<SearchResult> results = new ArrayList<>();
+			for (Part part : parts) {
+				results.addAll(part.index.search(query, exactSearch, k));
+			}
+			return parts.size() == 1 ? results : top(results, k);
+		}
+		
+		SimpleLock readLock = readLock();
+		readLock.lock();
 		try {
-			return super.size(word, location);
+			return super.search(query, exactSearch, k);
 		}
 		finally {
-			lock.readLock().unlock();
+			readLock.unlock();
 		}
 	}
-
+	
 	@Override
-	public boolean contains(String word) {
-		lock.readLock().lock();
+	public List<SearchResult> exactSearch(Set<String> queries) {
+		List<Part> parts = snapshot.get();
+		if (parts != null) {
+			List<SearchResult> results = new ArrayList<>();
+			for (Part part : parts) {
+				results.addAll(part.index.exactSearch(queries));
+			}
+			if (parts.size() > 1) {
+				Collections.sort(results);
+			}
+			return results;
+		}
+		
+		SimpleLock readLock = readLock();
+		readLock.lock();
 		try {
-			return super.contains(word);
+			return super.exactSearch(queries);
 		}
 		finally {
-			lock.readLock().unlock();
+			readLock.unlock();
 		}
 	}
 
 	@Override
-	public boolean contains(String word, String location) {
-		lock.readLock().lock();
+	public List<SearchResult> partialSearch(Set<String> queries) {
+		List<Part> parts = snapshot.get();
+		if (parts != null) {
+			List<SearchResult> results = new ArrayList<>();
+			for (Part part : parts) {
+				results.addAll(part.index.partialSearch(queries));
+			}
+			if (parts.size() > 1) {
+				Collections.sort(results);
+			}
+			return results;
+		}
+		
+		SimpleLock readLock = readLock();
+		readLock.lock();
 		try {
-			return super.contains(word, location);
+			return super.partialSearch(queries);
 		}
 		finally {
-			lock.readLock().unlock();
+			readLock.unlock();
 		}
 	}
-
+	
 	@Override
-	public boolean contains(String word, String location, Integer position) {
-		lock.readLock().lock();
+	public MemoryStats memoryStats() {
+		SimpleLock readLock = readLock();
+		readLock.lock();
+		try {
+			return super.memoryStats();
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+	
+	@Override
+	public CorpusStats corpusStats() {
+		SimpleLock readLock = readLock();
+		readLock.lock();
 		try {
-			return super.contains(word, location, position);
+			return super.corpusStats();
 		}
 		finally {
-			lock.readLock().unlock();
+			readLock.unlock();
 		}
 	}
 
+	@Override
+	public int size() {
+		return optimisticRead(() -> super.size());
+	}
+
+	@Override
+	public int size(String word) {
+		return optimisticRead(() -> super.size(word));
+	}
+
+	@Override
+	public int size(String word, String location) {
+		return optimisticRead(() -> super.size(word, location));
+	}
+
+	@Override
+	public boolean contains(String word) {
+		return optimisticRead(() -> super.contains(word));
+	}
+
+	@Override
+	public boolean contains(String word, String location) {
+		return optimisticRead(() -> super.contains(word, location));
+	}
+
+	@Override
+	public boolean contains(String word, String location, Integer position) {
+		return optimisticRead(() -> super.contains(word, location, position));
+	}
+
 	@Override
 	public void writeJson(Path writePath) throws IOException {
-		lock.readLock().lock();
+		SimpleLock readLock = readLock();
+		readLock.lock();
 		try {
 			super.writeJson(writePath);
 		}
 		finally {
-			lock.readLock().unlock();
+			readLock.unlock();
 		}
 	}
 
 	@Override
 	public void writeCount(Path writePath) throws IOException {
-		lock.readLock().lock();
+		SimpleLock readLock = readLock();
+		readLock.lock();
 		try {
 			super.writeCount(writePath);
 		}
 		finally {
-			lock.readLock().unlock();
+			readLock.unlock();
 		}
 	}
 
 	@Override
 	public Map<String, Integer> getCount() {
-		lock.readLock().lock();
+		SimpleLock readLock = readLock();
+		readLock.lock();
 		try {
 			return super.getCount();
 		}
 		finally {
-			lock.readLock().unlock();
+			readLock.unlock();
 		}
 	}
 
 	@Override
 	public Set<String> get() {
-		lock.readLock().lock();
+		SimpleLock readLock = readLock();
+		readLock.lock();
 		try {
 			return super.get();
 		}
 		finally {
-			lock.readLock().unlock();
+			readLock.unlock();
 		}
 	}
 
 	@Override
 	public Set<String> get(String word) {
-		lock.readLock().lock();
-		try {
-			return super.get(word);
-		}
-		finally {
-			lock.readLock().unlock();
-		}
+		return optimisticRead(() -> super.get(word));
 	}
 
 	@Override
 	public Set<Integer> get(String word, String location) {
-		lock.readLock().lock();
-		try {
-			return super.get(word, location);
+		return optimisticRead(() -> super.get(word, location));
+	}
+
+	/**
+	 * A frozen part of a published snapshot and its number of stems
+	 */
+	private static class Part {
+		/** The frozen index of the part. */
+		private final InvertedIndex index;
+
+		/** The total number of stems in the part. */
+		private final long weight;
+
+		/**
+		 * Initializes a part
+		 *
+		 * @param index the frozen index of the part
+		 */
+		public Part(InvertedIndex index) {
+			this.index = index;
+			long stems = 0;
+			for (int count : index.getCount().values()) {
+				stems += count;
+			}
+			this.weight = stems;
 		}
-		finally {
-			lock.readLock().unlock();
+	}
+
+	/**
+	 * Lock used for reads of a frozen index. Nothing can modify a frozen index,
+	 * so locking only counts the read, which {@link #close()} waits for. A read
+	 * started once the index is closed fails instead of waiting, since it may be
+	 * nested in a read that close is already waiting for.
+	 */
+	private class FrozenLock implements SimpleLock {
+		/**
+		 * Counts the read
+		 *
+		 * @throws IllegalStateException if the index has been closed
+		 */
+		@Override
+		public void lock() {
+			frozenReads.incrementAndGet();
+			if (closed) {
+				frozenReads.decrementAndGet();
+				throw new IllegalStateException("Cannot read a closed index.");
+			}
+		}
+
+		@Override
+		public void unlock() {
+			frozenReads.decrementAndGet();
 		}
 	}
 
 	@Override
 	public String toString() {
-		lock.readLock().lock();
+		SimpleLock readLock = readLock();
+		readLock.lock();
 		try {
 			return super.toString();
 		}
 		finally {
-			lock.readLock().unlock();
+			readLock.unlock();
 		}
 	}
 
@@ -4,6 +4,14 @@ import java.io.IOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Threaded version of InvertedIndexBuilder for Multithreading
@@ -22,13 +30,127 @@ public class ThreadedInvertedIndexBuilder {
 	 * @throws IOException if IO error occurs
 	 */
 	public static void build(Path inputPath, ThreadedInvertedIndex threadedIndex, WorkQueue workers) throws IOException {
+		build(inputPath, threadedIndex, workers, false);
+	}
+	
+	/**
+	 * Builds the index like {@link #build(Path, ThreadedInvertedIndex, WorkQueue)}, but if reduce is true each
+	 * worker keeps adding files to its own local index and the local indexes are only merged and added to the
+	 * threaded index once every file is done
+	 * 
+	 * @param inputPath path that is "-text" flag's value
+	 * @param threadedIndex data structure that stores stemmed words, path and location
+	 * @param workers WorkQueue
+	 * @param reduce whether to reduce worker-local indexes instead of adding each file to the threaded index
+	 * @throws IOException if IO error occurs
+	 * 
+	 * @see IndexReducer
+	 */
+	public static void build(Path inputPath, ThreadedInvertedIndex threadedIndex, WorkQueue workers, boolean reduce) throws IOException {
+		IndexReducer reducer = reduce ? new IndexReducer(threadedIndex) : null;
 		if (Files.isDirectory(inputPath)) {
-			traverseDirectory(inputPath, threadedIndex, workers);
+			traverseDirectory(inputPath, threadedIndex, workers, reducer);
 		}
 		else {
-			workers.execute(new Task(inputPath, threadedIndex));
+			workers.execute(new Task(inputPath, threadedIndex, reducer));
 		}
 		workers.finish();
+		
+		if (reducer != null) {
+			reducer.reduceInto(threadedIndex);
+		}
+		// the batches since the last snapshot would otherwise stay invisible to searches
+		threadedIndex.publish();
+	}
+	
+	/**
+	 * Brings the index up to date with the text files under the input path, like
+	 * {@link #update(Collection, ThreadedInvertedIndex, WorkQueue, Map)} with
+	 * every text file found and every file indexed before
+	 * 
+	 * @param inputPath path that is "-text" flag's value
+	 * @param threadedIndex data structure that stores stemmed words, path and location
+	 * @param workers WorkQueue
+	 * @param indexed the last modified time of every indexed file, which should
+	 *   start out empty and be passed to every call for the same index
+	 * @throws IOException if IO error occurs
+	 */
+	public static void update(Path inputPath, ThreadedInvertedIndex threadedIndex, WorkQueue workers, Map<Path, FileTime> indexed) throws IOException {
+		Set<Path> found = new HashSet<>(indexed.keySet());
+		if (Files.isDirectory(inputPath)) {
+			findTextFiles(inputPath, found);
+		}
+		else {
+			found.add(inputPath);
+		}
+		update(found, threadedIndex, workers, indexed);
+	}
+	
+	/**
+	 * Brings the index up to date with the given files. Only files whose last
+	 * modified time changed since they were last indexed are stemmed again, and
+	 * files that no longer exist are removed from the index. The changed files
+	 * are built into worker-local indexes and added with a single call to addAll,
+	 * so a whole batch of changes is merged into the index at once. Searches may
+	 * miss the changed files between their removal and that merge. If the index
+	 * publishes snapshots, one is published once the whole batch is merged.
+	 * 
+	 * The modified times are looked up before the files are read, so a file
+	 * changed while it is being read is indexed again by the next call. They are
+	 * only recorded once a file was read, so a file that could not be read is
+	 * tried again by the next call as well.
+	 * 
+	 * @param paths the files that may have changed
+	 * @param threadedIndex data structure that stores stemmed words, path and location
+	 * @param workers WorkQueue
+	 * @param indexed the last modified time of every indexed file, which should
+	 *   start out empty and be passed to every call for the same index
+	 * @throws IOException if IO error occurs
+	 */
+	public static void update(Collection<Path> paths, ThreadedInvertedIndex threadedIndex, WorkQueue workers, Map<Path, FileTime> indexed) throws IOException {
+		IndexReducer reducer = new IndexReducer(threadedIndex);
+		List<String> stale = new ArrayList<>();
+		Map<Path, FileTime> built = new ConcurrentHashMap<>();
+		for (Path path : paths) {
+			if (Files.isRegularFile(path)) {
+				FileTime modified = Files.getLastModifiedTime(path);
+				if (!modified.equals(indexed.get(path))) {
+					stale.add(path.toString());
+					workers.execute(new Task(path, threadedIndex, reducer, built, modified));
+				}
+			}
+			else if (indexed.remove(path) != null) {
+				stale.add(path.toString());
+			}
+		}
+		workers.finish();
+		indexed.putAll(built);
+		
+		for (String location : stale) {
+			threadedIndex.remove(location);
+		}
+		reducer.reduceInto(threadedIndex);
+		threadedIndex.publish();
+	}
+	
+	/**
+	 * Finds every text file in the directory and its subdirectories
+	 * 
+	 * @param directory the input path directory
+	 * @param found where to add the text files
+	 * @throws IOException if an IO Exception occurs
+	 */
+	private static void findTextFiles(Path directory, Set<Path> found) throws IOException {
+		try (DirectoryStream<Path> listing = Files.newDirectoryStream(directory)) {
+			for (Path path : listing) {
+				if (Files.isDirectory(path)) {
+					findTextFiles(path, found);
+				}
+				else if (InvertedIndexBuilder.isTextFile(path)) {
+					found.add(path);
+				}
+			}
+		}
 	}
 	
 	/**
@@ -37,16 +159,17 @@ public class ThreadedInvertedIndexBuilder {
 	 * @param directory the input path directory
 	 * @param threadedIndex threaded version of Inverted Index
 	 * @param workers WorkQueue
+	 * @param reducer the worker-local indexes to build into, or null to add each file to the threaded index
 	 * @throws IOException if an IO Exception occurs
 	 */
-	private static void traverseDirectory(Path directory, ThreadedInvertedIndex threadedIndex, WorkQueue workers) throws IOException {
+	private static void traverseDirectory(Path directory, ThreadedInvertedIndex threadedIndex, WorkQueue workers, IndexReducer reducer) throws IOException {
 		try (DirectoryStream<Path> listing = Files.newDirectoryStream(directory)) {
 			for (Path path : listing) {
 				if (Files.isDirectory(path)) {
-					traverseDirectory(path, threadedIndex, workers);
+					traverseDirectory(path, threadedIndex, workers, reducer);
 				}
 				else if (InvertedIndexBuilder.isTextFile(path)) {
-					workers.execute(new Task(path, threadedIndex));
+					workers.execute(new Task(path, threadedIndex, reducer));
 				}
 			}
 		}
@@ -67,23 +190,64 @@ public class ThreadedInvertedIndexBuilder {
 		 */
 		private final Path path;
 		
+		/**
+		 * Worker-local indexes to build into, or null to add to the threaded index
+		 */
+		private final IndexReducer reducer;
+		
+		/**
+		 * Where to record the modified time of the file once it is built, or null
+		 */
+		private final Map<Path, FileTime> built;
+		
+		/**
+		 * The modified time of the file before it was read
+		 */
+		private final FileTime modified;
+		
 		/**
 		 * Initializes the path and threaded inverted index
 		 * 
 		 * @param path inputPath that is "-text" flag's value
 		 * @param threadedIndex threaded version of inverted index
+		 * @param reducer worker-local indexes to build into, or null to add to the threaded index
+		 */
+		public Task(Path path, ThreadedInvertedIndex threadedIndex, IndexReducer reducer){
+			this(path, threadedIndex, reducer, null, null);
+		}
+		
+		/**
+		 * Initializes the task to record the modified time of the file once it is
+		 * built
+		 * 
+		 * @param path inputPath that is "-text" flag's value
+		 * @param threadedIndex threaded version of inverted index
+		 * @param reducer worker-local indexes to build into, or null to add to the threaded index
+		 * @param built where to record the modified time once the file is built, or null
+		 * @param modified the modified time of the file before it is read
 		 */
-		public Task(Path path, ThreadedInvertedIndex threadedIndex){
+		public Task(Path path, ThreadedInvertedIndex threadedIndex, IndexReducer reducer, Map<Path, FileTime> built, FileTime modified){
 			this.path = path;
 			this.threadedIndex = threadedIndex;
+			this.reducer = reducer;
+			this.built = built;
+			this.modified = modified;
 		}
 
 		@Override
 		public void run() {
 			try {
-				InvertedIndex local = new InvertedIndex();
-				InvertedIndexBuilder.build(path, local);
-				threadedIndex.addAll(local);
+				if (reducer != null) {
+					InvertedIndexBuilder.build(path, reducer.local());
+				}
+				else {
+					InvertedIndex local = threadedIndex.newPart();
+					InvertedIndexBuilder.build(path, local);
+					threadedIndex.addAll(local);
+				}
+				if (built != null) {
+					built.put(path, modified);
+				}
 			}
 			catch (IOException e) {
 				System.out.println("Unable to build.");
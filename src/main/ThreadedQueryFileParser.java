@@ -1,13 +1,8 @@
 package edu.usfca.cs272;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
-
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
-import java.util.Set;
 import java.util.TreeMap;
 
 /**
@@ -53,12 +48,6 @@ public class ThreadedQueryFileParser implements QueryFileParserInterface {
 
 	@Override
 	public void buildSearch(Path inputPath, boolean exactSearch) throws IOException {
-		try (BufferedReader reader = Files.newBufferedReader(inputPath, UTF_8)) {
-			String line = null;
-			while ((line = reader.readLine()) != null) {
-				buildSearch(line, exactSearch);
-			}
-		}
 		QueryFileParserInterface.super.buildSearch(inputPath, exactSearch);
 		workers.finish();
 	}
@@ -96,11 +85,15 @@ public class ThreadedQueryFileParser implements QueryFileParserInterface {
 		
 		@Override
 		public void run() {
-			Set<String> cleaned = TextFileStemmer.uniqueStems(line);
-			if (cleaned.isEmpty()) {
+			Query parsed = Query.parse(line);
+			if (parsed.isEmpty()) {
+				return;
+			}
+			if (parsed.hasClauses() && !index.hasPositions()) {
+				System.out.println("Unable to search for phrases in an index without positions: " + line);
 				return;
 			}
-			String queryLine = String.join(" ", cleaned);
+			String queryLine = parsed.toString();
 			
 			queryLock.readLock().lock();
 			try {
@@ -112,7 +105,7 @@ public class ThreadedQueryFileParser implements QueryFileParserInterface {
 				queryLock.readLock().unlock();
 			}
 			
-			var local = index.search(cleaned, exactSearch);
+			var local = index.search(parsed, exactSearch);
 			
 			queryLock.writeLock().lock();
 			try {
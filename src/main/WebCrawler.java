@@ -1,14 +1,11 @@
 package edu.usfca.cs272;
 
-import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
-
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Set;
 
 import opennlp.tools.stemmer.Stemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
 
 /**
  * Crawls each webpage using Multithreading
@@ -43,6 +40,11 @@ public class WebCrawler {
 	 */
 	private int max;
 	
+	/**
+	 * Worker-local indexes to build into, or null to add each page to the threaded index
+	 */
+	private final IndexReducer reducer;
+	
 	/**
 	 * Initializes url, max, threadedIndex and workers
 	 * 
@@ -52,11 +54,28 @@ public class WebCrawler {
 	 * @param workers worker threads for multithreading
 	 */
 	public WebCrawler(URL url, int numURL, ThreadedInvertedIndex threadedIndex, WorkQueue workers) {
+		this(url, numURL, threadedIndex, workers, false);
+	}
+	
+	/**
+	 * Initializes url, max, threadedIndex and workers. If reduce is true, each worker keeps adding pages to its own
+	 * local index and the local indexes are only merged and added to the threaded index once the crawl is done.
+	 * 
+	 * @param url URL to process
+	 * @param numURL the total number of URLs to crawl when building the index
+	 * @param threadedIndex threaded version of inverted index
+	 * @param workers worker threads for multithreading
+	 * @param reduce whether to reduce worker-local indexes instead of adding each page to the threaded index
+	 * 
+	 * @see IndexReducer
+	 */
+	public WebCrawler(URL url, int numURL, ThreadedInvertedIndex threadedIndex, WorkQueue workers, boolean reduce) {
 		this.url = url;
 		this.threadedIndex = threadedIndex;
 		this.workers = workers;
 		this.linkSet = new HashSet<String>();
 		this.max = numURL;
+		this.reducer = reduce ? new IndexReducer(threadedIndex) : null;
 	}
 	
 	/**
@@ -66,6 +85,11 @@ public class WebCrawler {
 		linkSet.add(url.toString());
 		workers.execute(new Task(url, max, threadedIndex, linkSet));
 		workers.finish();
+		
+		if (reducer != null) {
+			reducer.reduceInto(threadedIndex);
+		}
+		threadedIndex.publish();
 	}
 	
 	/**
@@ -123,17 +147,20 @@ public class WebCrawler {
 				}
 			}
 			
-			Stemmer stemmer = new SnowballStemmer(ENGLISH);
+			Stemmer stemmer = StemCache.shared().stemmer();
 			String cleaned = HtmlCleaner.stripHtml(html);
 			String[] parsed = TextParser.parse(cleaned);
-			InvertedIndex local = new InvertedIndex();
+			InvertedIndex local = reducer != null ? reducer.local() : index.newPart();
+			String location = url.toString();
 			
 			int i = 0; 
 			for (String words : parsed) {
-				local.add(stemmer.stem(words).toString(), url.toString(), i + 1);
+				local.add(stemmer.stem(words).toString(), location, i + 1);
 				i++;
 			}
-			index.addAll(local);
+			if (reducer == null) {
+				index.addAll(local);
+			}
 		}
 	}
 }
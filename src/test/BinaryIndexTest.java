@@ -0,0 +1,165 @@
+package edu.usfca.cs272;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Tests that an index saved to a binary file and loaded back through
+ * memory-mapped buffers is the same as the index that was saved.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class BinaryIndexTest {
+	/** The directory the index files are saved in. */
+	@TempDir
+	public Path directory;
+
+	/**
+	 * Tests that a loaded index has the same stems, positions, counts and search
+	 * results as the saved one
+	 *
+	 * @param seed the seed of the random corpus
+	 * @throws IOException if the index cannot be saved or loaded
+	 */
+	@ParameterizedTest
+	@ValueSource(longs = { 1, 2, 3 })
+	public void testRoundTrip(long seed) throws IOException {
+		RandomCorpus corpus = new RandomCorpus(seed, 60, 40);
+		InvertedIndex saved = new InvertedIndex();
+		saved.setPositions(true);
+		corpus.build(saved).freeze();
+		Path file = directory.resolve("index.bin");
+		saved.save(file);
+
+		InvertedIndex loaded = new InvertedIndex();
+		loaded.load(file);
+		assertLoaded(corpus, saved, loaded);
+	}
+
+	/**
+	 * Tests that an index whose positions were packed outside of the heap saves
+	 * the same file as one that kept them on the heap
+	 *
+	 * @throws IOException if the index cannot be saved
+	 */
+	@Test
+	public void testOffHeap() throws IOException {
+		RandomCorpus corpus = new RandomCorpus(4, 60, 40);
+		InvertedIndex heap = new InvertedIndex();
+		heap.setPositions(true);
+		corpus.build(heap).freeze();
+		InvertedIndex offHeap = new InvertedIndex();
+		offHeap.setPositions(true);
+		offHeap.setOffHeap(true);
+		corpus.build(offHeap).freeze();
+
+		Path heapFile = directory.resolve("heap.bin");
+		Path offHeapFile = directory.resolve("offheap.bin");
+		heap.save(heapFile);
+		offHeap.save(offHeapFile);
+		offHeap.close();
+		assertTrue(Arrays.equals(Files.readAllBytes(heapFile), Files.readAllBytes(offHeapFile)));
+	}
+
+	/**
+	 * Tests that a thread-safe index loads the same index as a plain one
+	 *
+	 * @throws IOException if the index cannot be saved or loaded
+	 */
+	@Test
+	public void testThreaded() throws IOException {
+		RandomCorpus corpus = new RandomCorpus(5, 60, 40);
+		InvertedIndex saved = new InvertedIndex();
+		saved.setPositions(true);
+		corpus.build(saved).freeze();
+		Path file = directory.resolve("index.bin");
+		saved.save(file);
+
+		ThreadedInvertedIndex loaded = new ThreadedInvertedIndex();
+		loaded.load(file);
+		assertLoaded(corpus, saved, loaded);
+		loaded.close();
+	}
+
+	/**
+	 * Tests that a file cut short fails to load and leaves the index empty, so
+	 * the whole file can still be loaded into it
+	 *
+	 * @throws IOException if the index cannot be saved or loaded
+	 */
+	@Test
+	public void testTruncated() throws IOException {
+		RandomCorpus corpus = new RandomCorpus(6, 60, 40);
+		InvertedIndex saved = corpus.build(new InvertedIndex());
+		saved.freeze();
+		Path file = directory.resolve("index.bin");
+		saved.save(file);
+		byte[] bytes = Files.readAllBytes(file);
+		Path truncated = directory.resolve("truncated.bin");
+		Files.write(truncated, Arrays.copyOf(bytes, bytes.length / 2));
+
+		InvertedIndex loaded = new InvertedIndex();
+		assertThrows(IOException.class, () -> loaded.load(truncated));
+		assertEquals(0, loaded.size());
+		assertEquals(0, loaded.getCount().size());
+		loaded.load(file);
+		assertEquals(saved.toString(), loaded.toString());
+	}
+
+	/**
+	 * Tests that only a frozen index can be saved
+	 */
+	@Test
+	public void testNotFrozen() {
+		InvertedIndex index = new RandomCorpus(7, 10, 10).build(new InvertedIndex());
+		assertThrows(IllegalStateException.class, () -> index.save(directory.resolve("index.bin")));
+	}
+
+	/**
+	 * Asserts that a loaded index is the same as the saved one
+	 *
+	 * @param corpus the corpus of the saved index
+	 * @param saved the saved index
+	 * @param loaded the loaded index
+	 */
+	private static void assertLoaded(RandomCorpus corpus, InvertedIndex saved, InvertedIndex loaded) {
+		assertTrue(loaded.isFrozen());
+		assertTrue(loaded.hasPositions());
+		assertEquals(saved.toString(), loaded.toString());
+		assertEquals(saved.getCount(), loaded.getCount());
+		for (String word : RandomCorpus.WORDS) {
+			for (String location : saved.get(word)) {
+				assertEquals(saved.get(word, location), loaded.get(word, location), word + " in " + location);
+			}
+		}
+
+		for (Scorer scorer : List.of(new CountScorer(), new BM25Scorer())) {
+			saved.setScorer(scorer);
+			loaded.setScorer(scorer);
+			for (int i = 0; i < 30; i++) {
+				String line = corpus.query(1 + i % 3);
+				if (i % 5 == 0) {
+					line = "\"" + corpus.word() + " " + corpus.word() + "\" " + line;
+				}
+				Query query = Query.parse(line);
+				for (boolean exact : new boolean[] { true, false }) {
+					assertEquals(RandomCorpus.describe(saved.search(query, exact)),
+							RandomCorpus.describe(loaded.search(query, exact)), line);
+				}
+			}
+		}
+	}
+}
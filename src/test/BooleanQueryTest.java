@@ -0,0 +1,130 @@
+package edu.usfca.cs272;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Tests queries with AND and NOT against a brute force scan of the documents.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class BooleanQueryTest {
+	/**
+	 * Tests random queries with AND and NOT on a plain index
+	 *
+	 * @param seed the seed of the random corpus
+	 */
+	@ParameterizedTest
+	@ValueSource(longs = { 1, 2, 3 })
+	public void testInvertedIndex(long seed) {
+		assertBruteForce(seed, InvertedIndex::new);
+	}
+
+	/**
+	 * Tests random queries with AND and NOT on a sharded index, which filters the
+	 * matches of its shards by location
+	 *
+	 * @param seed the seed of the random corpus
+	 */
+	@ParameterizedTest
+	@ValueSource(longs = { 4, 5 })
+	public void testShardedInvertedIndex(long seed) {
+		assertBruteForce(seed, () -> new ShardedInvertedIndex(3));
+	}
+
+	/**
+	 * Tests which words and clauses AND and NOT apply to
+	 */
+	@Test
+	public void testParse() {
+		Query query = Query.parse("cat AND dog fish NOT bird");
+		assertEquals(Set.of("cat", "dog"), query.required());
+		assertEquals(Set.of("fish"), query.words());
+		assertEquals(Set.of("bird"), query.excluded());
+
+		query = Query.parse("cat AND \"dog fish\" NOT sun NEAR/2 moon");
+		assertEquals(Set.of("cat"), query.required());
+		assertEquals("[\"dog fish\"]", query.requiredClauses().toString());
+		assertEquals("[sun NEAR/2 moon]", query.excludedClauses().toString());
+	}
+
+	/**
+	 * Tests that AND and NOT without the words they need are searched as plain
+	 * words
+	 */
+	@Test
+	public void testWithoutOperands() {
+		Map<String, Set<String>> expected = Map.of(
+				"rock AND", Set.of("rock", "and"),
+				"AND rock", Set.of("rock", "and"),
+				"NOT", Set.of("not"),
+				"rock NOT", Set.of("rock", "not"));
+		expected.forEach((line, words) -> {
+			Query query = Query.parse(line);
+			assertEquals(words, query.words(), line);
+			assertEquals(Set.of(), query.required(), line);
+			assertEquals(Set.of(), query.excluded(), line);
+		});
+
+		InvertedIndex index = new InvertedIndex();
+		index.addAll(List.of("rock", "and", "roll"), "a.txt");
+		index.addAll(List.of("rock"), "b.txt");
+		assertEquals(Map.of("a.txt", 2, "b.txt", 1), PhraseQueryTest.counts(index.search(Query.parse("rock AND"), true)));
+	}
+
+	/**
+	 * Returns a random query line with single words and clauses, some of them
+	 * joined by AND or after NOT
+	 *
+	 * @param corpus the random corpus to draw the words from
+	 * @return the query line
+	 */
+	private static String query(RandomCorpus corpus) {
+		List<String> parts = new ArrayList<>();
+		int count = 1 + corpus.random().nextInt(4);
+		for (int i = 0; i < count; i++) {
+			String part = corpus.random().nextInt(3) == 0 ? PhraseQueryTest.clause(corpus) : corpus.query(1);
+			switch (corpus.random().nextInt(4)) {
+				case 0 -> parts.add("NOT " + part);
+				case 1 -> parts.add(i > 0 ? "AND " + part : part);
+				default -> parts.add(part);
+			}
+		}
+		return String.join(" ", parts);
+	}
+
+	/**
+	 * Asserts that random queries with AND and NOT find the same documents and
+	 * matches as the brute force search, before and after the index is frozen
+	 *
+	 * @param seed the seed of the random corpus
+	 * @param indexes makes the index to test
+	 */
+	private static void assertBruteForce(long seed, Supplier<InvertedIndex> indexes) {
+		RandomCorpus corpus = new RandomCorpus(seed, 80, 40);
+		InvertedIndex index = indexes.get();
+		index.setPositions(true);
+		corpus.build(index);
+		for (int frozen = 0; frozen < 2; frozen++) {
+			for (int i = 0; i < 200; i++) {
+				String line = query(corpus);
+				Query query = Query.parse(line);
+				for (boolean exact : new boolean[] { true, false }) {
+					assertEquals(BruteForceSearch.search(corpus.documents(), query, exact),
+							PhraseQueryTest.counts(index.search(query, exact)), line);
+				}
+			}
+			index.freeze();
+		}
+	}
+}
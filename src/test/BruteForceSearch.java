@@ -0,0 +1,138 @@
+package edu.usfca.cs272;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Searches documents for a parsed query by scanning every stem of every
+ * document, to check the searches of the index against.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class BruteForceSearch {
+	/** Prevents instantiating this class of static methods. */
+	private BruteForceSearch() {
+	}
+
+	/**
+	 * Returns the number of matches of every matching document. A document
+	 * must have every required stem and clause and none of the excluded ones,
+	 * and with nothing required it must match at least one other stem or
+	 * clause.
+	 *
+	 * @param documents the stems of each document by location
+	 * @param query the parsed query
+	 * @param exactSearch matches the stems exactly if true and by prefix
+	 *   otherwise, while clauses always match exactly
+	 * @return the number of matches by location, without the documents that
+	 *   do not match
+	 */
+	public static Map<String, Integer> search(Map<String, List<String>> documents, Query query, boolean exactSearch) {
+		boolean intersect = !query.required().isEmpty() || !query.requiredClauses().isEmpty();
+		Map<String, Integer> matches = new TreeMap<>();
+		documents.forEach((location, stems) -> {
+			int count = 0;
+			for (String word : query.required()) {
+				int matched = count(stems, word, exactSearch);
+				if (matched == 0) {
+					return;
+				}
+				count += matched;
+			}
+			for (Query.Clause clause : query.requiredClauses()) {
+				int matched = count(stems, clause);
+				if (matched == 0) {
+					return;
+				}
+				count += matched;
+			}
+			for (String word : query.excluded()) {
+				if (count(stems, word, exactSearch) > 0) {
+					return;
+				}
+			}
+			for (Query.Clause clause : query.excludedClauses()) {
+				if (count(stems, clause) > 0) {
+					return;
+				}
+			}
+
+			for (String word : query.words()) {
+				count += count(stems, word, exactSearch);
+			}
+			for (Query.Clause clause : query.clauses()) {
+				count += count(stems, clause);
+			}
+			if (intersect || count > 0) {
+				matches.put(location, count);
+			}
+		});
+		return matches;
+	}
+
+	/**
+	 * Counts the stems of a document that match a query stem
+	 *
+	 * @param stems the stems of the document
+	 * @param word the query stem
+	 * @param exactSearch matches the stem exactly if true and by prefix otherwise
+	 * @return the number of matching stems
+	 */
+	public static int count(List<String> stems, String word, boolean exactSearch) {
+		int count = 0;
+		for (String stem : stems) {
+			if (exactSearch ? stem.equals(word) : stem.startsWith(word)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Counts the matches of a phrase or NEAR clause in a document. A phrase
+	 * matches at every stem that starts its words in order, and a NEAR clause at
+	 * every first stem with the second stem somewhere else within the distance.
+	 *
+	 * @param stems the stems of the document
+	 * @param clause the phrase or NEAR clause
+	 * @return the number of matches
+	 */
+	public static int count(List<String> stems, Query.Clause clause) {
+		List<String> words = clause.words();
+		int distance = distance(clause);
+		int count = 0;
+		for (int start = 0; start < stems.size(); start++) {
+			if (!stems.get(start).equals(words.get(0))) {
+				continue;
+			}
+			boolean matched = false;
+			if (distance > 0) {
+				for (int other = Math.max(0, start - distance); other <= Math.min(stems.size() - 1, start + distance); other++) {
+					matched |= other != start && stems.get(other).equals(words.get(1));
+				}
+			}
+			else {
+				matched = start + words.size() <= stems.size()
+						&& stems.subList(start, start + words.size()).equals(words);
+			}
+			if (matched) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the distance of a clause from how it is written
+	 *
+	 * @param clause the phrase or NEAR clause
+	 * @return the maximum distance of a NEAR clause, or 0 for a phrase
+	 */
+	private static int distance(Query.Clause clause) {
+		String written = clause.toString();
+		int near = written.indexOf(" NEAR/");
+		return near < 0 ? 0 : Integer.parseInt(written.substring(near + 6, written.lastIndexOf(' ')));
+	}
+}
@@ -0,0 +1,121 @@
+package edu.usfca.cs272;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Tests that top-k searches pruned with MaxScore return the same results as
+ * accumulating every match and sorting them.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class MaxScoreSearchTest {
+	/** The numbers of results asked for. */
+	private static final int[] K = { 1, 2, 3, 5, 10, 30 };
+
+	/**
+	 * Tests random queries of common and rare words, where the common words stop
+	 * proposing documents once the best k are good enough
+	 *
+	 * @param seed the seed of the random corpus
+	 */
+	@ParameterizedTest
+	@ValueSource(longs = { 1, 2, 3 })
+	public void testRandomQueries(long seed) {
+		RandomCorpus corpus = new RandomCorpus(seed, 300, 60);
+		InvertedIndex index = corpus.build(new InvertedIndex());
+		assertPruned(index, randomQueries(corpus.random(), 60));
+		index.freeze();
+		assertPruned(index, randomQueries(corpus.random(), 60));
+	}
+
+	/**
+	 * Tests that a word repeated many times in a few documents is not skipped
+	 * because of the bound of the word
+	 */
+	@Test
+	public void testRepeatedWord() {
+		RandomCorpus corpus = new RandomCorpus(4, 200, 20);
+		InvertedIndex index = corpus.build(new InvertedIndex());
+		for (int i = 0; i < 5; i++) {
+			List<String> stems = new ArrayList<>(corpus.stems(10));
+			for (int j = 0; j < 10 * (i + 1); j++) {
+				stems.add("snow");
+			}
+			index.addAll(stems, "repeated" + i + ".txt");
+		}
+		index.freeze();
+		assertPruned(index, List.of(Set.of("snow"), Set.of("snow", "cat"), Set.of("snow", "cat", "dog", "fish")));
+	}
+
+	/**
+	 * Tests a prefix that matches many rare words, which accumulates the
+	 * matches one list at a time instead of pruning
+	 */
+	@Test
+	public void testManyWords() {
+		RandomCorpus corpus = new RandomCorpus(5, 200, 20);
+		InvertedIndex index = corpus.build(new InvertedIndex());
+		Random random = corpus.random();
+		for (int i = 0; i < 100; i++) {
+			List<String> stems = new ArrayList<>(corpus.stems(5));
+			stems.add(String.format("zebra%02d", random.nextInt(60)));
+			index.addAll(stems, "zebra" + i + ".txt");
+		}
+		index.freeze();
+		assertPruned(index, List.of(Set.of("z"), Set.of("zebra"), Set.of("zebra0", "zebra1", "c"), Set.of("s", "c")));
+	}
+
+	/**
+	 * Returns random sets of query stems
+	 *
+	 * @param random the random numbers
+	 * @param count the number of queries
+	 * @return the queries
+	 */
+	private static List<Set<String>> randomQueries(Random random, int count) {
+		List<Set<String>> queries = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			Set<String> query = new TreeSet<>();
+			int words = 1 + random.nextInt(6);
+			for (int j = 0; j < words; j++) {
+				String word = RandomCorpus.WORDS.get(random.nextInt(RandomCorpus.WORDS.size()));
+				query.add(random.nextInt(5) == 0 ? word.substring(0, 1) : word);
+			}
+			queries.add(query);
+		}
+		return queries;
+	}
+
+	/**
+	 * Asserts that every top-k search returns the first k results of the full
+	 * search, with either scorer
+	 *
+	 * @param index the index to search
+	 * @param queries the sets of query stems
+	 */
+	private static void assertPruned(InvertedIndex index, List<Set<String>> queries) {
+		for (Scorer scorer : List.of(new CountScorer(), new BM25Scorer())) {
+			index.setScorer(scorer);
+			for (Set<String> query : queries) {
+				for (boolean exact : new boolean[] { true, false }) {
+					List<String> all = RandomCorpus.describe(index.search(query, exact));
+					for (int k : K) {
+						assertEquals(all.subList(0, Math.min(k, all.size())),
+								RandomCorpus.describe(index.search(query, exact, k)), query + " top " + k);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package edu.usfca.cs272;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import edu.usfca.cs272.InvertedIndex.SearchResult;
+
+/**
+ * Tests phrase and NEAR queries against a brute force scan of the documents.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class PhraseQueryTest {
+	/**
+	 * Tests random phrase and NEAR queries on a plain index
+	 *
+	 * @param seed the seed of the random corpus
+	 */
+	@ParameterizedTest
+	@ValueSource(longs = { 1, 2, 3 })
+	public void testInvertedIndex(long seed) {
+		assertBruteForce(seed, InvertedIndex::new);
+	}
+
+	/**
+	 * Tests random phrase and NEAR queries on a sharded index, whose clauses
+	 * may have stems in different shards
+	 *
+	 * @param seed the seed of the random corpus
+	 */
+	@ParameterizedTest
+	@ValueSource(longs = { 4, 5 })
+	public void testShardedInvertedIndex(long seed) {
+		assertBruteForce(seed, () -> new ShardedInvertedIndex(3));
+	}
+
+	/**
+	 * Tests how phrases and NEAR clauses are counted in a small document
+	 */
+	@Test
+	public void testCounts() {
+		InvertedIndex index = new InvertedIndex();
+		index.setPositions(true);
+		index.addAll(List.of("cat", "dog", "cat", "dog", "dog", "fish", "cat"), "a.txt");
+		assertEquals(Map.of("a.txt", 2), counts(index, "\"cat dog\""));
+		assertEquals(Map.of("a.txt", 1), counts(index, "\"cat dog dog\""));
+		assertEquals(Map.of(), counts(index, "\"dog dog cat\" \"fish dog\""));
+		assertEquals(Map.of("a.txt", 1), counts(index, "cat NEAR/1 fish"));
+		assertEquals(Map.of("a.txt", 3), counts(index, "cat NEAR/2 dog"));
+		assertEquals(Map.of("a.txt", 2), counts(index, "dog NEAR/1 dog"));
+		assertEquals(Map.of("a.txt", 2), counts(index, "cat NEAR/2 cat"));
+	}
+
+	/**
+	 * Tests that only a closed double quote starts a phrase
+	 */
+	@Test
+	public void testUnclosedQuote() {
+		Query query = Query.parse("5\" tall cats");
+		assertFalse(query.hasClauses());
+		assertTrue(query.words().contains("cat"));
+		assertTrue(Query.parse("\"tall cats\" 5\"").hasClauses());
+	}
+
+	/**
+	 * Tests that an index without positions cannot search for clauses
+	 */
+	@Test
+	public void testNoPositions() {
+		InvertedIndex index = new InvertedIndex();
+		index.setPositions(false);
+		index.addAll(List.of("cat", "dog"), "a.txt");
+		assertThrows(IllegalStateException.class, () -> index.search(Query.parse("\"cat dog\""), true));
+		assertEquals(1, index.search(Query.parse("cat dog"), true).size());
+	}
+
+	/**
+	 * Returns a random phrase or NEAR clause as it is written in a query
+	 *
+	 * @param corpus the random corpus to draw the words from
+	 * @return the clause
+	 */
+	public static String clause(RandomCorpus corpus) {
+		if (corpus.random().nextBoolean()) {
+			return corpus.word() + " NEAR/" + (1 + corpus.random().nextInt(4)) + " " + corpus.word();
+		}
+		return "\"" + String.join(" ", corpus.stems(2 + corpus.random().nextInt(2))) + "\"";
+	}
+
+	/**
+	 * Returns the number of matches of each location found by an exact search
+	 *
+	 * @param index the index to search
+	 * @param line the query line
+	 * @return the number of matches by location
+	 */
+	private static Map<String, Integer> counts(InvertedIndex index, String line) {
+		return counts(index.search(Query.parse(line), true));
+	}
+
+	/**
+	 * Returns the number of matches of each location
+	 *
+	 * @param results the search results
+	 * @return the number of matches by location
+	 */
+	public static Map<String, Integer> counts(List<SearchResult> results) {
+		Map<String, Integer> counts = new TreeMap<>();
+		for (SearchResult result : results) {
+			counts.put(result.getLocation(), result.getCount());
+		}
+		return counts;
+	}
+
+	/**
+	 * Asserts that random queries with phrase and NEAR clauses find the same
+	 * documents and matches as the brute force search, before and after the
+	 * index is frozen
+	 *
+	 * @param seed the seed of the random corpus
+	 * @param indexes makes the index to test
+	 */
+	private static void assertBruteForce(long seed, Supplier<InvertedIndex> indexes) {
+		RandomCorpus corpus = new RandomCorpus(seed, 80, 40);
+		InvertedIndex index = indexes.get();
+		index.setPositions(true);
+		corpus.build(index);
+		for (int frozen = 0; frozen < 2; frozen++) {
+			for (int i = 0; i < 100; i++) {
+				String line = clause(corpus) + " " + corpus.query(i % 3);
+				if (i % 4 == 0) {
+					line += " " + clause(corpus);
+				}
+				Query query = Query.parse(line);
+				for (boolean exact : new boolean[] { true, false }) {
+					assertEquals(BruteForceSearch.search(corpus.documents(), query, exact),
+							counts(index.search(query, exact)), line);
+				}
+			}
+			index.freeze();
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package edu.usfca.cs272;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import edu.usfca.cs272.InvertedIndex.SearchResult;
+
+/**
+ * Builds small random documents out of a few words for the tests. The first
+ * words are far more common than the last ones, so the searches run into
+ * common and rare words, repeated words and tied scores.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class RandomCorpus {
+	/** Words that are their own stems, from the most to the least common. */
+	public static final List<String> WORDS = List.of("cat", "dog", "fish", "bird", "tree", "rock", "sun", "moon",
+			"star", "sky", "cake", "milk", "sand", "wind", "rain", "snow");
+
+	/** The random numbers, seeded so a failing test can be repeated. */
+	private final Random random;
+
+	/** The stems of each document by location. */
+	private final Map<String, List<String>> documents;
+
+	/**
+	 * Builds the random documents
+	 *
+	 * @param seed the seed of the random numbers
+	 * @param count the number of documents
+	 * @param length the maximum number of stems of a document
+	 */
+	public RandomCorpus(long seed, int count, int length) {
+		this.random = new Random(seed);
+		this.documents = new TreeMap<>();
+		for (int i = 0; i < count; i++) {
+			documents.put(location(i), stems(1 + random.nextInt(length)));
+		}
+	}
+
+	/**
+	 * Returns the location of a document
+	 *
+	 * @param i the number of the document
+	 * @return the location
+	 */
+	public static String location(int i) {
+		return String.format("doc%03d.txt", i);
+	}
+
+	/**
+	 * Returns the documents
+	 *
+	 * @return the stems of each document by location, sorted by location
+	 */
+	public Map<String, List<String>> documents() {
+		return Collections.unmodifiableMap(documents);
+	}
+
+	/**
+	 * Returns a random word, more likely one of the first words
+	 *
+	 * @return the word
+	 */
+	public String word() {
+		return WORDS.get(Math.min(random.nextInt(WORDS.size()), random.nextInt(WORDS.size())));
+	}
+
+	/**
+	 * Returns random stems
+	 *
+	 * @param count the number of stems
+	 * @return the stems
+	 */
+	public List<String> stems(int count) {
+		List<String> stems = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			stems.add(word());
+		}
+		return stems;
+	}
+
+	/**
+	 * Returns a random query line of single words, some of them cut short so a
+	 * partial search matches them by prefix
+	 *
+	 * @param count the number of words
+	 * @return the query line
+	 */
+	public String query(int count) {
+		List<String> words = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			String word = word();
+			words.add(random.nextInt(4) == 0 ? word.substring(0, 1 + random.nextInt(word.length())) : word);
+		}
+		return String.join(" ", words);
+	}
+
+	/**
+	 * Returns the random numbers of the corpus, so a test can make more random
+	 * choices that are repeated with the same seed
+	 *
+	 * @return the random numbers
+	 */
+	public Random random() {
+		return random;
+	}
+
+	/**
+	 * Adds every document to an index
+	 *
+	 * @param <T> the type of index
+	 * @param index the index to add to
+	 * @return the same index
+	 */
+	public <T extends InvertedIndex> T build(T index) {
+		documents.forEach((location, stems) -> index.addAll(stems, location));
+		return index;
+	}
+
+	/**
+	 * Describes search results by their location, count and score, rounded so
+	 * scores summed in a different order still compare equal
+	 *
+	 * @param results the search results
+	 * @return one description per result, in the same order
+	 */
+	public static List<String> describe(List<SearchResult> results) {
+		List<String> described = new ArrayList<>();
+		for (SearchResult result : results) {
+			described.add(String.format("%s %d %.8f", result.getLocation(), result.getCount(), result.getScore()));
+		}
+		return described;
+	}
+}
@@ -0,0 +1,201 @@
+package edu.usfca.cs272;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Tests that removing and replacing locations leaves an index the same as one
+ * freshly built from the documents that are left.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class RemoveReplaceTest {
+	/**
+	 * Tests random removes and replaces in a plain index
+	 *
+	 * @param seed the seed of the random corpus
+	 */
+	@ParameterizedTest
+	@ValueSource(longs = { 1, 2, 3 })
+	public void testInvertedIndex(long seed) {
+		assertChurn(seed, InvertedIndex::new);
+	}
+
+	/**
+	 * Tests random removes and replaces in a thread-safe index
+	 *
+	 * @param seed the seed of the random corpus
+	 */
+	@ParameterizedTest
+	@ValueSource(longs = { 4, 5 })
+	public void testThreadedInvertedIndex(long seed) {
+		assertChurn(seed, ThreadedInvertedIndex::new);
+	}
+
+	/**
+	 * Tests random removes and replaces in a sharded index
+	 *
+	 * @param seed the seed of the random corpus
+	 */
+	@ParameterizedTest
+	@ValueSource(longs = { 6, 7 })
+	public void testShardedInvertedIndex(long seed) {
+		assertChurn(seed, () -> new ShardedInvertedIndex(3));
+	}
+
+	/**
+	 * Tests that only locations in the index are removed, and that replacing a
+	 * location with no stems removes it
+	 */
+	@Test
+	public void testMissing() {
+		InvertedIndex index = new InvertedIndex();
+		index.addAll(List.of("cat", "dog"), "a.txt");
+		assertFalse(index.remove("b.txt"));
+		index.replace(List.of(), "a.txt");
+		assertFalse(index.contains("cat"));
+		assertTrue(index.getCount().isEmpty());
+		assertFalse(index.remove("a.txt"));
+	}
+
+	/**
+	 * Tests that replacing the same locations over and over reuses the ids of
+	 * the removed documents instead of growing the index
+	 */
+	@Test
+	public void testReusesIds() {
+		RandomCorpus corpus = new RandomCorpus(8, 50, 20);
+		InvertedIndex index = corpus.build(new InvertedIndex());
+		List<String> locations = new ArrayList<>(corpus.documents().keySet());
+		replaceAll(index, corpus, locations);
+		long bytes = index.memoryStats().getCountBytes();
+		for (int i = 0; i < 20; i++) {
+			replaceAll(index, corpus, locations);
+		}
+		assertEquals(bytes, index.memoryStats().getCountBytes());
+	}
+
+	/**
+	 * Tests that a frozen index cannot be changed
+	 */
+	@Test
+	public void testFrozen() {
+		InvertedIndex index = new RandomCorpus(9, 10, 10).build(new InvertedIndex());
+		index.freeze();
+		assertThrows(IllegalStateException.class, () -> index.remove(RandomCorpus.location(0)));
+		assertThrows(IllegalStateException.class, () -> index.replace(List.of("cat"), RandomCorpus.location(0)));
+	}
+
+	/**
+	 * Replaces every location with the stems it already has
+	 *
+	 * @param index the index to change
+	 * @param corpus the corpus of the index
+	 * @param locations the locations to replace
+	 */
+	private static void replaceAll(InvertedIndex index, RandomCorpus corpus, List<String> locations) {
+		for (String location : locations) {
+			index.replace(corpus.documents().get(location), location);
+		}
+	}
+
+	/**
+	 * Removes, replaces and adds back random locations, then asserts the index
+	 * is the same as a fresh build before and after both are frozen
+	 *
+	 * @param seed the seed of the random corpus
+	 * @param indexes makes the index to test
+	 */
+	private static void assertChurn(long seed, Supplier<InvertedIndex> indexes) {
+		RandomCorpus corpus = new RandomCorpus(seed, 60, 30);
+		InvertedIndex index = indexes.get();
+		index.setPositions(true);
+		corpus.build(index);
+
+		Map<String, List<String>> expected = new TreeMap<>(corpus.documents());
+		List<String> locations = new ArrayList<>(expected.keySet());
+		Random random = corpus.random();
+		for (int i = 0; i < 300; i++) {
+			String location = locations.get(random.nextInt(locations.size()));
+			switch (random.nextInt(3)) {
+				case 0 -> {
+					assertEquals(expected.containsKey(location), index.remove(location));
+					expected.remove(location);
+				}
+				case 1 -> {
+					List<String> stems = corpus.stems(random.nextInt(20));
+					index.replace(stems, location);
+					if (stems.isEmpty()) {
+						expected.remove(location);
+					}
+					else {
+						expected.put(location, stems);
+					}
+				}
+				default -> {
+					if (!expected.containsKey(location)) {
+						List<String> stems = corpus.documents().get(location);
+						index.addAll(stems, location);
+						expected.put(location, stems);
+					}
+				}
+			}
+		}
+
+		InvertedIndex fresh = new InvertedIndex();
+		fresh.setPositions(true);
+		expected.forEach((location, stems) -> fresh.addAll(stems, location));
+		if (index instanceof ThreadedInvertedIndex threaded) {
+			// the shards only score with the statistics of all of them once published
+			threaded.publish();
+		}
+		assertSame(corpus, index, fresh);
+		index.freeze();
+		fresh.freeze();
+		assertSame(corpus, index, fresh);
+	}
+
+	/**
+	 * Asserts that two indexes have the same stems, positions, counts and search
+	 * results
+	 *
+	 * @param corpus the random corpus to draw the queries from
+	 * @param index the index to test
+	 * @param fresh the freshly built index
+	 */
+	private static void assertSame(RandomCorpus corpus, InvertedIndex index, InvertedIndex fresh) {
+		assertEquals(fresh.toString(), index.toString());
+		assertEquals(fresh.getCount(), index.getCount());
+		for (Scorer scorer : List.of(new CountScorer(), new BM25Scorer())) {
+			index.setScorer(scorer);
+			fresh.setScorer(scorer);
+			for (int i = 0; i < 30; i++) {
+				String line = corpus.query(1 + i % 3);
+				if (i % 5 == 0) {
+					line = "\"" + corpus.word() + " " + corpus.word() + "\" " + line;
+				}
+				Query query = Query.parse(line);
+				for (boolean exact : new boolean[] { true, false }) {
+					assertEquals(RandomCorpus.describe(fresh.search(query, exact)),
+							RandomCorpus.describe(index.search(query, exact)), line);
+					assertEquals(RandomCorpus.describe(fresh.search(query, exact, 3)),
+							RandomCorpus.describe(index.search(query, exact, 3)), line + " top 3");
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package edu.usfca.cs272;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import edu.usfca.cs272.InvertedIndex.SearchResult;
+
+/**
+ * Tests which changes the lock-free snapshots of a thread-safe index show to
+ * its searches.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class SnapshotSearchTest {
+	/**
+	 * Tests that searches only see the changes published so far once there is a
+	 * snapshot, and see every change before the first one
+	 */
+	@Test
+	public void testPublished() {
+		ThreadedInvertedIndex index = new ThreadedInvertedIndex(2);
+		Query query = Query.parse("cat");
+		index.addAll(List.of("cat", "dog"), "a.txt");
+		assertEquals(Set.of("a.txt"), locations(index.search(query, true)));
+
+		index.addAll(List.of("cat", "fish"), "b.txt");
+		assertEquals(Set.of("a.txt", "b.txt"), locations(index.search(query, true)));
+
+		index.addAll(List.of("cat"), "c.txt");
+		assertEquals(Set.of("a.txt", "b.txt"), locations(index.search(query, true)));
+		index.publish();
+		assertEquals(Set.of("a.txt", "b.txt", "c.txt"), locations(index.search(query, true)));
+
+		assertTrue(index.remove("a.txt"));
+		assertEquals(Set.of("a.txt", "b.txt", "c.txt"), locations(index.search(query, true)));
+		index.publish();
+		assertEquals(Set.of("b.txt", "c.txt"), locations(index.search(query, true)));
+
+		index.replace(List.of("dog"), "b.txt");
+		assertEquals(Set.of("b.txt", "c.txt"), locations(index.search(query, true)));
+		index.publish();
+		assertEquals(Set.of("c.txt"), locations(index.search(query, true)));
+		assertEquals(Set.of("b.txt"), locations(index.search(Query.parse("dog"), true)));
+	}
+
+	/**
+	 * Tests that a published snapshot split into several parts returns the same
+	 * results as one index built from the same documents, with either scorer
+	 *
+	 * @param seed the seed of the random corpus
+	 */
+	@ParameterizedTest
+	@ValueSource(longs = { 1, 2, 3 })
+	public void testSameAsOneIndex(long seed) {
+		RandomCorpus corpus = new RandomCorpus(seed, 60, 30);
+		ThreadedInvertedIndex index = new ThreadedInvertedIndex(3);
+		index.setPositions(true);
+		Map<String, List<String>> expected = new TreeMap<>();
+		List<String> locations = new ArrayList<>(corpus.documents().keySet());
+		for (String location : locations) {
+			List<String> stems = corpus.documents().get(location);
+			index.addAll(stems, location);
+			expected.put(location, stems);
+		}
+		index.publish();
+		assertSameAs(corpus, index, expected);
+
+		for (int i = 0; i < 20; i++) {
+			String location = locations.get(corpus.random().nextInt(locations.size()));
+			if (i % 2 == 0) {
+				index.remove(location);
+				expected.remove(location);
+			}
+			else {
+				List<String> stems = corpus.stems(5);
+				index.replace(stems, location);
+				expected.put(location, stems);
+			}
+		}
+		index.publish();
+		assertSameAs(corpus, index, expected);
+	}
+
+	/**
+	 * Tests that searches running while documents are added never see fewer of
+	 * them than an earlier search did, and see every one once the last changes
+	 * are published
+	 *
+	 * @throws InterruptedException if interrupted while waiting for the threads
+	 */
+	@Test
+	public void testConcurrentReaders() throws InterruptedException {
+		ThreadedInvertedIndex index = new ThreadedInvertedIndex(4);
+		Query query = Query.parse("cat");
+		AtomicBoolean done = new AtomicBoolean();
+		ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+
+		List<Thread> readers = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			readers.add(new Thread(() -> {
+				Set<String> seen = Set.of();
+				while (!done.get()) {
+					Set<String> found = locations(index.search(query, true));
+					if (!found.containsAll(seen)) {
+						failures.add("lost " + seen + " in " + found);
+					}
+					seen = found;
+				}
+			}));
+		}
+		readers.forEach(Thread::start);
+
+		RandomCorpus corpus = new RandomCorpus(4, 200, 20);
+		for (Map.Entry<String, List<String>> document : corpus.documents().entrySet()) {
+			List<String> stems = new ArrayList<>(document.getValue());
+			stems.add("cat");
+			index.addAll(stems, document.getKey());
+		}
+		done.set(true);
+		for (Thread reader : readers) {
+			reader.join();
+		}
+
+		assertTrue(failures.isEmpty(), () -> failures.peek());
+		index.publish();
+		assertEquals(corpus.documents().keySet(), locations(index.search(query, true)));
+		assertFalse(index.search(query, true, 5).isEmpty());
+	}
+
+	/**
+	 * Returns the locations of search results
+	 *
+	 * @param results the search results
+	 * @return the sorted locations
+	 */
+	private static Set<String> locations(List<SearchResult> results) {
+		return results.stream().map(SearchResult::getLocation).collect(Collectors.toCollection(TreeSet::new));
+	}
+
+	/**
+	 * Asserts that random searches of an index return the same as searches of
+	 * one index built from the expected documents
+	 *
+	 * @param corpus the random corpus to draw the queries from
+	 * @param index the index to search
+	 * @param expected the stems of each document the index should have
+	 */
+	private static void assertSameAs(RandomCorpus corpus, InvertedIndex index, Map<String, List<String>> expected) {
+		InvertedIndex fresh = new InvertedIndex();
+		fresh.setPositions(true);
+		expected.forEach((location, stems) -> fresh.addAll(stems, location));
+		for (Scorer scorer : List.of(new CountScorer(), new BM25Scorer())) {
+			index.setScorer(scorer);
+			fresh.setScorer(scorer);
+			for (int i = 0; i < 30; i++) {
+				String line = corpus.query(1 + i % 3);
+				if (i % 5 == 0) {
+					line = corpus.word() + " NEAR/3 " + corpus.word() + " " + line;
+				}
+				Query query = Query.parse(line);
+				for (boolean exact : new boolean[] { true, false }) {
+					assertEquals(RandomCorpus.describe(fresh.search(query, exact)),
+							RandomCorpus.describe(index.search(query, exact)), line);
+					assertEquals(RandomCorpus.describe(fresh.search(query, exact, 5)),
+							RandomCorpus.describe(index.search(query, exact, 5)), line + " top 5");
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package edu.usfca.cs272;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import edu.usfca.cs272.InvertedIndex.SearchResult;
+
+/**
+ * Tests that a top-k search returns the first k results of sorting every
+ * match.
+ *
+ * @author Amanda Wang CS 272 Software Development (University of San Francisco)
+ * @version Spring 2022
+ */
+public class TopKSearchTest {
+	/** The numbers of results asked for. */
+	private static final int[] K = { 1, 2, 3, 5, 10, 50, 1000 };
+
+	/**
+	 * Tests random queries before and after the index is frozen
+	 *
+	 * @param seed the seed of the random corpus
+	 */
+	@ParameterizedTest
+	@ValueSource(longs = { 1, 2, 3 })
+	public void testRandomQueries(long seed) {
+		RandomCorpus corpus = new RandomCorpus(seed, 80, 30);
+		InvertedIndex index = new InvertedIndex();
+		index.setPositions(true);
+		corpus.build(index);
+		assertTopK(corpus, index);
+		index.freeze();
+		assertTopK(corpus, index);
+	}
+
+	/**
+	 * Tests that documents with the same score are broken by count and location
+	 * like in the full sort, so the best k never depend on the order the
+	 * documents were visited
+	 */
+	@Test
+	public void testTies() {
+		InvertedIndex index = new InvertedIndex();
+		for (int i = 20; i > 0; i--) {
+			index.addAll(List.of("cat", "dog"), RandomCorpus.location(i));
+		}
+		index.freeze();
+		Query query = Query.parse("cat");
+		List<SearchResult> all = index.search(query, true);
+		for (int k = 1; k <= all.size(); k++) {
+			assertEquals(RandomCorpus.describe(all.subList(0, k)), RandomCorpus.describe(index.search(query, true, k)));
+		}
+		assertEquals(RandomCorpus.location(1), all.get(0).getLocation());
+	}
+
+	/**
+	 * Tests that asking for no results returns none
+	 */
+	@Test
+	public void testNone() {
+		InvertedIndex index = new RandomCorpus(4, 20, 10).build(new InvertedIndex());
+		assertTrue(index.search(Query.parse("cat dog"), true, 0).isEmpty());
+		assertTrue(index.search(Query.parse("c"), false, -1).isEmpty());
+	}
+
+	/**
+	 * Asserts that every top-k search of random queries returns the first k
+	 * results of the full search, with either scorer
+	 *
+	 * @param corpus the corpus of the index
+	 * @param index the index to search
+	 */
+	private static void assertTopK(RandomCorpus corpus, InvertedIndex index) {
+		for (Scorer scorer : List.of(new CountScorer(), new BM25Scorer())) {
+			index.setScorer(scorer);
+			for (int i = 0; i < 40; i++) {
+				String line = corpus.query(1 + i % 4);
+				if (i % 4 == 3) {
+					line = "\"" + corpus.word() + " " + corpus.word() + "\" " + line;
+				}
+				Query query = Query.parse(line);
+				for (boolean exact : new boolean[] { true, false }) {
+					List<String> all = RandomCorpus.describe(index.search(query, exact));
+					for (int k : K) {
+						assertEquals(all.subList(0, Math.min(k, all.size())),
+								RandomCorpus.describe(index.search(query, exact, k)), line + " top " + k);
+					}
+				}
+			}
+		}
+	}
+}